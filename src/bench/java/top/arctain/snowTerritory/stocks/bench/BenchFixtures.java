@@ -0,0 +1,70 @@
+package top.arctain.snowTerritory.stocks.bench;
+
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.price.PriceService;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 基准共用的交易对与价格
+ */
+final class BenchFixtures {
+
+    static final BigDecimal BTC_PRICE = new BigDecimal("60000.00");
+    static final BigDecimal ETH_PRICE = new BigDecimal("3000.00");
+
+    private BenchFixtures() {
+    }
+
+    static Symbol btc() {
+        return new Symbol("BTCUSDT", new BigDecimal("0.01"), new BigDecimal("0.001"),
+                          new BigDecimal("0.001"), new BigDecimal("1000"), 20,
+                          new BigDecimal("0.005"), new BigDecimal("0.0006"));
+    }
+
+    static Symbol eth() {
+        return new Symbol("ETHUSDT", new BigDecimal("0.01"), new BigDecimal("0.001"),
+                          new BigDecimal("0.001"), new BigDecimal("10000"), 20,
+                          new BigDecimal("0.005"), new BigDecimal("0.0006"));
+    }
+
+    /**
+     * 固定价格的价格服务（标记价格与最新价相同）
+     */
+    static PriceService fixedPrices() {
+        Map<String, BigDecimal> prices = Map.of("BTCUSDT", BTC_PRICE, "ETHUSDT", ETH_PRICE);
+        return new PriceService() {
+            @Override
+            public BigDecimal getMarkPrice(String symbol) {
+                return prices.getOrDefault(symbol, BigDecimal.ZERO);
+            }
+
+            @Override
+            public BigDecimal getLastPrice(String symbol) {
+                return getMarkPrice(symbol);
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public boolean isSymbolSupported(String symbol) {
+                return prices.containsKey(symbol);
+            }
+        };
+    }
+
+    /**
+     * 可重复的假玩家ID
+     */
+    static UUID player(int index) {
+        return new UUID(0x5354L, index);
+    }
+}
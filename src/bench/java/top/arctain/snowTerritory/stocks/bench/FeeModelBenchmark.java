@@ -0,0 +1,53 @@
+package top.arctain.snowTerritory.stocks.bench;
+
+import org.openjdk.jmh.annotations.*;
+import top.arctain.snowTerritory.stocks.engine.FeeModel;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 手续费模型：calculateTakerFee（含定点数快速路径与 BigDecimal 回退）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FeeModelBenchmark {
+
+    private Symbol symbol;
+    private BigDecimal price;
+    private BigDecimal qty;
+    private BigDecimal inexactQty; // 超过8位小数，走 BigDecimal 回退路径
+    private long priceFixed;
+    private long qtyFixed;
+
+    @Setup
+    public void setup() {
+        symbol = BenchFixtures.btc();
+        price = BenchFixtures.BTC_PRICE;
+        qty = new BigDecimal("0.125");
+        inexactQty = new BigDecimal("0.1250000001");
+        priceFixed = FixedPoint.fromDecimalExact(price);
+        qtyFixed = FixedPoint.fromDecimalExact(qty);
+    }
+
+    @Benchmark
+    public BigDecimal takerFee() {
+        return FeeModel.calculateTakerFee(symbol, qty, price);
+    }
+
+    @Benchmark
+    public BigDecimal takerFeeFallback() {
+        return FeeModel.calculateTakerFee(symbol, inexactQty, price);
+    }
+
+    @Benchmark
+    public long takerFeeFixed() {
+        return FeeModel.takerFeeFixed(symbol, qtyFixed, priceFixed);
+    }
+}
@@ -0,0 +1,74 @@
+package top.arctain.snowTerritory.stocks.bench;
+
+import org.openjdk.jmh.annotations.*;
+import top.arctain.snowTerritory.stocks.engine.MarginModel;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 保证金模型：初始保证金、维持保证金、爆仓价（BigDecimal 与定点数两条路径）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MarginModelBenchmark {
+
+    private Symbol symbol;
+    private Position position;
+    private BigDecimal price;
+    private BigDecimal qty;
+    private long priceFixed;
+    private long qtyFixed;
+    private long mmrFixed;
+
+    @Setup
+    public void setup() {
+        symbol = BenchFixtures.btc();
+        price = BenchFixtures.BTC_PRICE;
+        qty = new BigDecimal("0.125");
+        priceFixed = FixedPoint.fromDecimalExact(price);
+        qtyFixed = FixedPoint.fromDecimalExact(qty);
+        mmrFixed = symbol.getMaintenanceMarginRateFixed();
+        BigDecimal margin = MarginModel.calculateInitialMargin(price, qty, 10);
+        position = new Position(UUID.randomUUID(), symbol.getName(), OrderSide.LONG, qty, price, 10, margin);
+    }
+
+    @Benchmark
+    public BigDecimal initialMargin() {
+        return MarginModel.calculateInitialMargin(price, qty, 10);
+    }
+
+    @Benchmark
+    public long initialMarginFixed() {
+        return MarginModel.initialMarginFixed(priceFixed, qtyFixed, 10);
+    }
+
+    @Benchmark
+    public BigDecimal maintenanceMargin() {
+        return MarginModel.calculateMaintenanceMargin(price, qty, symbol.getMaintenanceMarginRate());
+    }
+
+    @Benchmark
+    public long maintenanceMarginFixed() {
+        return MarginModel.maintenanceMarginFixed(priceFixed, qtyFixed, mmrFixed);
+    }
+
+    @Benchmark
+    public BigDecimal liquidationPrice() {
+        return MarginModel.calculateLiquidationPrice(position, symbol);
+    }
+
+    @Benchmark
+    public long liquidationPriceFixed() {
+        return MarginModel.liquidationPriceFixed(position, mmrFixed);
+    }
+}
@@ -0,0 +1,528 @@
+package top.arctain.snowTerritory.stocks.bench;
+
+import top.arctain.snowTerritory.stocks.config.StocksConfigManager;
+import top.arctain.snowTerritory.stocks.engine.MarginModel;
+import top.arctain.snowTerritory.stocks.engine.RiskEngine;
+import top.arctain.snowTerritory.stocks.engine.TradeEngine;
+import top.arctain.snowTerritory.stocks.engine.WaitStrategy;
+import top.arctain.snowTerritory.stocks.metrics.LatencyHistogram;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
+import top.arctain.snowTerritory.stocks.model.Account;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.price.PriceService;
+import top.arctain.snowTerritory.stocks.storage.MemoryStockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 离线行情回放工具
+ * 不需要服务器和网络：用大量合成账户驱动 TradeEngine 与 RiskEngine，按步回放一条价格路径
+ * （录制的 CSV 或按种子生成的暴跌行情），报告吞吐、延迟与强平正确性。
+ * 每一步先执行合成交易并等待全部完成，再推进价格、执行一轮风控检查并等待强平完成，
+ * 因此同一种子的交易结果完全一致（最终状态摘要相同），可在 CI 中运行。
+ *
+ * 运行: mvn -P bench compile exec:exec@replay -Dreplay.args="--seed 42 --accounts 5000 --steps 400"
+ * 参数: --seed --accounts --steps --shards --crash（跌幅，0-1）--actions（每步交易数）--cross（全仓账户比例，0-1）
+ *       --prices（CSV: step,symbol,price）
+ * 存在漏强平或误强平时退出码为 1
+ */
+public final class MarketReplayHarness {
+
+    private static final String[] SYMBOLS = {"BTCUSDT", "ETHUSDT"};
+
+    private final long seed;
+    private final int accounts;
+    private final int shards;
+    private final int actionsPerStep;
+    private final double crossRatio;
+    private final Map<String, Symbol> symbols = new HashMap<>();
+    private final Map<String, long[]> pricePath; // symbol -> 每一步的价格（定点数）
+    private final int steps;
+
+    private final ReplayPrices prices = new ReplayPrices();
+    private final StocksMetrics metrics = new StocksMetrics();
+    private final LatencyHistogram tradeLatency = metrics.histogram("harness.trade");
+    private final LatencyHistogram sweepLatency = metrics.histogram("harness.sweep");
+    private final Set<String> liquidated = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger tradeErrors = new AtomicInteger();
+
+    private MemoryStockStorage storage;
+    private TradeEngine tradeEngine;
+    private RiskEngine riskEngine;
+    private UUID[] players;
+
+    private long tradesSubmitted;
+    private long tradeNanos;
+    private int expectedLiquidations;
+    private int missedLiquidations;
+    private int falseLiquidations;
+
+    private MarketReplayHarness(long seed, int accounts, int shards, int actionsPerStep, double crossRatio,
+                                Map<String, long[]> pricePath) {
+        this.seed = seed;
+        this.accounts = accounts;
+        this.shards = shards;
+        this.actionsPerStep = actionsPerStep;
+        this.crossRatio = crossRatio;
+        this.pricePath = pricePath;
+        this.steps = pricePath.values().iterator().next().length;
+        symbols.put("BTCUSDT", BenchFixtures.btc());
+        symbols.put("ETHUSDT", BenchFixtures.eth());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "5000"));
+        int steps = Integer.parseInt(options.getOrDefault("steps", "400"));
+        int shards = Integer.parseInt(options.getOrDefault("shards", "4"));
+        int actions = Integer.parseInt(options.getOrDefault("actions", "200"));
+        double crash = Double.parseDouble(options.getOrDefault("crash", "0.4"));
+        double crossRatio = Double.parseDouble(options.getOrDefault("cross", "0.3"));
+
+        Map<String, long[]> path = options.containsKey("prices")
+            ? loadPricePath(new File(options.get("prices")))
+            : generatePricePath(seed, steps, crash);
+
+        MarketReplayHarness harness = new MarketReplayHarness(seed, accounts, shards, actions, crossRatio, path);
+        boolean correct = harness.run();
+        System.exit(correct ? 0 : 1);
+    }
+
+    private boolean run() throws InterruptedException {
+        setUp();
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        try {
+            openInitialPositions(random);
+            for (int step = 0; step < steps; step++) {
+                runTrades(random);
+                for (String symbol : SYMBOLS) {
+                    setPrice(symbol, pricePath.get(symbol)[step]);
+                }
+                checkLiquidations();
+            }
+        } finally {
+            tradeEngine.stop();
+        }
+        long elapsed = System.nanoTime() - start;
+        report(elapsed);
+        return missedLiquidations == 0 && falseLiquidations == 0;
+    }
+
+    private void setUp() {
+        storage = new MemoryStockStorage();
+        tradeEngine = new TradeEngine(storage, prices, shards, TradeEngine.DEFAULT_RING_SIZE, WaitStrategy.YIELD);
+        tradeEngine.setMetrics(metrics);
+        StocksConfigManager config = new StocksConfigManager(new File("target")) {
+            @Override
+            public Symbol getSymbol(String name) {
+                return symbols.get(name);
+            }
+        };
+        // 只使用增量检查（爆仓价索引），由回放结果验证索引没有漏掉仓位
+        riskEngine = new RiskEngine(null, storage, prices, tradeEngine, config, 1, 0) {
+            @Override
+            protected void onLiquidated(UUID playerId, String symbolName, BigDecimal loss) {
+                liquidated.add(playerId + "_" + symbolName);
+            }
+        };
+        riskEngine.setMetrics(metrics);
+        for (String symbol : SYMBOLS) {
+            setPrice(symbol, pricePath.get(symbol)[0]);
+        }
+        players = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) {
+            players[i] = BenchFixtures.player(i);
+            Account account = storage.getAccount(players[i]);
+            BigDecimal balance = BigDecimal.valueOf(1_000 + (i % 50) * 200L);
+            account.setWalletBalance(balance);
+            account.setAvailableBalance(balance);
+            if (i % 100 < crossRatio * 100) {
+                account.setMarginMode(Account.CROSS);
+            }
+        }
+        tradeEngine.rebuildTriggerIndexes(symbols::get);
+        tradeEngine.start();
+    }
+
+    /**
+     * 推进标记价格（价格服务与账户净值跟踪，与插件中价格源通知监听器的顺序一致）
+     */
+    private void setPrice(String symbol, long price) {
+        prices.set(symbol, price);
+        tradeEngine.getEquityTracker().onMarkPrice(symbol, 0, price);
+    }
+
+    /**
+     * 每个账户开一个随机方向、随机杠杆的仓位
+     */
+    private void openInitialPositions(Random random) throws InterruptedException {
+        List<Runnable> batch = new ArrayList<>(accounts);
+        for (UUID playerId : players) {
+            batch.add(openAction(random, playerId));
+        }
+        execute(batch);
+    }
+
+    /**
+     * 一步中的合成交易：随机账户加仓或部分/全部平仓
+     */
+    private void runTrades(Random random) throws InterruptedException {
+        List<Runnable> batch = new ArrayList<>(actionsPerStep);
+        for (int i = 0; i < actionsPerStep; i++) {
+            UUID playerId = players[random.nextInt(players.length)];
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                batch.add(openAction(random, playerId));
+            } else {
+                Symbol symbol = symbols.get(SYMBOLS[random.nextInt(SYMBOLS.length)]);
+                BigDecimal qty = kind < 9 ? randomQty(random, symbol) : null;
+                batch.add(() -> tradeEngine.closePosition(playerId, symbol, qty, callback()));
+            }
+        }
+        execute(batch);
+    }
+
+    private Runnable openAction(Random random, UUID playerId) {
+        Symbol symbol = symbols.get(SYMBOLS[random.nextInt(SYMBOLS.length)]);
+        OrderSide side = random.nextBoolean() ? OrderSide.LONG : OrderSide.SHORT;
+        BigDecimal qty = randomQty(random, symbol);
+        int leverage = 2 + random.nextInt(symbol.getMaxLeverage() - 1);
+        return () -> tradeEngine.openPosition(playerId, symbol, side, qty, leverage, callback());
+    }
+
+    /**
+     * 名义价值约 100-2000 USDT 的数量
+     */
+    private BigDecimal randomQty(Random random, Symbol symbol) {
+        double price = FixedPoint.toDecimal(prices.getMarkPriceFixed(symbol.getName())).doubleValue();
+        double notional = 100 + random.nextInt(1900);
+        return symbol.formatQuantity(BigDecimal.valueOf(notional / price).setScale(8, RoundingMode.DOWN))
+                     .max(symbol.getMinQty());
+    }
+
+    private CountDownLatch pending;
+
+    private TradeEngine.TradeCallback callback() {
+        long submitted = System.nanoTime();
+        CountDownLatch latch = pending;
+        return new TradeEngine.TradeCallback() {
+            @Override
+            public void onSuccess(String message) {
+                tradeLatency.record(System.nanoTime() - submitted);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                tradeErrors.incrementAndGet();
+                tradeLatency.record(System.nanoTime() - submitted);
+                latch.countDown();
+            }
+        };
+    }
+
+    /**
+     * 提交一批交易并等待全部回调
+     */
+    private void execute(List<Runnable> batch) throws InterruptedException {
+        pending = new CountDownLatch(batch.size());
+        long start = System.nanoTime();
+        for (Runnable action : batch) {
+            action.run();
+        }
+        if (!pending.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("交易超时未完成");
+        }
+        tradeNanos += System.nanoTime() - start;
+        tradesSubmitted += batch.size();
+    }
+
+    /**
+     * 按当前标记价格独立计算应被强平的仓位，执行一轮风控检查后与实际结果比对
+     * 逐仓按单个仓位判断；全仓账户净值（钱包 + 各仓位保证金与未实现盈亏）不高于维持保证金合计时全部仓位都应强平
+     */
+    private void checkLiquidations() throws InterruptedException {
+        Set<String> expected = new HashSet<>();
+        Set<String> before = new HashSet<>();
+        Map<UUID, long[]> crossTotals = new HashMap<>(); // 玩家 -> {净值, 维持保证金}
+        storage.forEachPosition(position -> {
+            String key = position.getPlayerId() + "_" + position.getSymbol();
+            before.add(key);
+            Account account = storage.getAccount(position.getPlayerId());
+            if (account.isCrossMargin()) {
+                long markPrice = prices.getMarkPriceFixed(position.getSymbol());
+                long[] totals = crossTotals.computeIfAbsent(position.getPlayerId(),
+                    k -> new long[]{FixedPoint.fromDecimal(account.getWalletBalance()), 0});
+                totals[0] += MarginModel.availableMarginFixed(position, markPrice);
+                totals[1] += MarginModel.maintenanceMarginFixed(markPrice, position.getQtyFixed(),
+                    symbols.get(position.getSymbol()).getMaintenanceMarginRateFixed());
+            } else if (isUnderMaintenance(position)) {
+                expected.add(key);
+            }
+        });
+        for (Map.Entry<UUID, long[]> entry : crossTotals.entrySet()) {
+            long[] totals = entry.getValue();
+            if (totals[1] > 0 && totals[0] <= totals[1]) {
+                for (Position position : storage.getAllPositions(entry.getKey())) {
+                    expected.add(entry.getKey() + "_" + position.getSymbol());
+                }
+            }
+        }
+        liquidated.clear();
+        long start = System.nanoTime();
+        riskEngine.runSweep();
+        awaitEngineIdle();
+        sweepLatency.record(System.nanoTime() - start);
+
+        expectedLiquidations += expected.size();
+        for (String key : expected) {
+            if (!liquidated.contains(key)) {
+                missedLiquidations++;
+            }
+        }
+        for (String key : liquidated) {
+            if (!expected.contains(key) || !before.contains(key)) {
+                falseLiquidations++;
+            }
+        }
+    }
+
+    private boolean isUnderMaintenance(Position position) {
+        long markPrice = prices.getMarkPriceFixed(position.getSymbol());
+        Symbol symbol = symbols.get(position.getSymbol());
+        if (position.hasFixedValues()) {
+            long available = MarginModel.availableMarginFixed(position, markPrice);
+            long maintenance = MarginModel.maintenanceMarginFixed(markPrice, position.getQtyFixed(),
+                                                                  symbol.getMaintenanceMarginRateFixed());
+            return available <= maintenance;
+        }
+        BigDecimal mark = FixedPoint.toDecimal(markPrice);
+        return MarginModel.calculateAvailableMargin(position, mark).compareTo(
+            MarginModel.calculateMaintenanceMargin(mark, position.getQty(), symbol.getMaintenanceMarginRate())) <= 0;
+    }
+
+    /**
+     * 等待全部分片处理完已提交的命令（强平平仓）
+     */
+    private void awaitEngineIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (true) {
+            boolean idle = true;
+            for (int i = 0; i < tradeEngine.getShardCount(); i++) {
+                if (tradeEngine.getQueueDepth(i) > 0) {
+                    idle = false;
+                    break;
+                }
+            }
+            if (idle) {
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("强平超时未完成");
+            }
+            Thread.sleep(0, 100_000);
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        System.out.println("==== 行情回放结果 ====");
+        System.out.println("种子: " + seed + "  账户: " + accounts + "  步数: " + steps + "  分片: " + shards);
+        System.out.println("交易: " + tradesSubmitted + " 笔（失败 " + tradeErrors.get() + "），吞吐 "
+            + String.format("%.0f", tradesSubmitted / (tradeNanos / 1e9)) + " 笔/秒");
+        System.out.println("交易延迟: p50=" + StocksMetrics.formatNanos(tradeLatency.getValueAtPercentile(50))
+            + " p99=" + StocksMetrics.formatNanos(tradeLatency.getValueAtPercentile(99))
+            + " max=" + StocksMetrics.formatNanos(tradeLatency.getMax()));
+        System.out.println("风控检查（含强平执行）: p50=" + StocksMetrics.formatNanos(sweepLatency.getValueAtPercentile(50))
+            + " p99=" + StocksMetrics.formatNanos(sweepLatency.getValueAtPercentile(99))
+            + " max=" + StocksMetrics.formatNanos(sweepLatency.getMax()));
+        System.out.println("强平: 应触发 " + expectedLiquidations + "，漏强平 " + missedLiquidations
+            + "，误强平 " + falseLiquidations);
+        System.out.println("总耗时: " + StocksMetrics.formatNanos(elapsedNanos));
+        System.out.println("最终状态摘要: " + stateDigest());
+        for (String line : metrics.report()) {
+            System.out.println("  " + line);
+        }
+    }
+
+    /**
+     * 按玩家顺序汇总账户与仓位，同一种子的结果应完全相同
+     */
+    private String stateDigest() {
+        TreeMap<String, String> state = new TreeMap<>();
+        for (UUID playerId : players) {
+            Account account = storage.getAccount(playerId);
+            state.put(playerId + "", account.getWalletBalance().stripTrailingZeros().toPlainString()
+                + "/" + account.getAvailableBalance().stripTrailingZeros().toPlainString());
+            for (Position position : storage.getAllPositions(playerId)) {
+                state.put(playerId + "_" + position.getSymbol(), position.getSide() + "/"
+                    + position.getQty().stripTrailingZeros().toPlainString() + "/"
+                    + position.getEntryPrice().stripTrailingZeros().toPlainString() + "/"
+                    + position.getIsolatedMargin().stripTrailingZeros().toPlainString());
+            }
+        }
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> entry : state.entrySet()) {
+                sha.update((entry.getKey() + "=" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(sha.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ========== 价格路径 ==========
+
+    /**
+     * 生成价格路径：平稳随机游走，中段出现连续急跌（crash 为累计跌幅）后部分反弹，ETH 波动更大
+     */
+    static Map<String, long[]> generatePricePath(long seed, int steps, double crash) {
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        double[] base = {BenchFixtures.BTC_PRICE.doubleValue(), BenchFixtures.ETH_PRICE.doubleValue()};
+        double[] beta = {1.0, 1.3};
+        int crashStart = steps / 2;
+        int crashLength = Math.max(1, steps / 20);
+        double crashStep = Math.log(1 - Math.min(0.95, crash)) / crashLength;
+        Map<String, long[]> path = new HashMap<>();
+        long[][] series = new long[SYMBOLS.length][steps];
+        double[] logPrice = {Math.log(base[0]), Math.log(base[1])};
+        for (int step = 0; step < steps; step++) {
+            double market = random.nextGaussian() * 0.002;
+            if (step >= crashStart && step < crashStart + crashLength) {
+                market += crashStep + random.nextGaussian() * 0.01;
+            } else if (step >= crashStart + crashLength && step < crashStart + 3 * crashLength) {
+                market -= crashStep * 0.15; // 部分反弹
+            }
+            for (int s = 0; s < SYMBOLS.length; s++) {
+                logPrice[s] += beta[s] * market + random.nextGaussian() * 0.001;
+                BigDecimal price = BigDecimal.valueOf(Math.exp(logPrice[s])).setScale(2, RoundingMode.HALF_UP);
+                series[s][step] = FixedPoint.fromDecimalExact(price);
+            }
+        }
+        for (int s = 0; s < SYMBOLS.length; s++) {
+            path.put(SYMBOLS[s], series[s]);
+        }
+        return path;
+    }
+
+    /**
+     * 读取录制的价格路径：每行 step,symbol,price（# 开头为注释），缺失的步沿用上一步价格
+     */
+    static Map<String, long[]> loadPricePath(File file) throws IOException {
+        Map<String, TreeMap<Integer, Long>> raw = new HashMap<>();
+        int maxStep = -1;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                int step = Integer.parseInt(parts[0].trim());
+                String symbol = parts[1].trim().toUpperCase();
+                long price = FixedPoint.fromDecimalExact(new BigDecimal(parts[2].trim()));
+                raw.computeIfAbsent(symbol, k -> new TreeMap<>()).put(step, price);
+                maxStep = Math.max(maxStep, step);
+            }
+        }
+        Map<String, long[]> path = new HashMap<>();
+        for (String symbol : SYMBOLS) {
+            TreeMap<Integer, Long> points = raw.get(symbol);
+            if (points == null || points.isEmpty()) {
+                throw new IOException("价格文件缺少交易对: " + symbol);
+            }
+            long[] series = new long[maxStep + 1];
+            long last = points.firstEntry().getValue();
+            for (int step = 0; step <= maxStep; step++) {
+                Long price = points.get(step);
+                if (price != null) {
+                    last = price;
+                }
+                series[step] = last;
+            }
+            path.put(symbol, series);
+        }
+        return path;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("无法识别的参数: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * 回放用价格服务：标记价格与最新价相同，由回放线程逐步设置
+     */
+    private static final class ReplayPrices implements PriceService {
+
+        private final Map<String, Long> fixed = new ConcurrentHashMap<>();
+        private final Map<String, BigDecimal> decimal = new ConcurrentHashMap<>();
+
+        void set(String symbol, long price) {
+            fixed.put(symbol, price);
+            decimal.put(symbol, FixedPoint.toDecimal(price));
+        }
+
+        @Override
+        public BigDecimal getMarkPrice(String symbol) {
+            return decimal.getOrDefault(symbol, BigDecimal.ZERO);
+        }
+
+        @Override
+        public BigDecimal getLastPrice(String symbol) {
+            return getMarkPrice(symbol);
+        }
+
+        @Override
+        public long getMarkPriceFixed(String symbol) {
+            return fixed.getOrDefault(symbol, 0L);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public boolean isSymbolSupported(String symbol) {
+            return fixed.containsKey(symbol);
+        }
+    }
+}
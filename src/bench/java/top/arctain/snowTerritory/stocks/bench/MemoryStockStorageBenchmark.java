@@ -0,0 +1,66 @@
+package top.arctain.snowTerritory.stocks.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.stocks.storage.MemoryStockStorage;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存存储的仓位查询：每个玩家持有 BTCUSDT 与 ETHUSDT 两个仓位，总仓位数由 positions 决定
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryStockStorageBenchmark {
+
+    @Param({"10000", "100000"})
+    public int positions;
+
+    private MemoryStockStorage storage;
+    private UUID[] players;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storage = new MemoryStockStorage();
+        players = new UUID[positions / 2];
+        BigDecimal qty = new BigDecimal("0.1");
+        for (int i = 0; i < players.length; i++) {
+            UUID playerId = BenchFixtures.player(i);
+            players[i] = playerId;
+            storage.savePosition(new Position(playerId, "BTCUSDT", OrderSide.LONG, qty,
+                                              BenchFixtures.BTC_PRICE, 10, new BigDecimal("600")));
+            storage.savePosition(new Position(playerId, "ETHUSDT", OrderSide.SHORT, qty,
+                                              BenchFixtures.ETH_PRICE, 10, new BigDecimal("30")));
+        }
+    }
+
+    private UUID nextPlayer() {
+        UUID playerId = players[next];
+        next = next + 1 == players.length ? 0 : next + 1;
+        return playerId;
+    }
+
+    @Benchmark
+    public void getAllPositions(Blackhole blackhole) {
+        blackhole.consume(storage.getAllPositions(nextPlayer()));
+    }
+
+    @Benchmark
+    public Position getPosition() {
+        return storage.getPosition(nextPlayer(), "BTCUSDT");
+    }
+
+    @Benchmark
+    public void forEachPosition(Blackhole blackhole) {
+        storage.forEachPosition(blackhole::consume);
+    }
+}
@@ -0,0 +1,92 @@
+package top.arctain.snowTerritory.stocks.bench;
+
+import org.openjdk.jmh.annotations.*;
+import top.arctain.snowTerritory.stocks.engine.TradeEngine;
+import top.arctain.snowTerritory.stocks.engine.WaitStrategy;
+import top.arctain.snowTerritory.stocks.model.Account;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.storage.MemoryStockStorage;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 交易引擎端到端吞吐：固定价格、内存存储、不记录交易日志
+ * 每次调用为一批假玩家各提交一组开仓 + 全平，等待全部平仓回调返回
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TradeEngineBenchmark {
+
+    private static final int BATCH = 1000; // 每批开平仓组数（每个分片的缓冲区需容纳 2 * BATCH 条命令）
+
+    @Param({"1", "4"})
+    public int shards;
+
+    @Param({"park"})
+    public String waitStrategy;
+
+    private TradeEngine engine;
+    private Symbol symbol;
+    private UUID[] players;
+    private BigDecimal qty;
+    private final AtomicInteger errors = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MemoryStockStorage storage = new MemoryStockStorage();
+        engine = new TradeEngine(storage, BenchFixtures.fixedPrices(), shards, 2 * BATCH,
+                                 WaitStrategy.fromName(waitStrategy));
+        symbol = BenchFixtures.btc();
+        qty = new BigDecimal("0.010");
+        players = new UUID[256];
+        BigDecimal balance = new BigDecimal("1000000000");
+        for (int i = 0; i < players.length; i++) {
+            players[i] = BenchFixtures.player(i);
+            Account account = storage.getAccount(players[i]);
+            account.setWalletBalance(balance);
+            account.setAvailableBalance(balance);
+        }
+        engine.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.stop();
+        if (errors.get() > 0) {
+            System.err.println("交易失败次数: " + errors.get());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void openClose() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        TradeEngine.TradeCallback closed = new TradeEngine.TradeCallback() {
+            @Override
+            public void onSuccess(String message) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                errors.incrementAndGet();
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < BATCH; i++) {
+            UUID playerId = players[i % players.length];
+            engine.openPosition(playerId, symbol, OrderSide.LONG, qty, 10, null);
+            engine.closePosition(playerId, symbol, null, closed);
+        }
+        done.await();
+    }
+}
@@ -3,14 +3,33 @@ package top.arctain.snowTerritory.stocks;
 import top.arctain.snowTerritory.Main;
 import top.arctain.snowTerritory.stocks.command.StockCommand;
 import top.arctain.snowTerritory.stocks.config.StocksConfigManager;
+import top.arctain.snowTerritory.stocks.engine.CallbackDispatcher;
+import top.arctain.snowTerritory.stocks.engine.FundingEngine;
+import top.arctain.snowTerritory.stocks.engine.Leaderboard;
 import top.arctain.snowTerritory.stocks.engine.RiskEngine;
+import top.arctain.snowTerritory.stocks.engine.StopOrderEngine;
 import top.arctain.snowTerritory.stocks.engine.TradeEngine;
+import top.arctain.snowTerritory.stocks.engine.WaitStrategy;
+import top.arctain.snowTerritory.stocks.history.PriceHistory;
+import top.arctain.snowTerritory.stocks.journal.JournalService;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
+import top.arctain.snowTerritory.stocks.price.AbstractPriceSource;
+import top.arctain.snowTerritory.stocks.price.AggregatePriceSource;
+import top.arctain.snowTerritory.stocks.price.CircuitBreaker;
 import top.arctain.snowTerritory.stocks.price.ExchangeRestPriceSource;
+import top.arctain.snowTerritory.stocks.price.FilePriceSource;
+import top.arctain.snowTerritory.stocks.price.MockTickerServer;
 import top.arctain.snowTerritory.stocks.price.PriceService;
+import top.arctain.snowTerritory.stocks.price.ReplayPriceSource;
+import top.arctain.snowTerritory.stocks.price.WebSocketPriceSource;
 import top.arctain.snowTerritory.stocks.storage.MemoryStockStorage;
+import top.arctain.snowTerritory.stocks.storage.SqliteStockStorage;
 import top.arctain.snowTerritory.stocks.storage.StockStorage;
 import top.arctain.snowTerritory.utils.MessageUtils;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Stocks模块入口
  */
@@ -20,8 +39,16 @@ public class StocksModule {
     private final StocksConfigManager configManager;
     private final StockStorage storage;
     private final PriceService priceService;
+    private final PriceHistory priceHistory;
     private final TradeEngine tradeEngine;
     private final RiskEngine riskEngine;
+    private final StopOrderEngine stopOrderEngine;
+    private final FundingEngine fundingEngine;
+    private final Leaderboard leaderboard;
+    private final CallbackDispatcher callbackDispatcher;
+    private final StocksMetrics metrics; // 未启用时为 null
+    private JournalService journalService;
+    private MockTickerServer mockTickerServer;
     private StockCommand stockCommand;
     
     public StocksModule(Main plugin) {
@@ -29,56 +56,272 @@ public class StocksModule {
         this.configManager = new StocksConfigManager(plugin);
         // 先加载配置，因为后续初始化需要读取配置
         this.configManager.loadAll();
-        this.storage = new MemoryStockStorage();
-        this.priceService = new ExchangeRestPriceSource(
-            plugin, 
-            configManager.getExchangeApiUrl(),
-            configManager.getExchangeType(),
-            configManager.getPriceUpdateInterval()
-        );
-        this.tradeEngine = new TradeEngine(storage, priceService);
+        this.storage = createStorage();
+        this.storage.init();
+        this.priceService = createPriceService();
+        this.priceHistory = new PriceHistory(configManager.getHistoryTickCapacity(),
+                                             configManager.getHistoryCandleCapacity());
+        this.tradeEngine = createTradeEngine();
+        this.tradeEngine.setPriceHistory(priceHistory);
+        this.tradeEngine.setMaxPriceAge(configManager.getPriceMaxAge());
+        this.leaderboard = new Leaderboard();
+        this.tradeEngine.getEquityTracker().setLeaderboard(leaderboard);
+        this.journalService = createJournalService();
         this.riskEngine = new RiskEngine(
             plugin,
             storage,
             priceService,
             tradeEngine,
             configManager,
-            configManager.getRiskCheckInterval()
+            configManager.getRiskCheckInterval(),
+            configManager.getRiskFullScanInterval()
+        );
+        this.riskEngine.setPriceHistory(priceHistory);
+        this.callbackDispatcher = new CallbackDispatcher(plugin);
+        this.riskEngine.setCallbackDispatcher(callbackDispatcher);
+        this.stopOrderEngine = new StopOrderEngine(callbackDispatcher, storage, tradeEngine, configManager);
+        this.fundingEngine = new FundingEngine(
+            plugin,
+            priceService,
+            tradeEngine,
+            configManager.getAllSymbols().values(),
+            configManager.getFundingInterval(),
+            configManager.getFundingInterestRate(),
+            configManager.getFundingClamp(),
+            configManager.getFundingMaxRate()
+        );
+        this.fundingEngine.setCallbackDispatcher(callbackDispatcher);
+        this.metrics = configManager.isMetricsEnabled() ? new StocksMetrics() : null;
+        if (metrics != null) {
+            tradeEngine.setMetrics(metrics);
+            riskEngine.setMetrics(metrics);
+            fundingEngine.setMetrics(metrics);
+        }
+    }
+    
+    /**
+     * 根据配置选择存储实现
+     */
+    private StockStorage createStorage() {
+        String storageType = configManager.getStorageType();
+        if ("memory".equals(storageType)) {
+            return new MemoryStockStorage(configManager.getStorageOrderHotWindow(), configManager.getStorageNodeId());
+        }
+        if (!"sqlite".equals(storageType)) {
+            MessageUtils.logWarning("暂未实现的存储类型: " + storageType + "，回退至 SQLite");
+        }
+        File dbFile = new File(configManager.getBaseDir(), configManager.getStorageFile());
+        return new SqliteStockStorage(plugin, dbFile, configManager.getStorageFlushInterval() * 50,
+                                       configManager.getStorageOrderHotWindow(), configManager.getStorageNodeId());
+    }
+    
+    /**
+     * 根据配置选择价格源
+     */
+    private PriceService createPriceService() {
+        String source = configManager.getPriceSource();
+        if (!"aggregate".equals(source)) {
+            return createPriceSource(source);
+        }
+        AggregatePriceSource aggregate = new AggregatePriceSource(
+            configManager.getAggregateCheckInterval(),
+            configManager.getAggregateSourceStaleAfter(),
+            configManager.getAggregateMinSources(),
+            configManager.getAggregateMaxDeviation()
         );
+        for (String name : configManager.getAggregateSources()) {
+            name = name.toLowerCase();
+            if (!isKnownPriceSource(name)) {
+                MessageUtils.logWarning("未知的上游价格源: " + name + "，已忽略");
+                continue;
+            }
+            aggregate.addSource(name, createPriceSource(name), new CircuitBreaker(
+                configManager.getBreakerFailureThreshold(), configManager.getBreakerOpenTime()));
+        }
+        return aggregate;
+    }
+    
+    private static boolean isKnownPriceSource(String name) {
+        return "rest".equals(name) || "websocket".equals(name) || "mock".equals(name) || "file".equals(name)
+            || "replay".equals(name);
+    }
+    
+    /**
+     * 创建单个价格源（独立使用或作为聚合价格源的上游）
+     */
+    private AbstractPriceSource createPriceSource(String source) {
+        switch (source) {
+            case "websocket":
+                return new WebSocketPriceSource(configManager.getWebSocketUrl(), configManager.getWebSocketStaleTimeout());
+            case "mock":
+                mockTickerServer = new MockTickerServer(
+                    configManager.getMockPort(),
+                    configManager.getMockInterval(),
+                    configManager.getMockBasePrices()
+                );
+                return new WebSocketPriceSource("ws://127.0.0.1:" + configManager.getMockPort(),
+                                                configManager.getWebSocketStaleTimeout());
+            case "file":
+                return new FilePriceSource(new File(configManager.getBaseDir(), configManager.getPriceFile()),
+                                           configManager.getPriceFileInterval());
+            case "replay":
+                return new ReplayPriceSource(new File(configManager.getBaseDir(), configManager.getPriceReplayPath()),
+                                             configManager.getPriceReplaySpeed(), configManager.isPriceReplayLoop());
+            default:
+                if (!"rest".equals(source)) {
+                    MessageUtils.logWarning("未知的价格源: " + source + "，回退至 rest");
+                }
+                return new ExchangeRestPriceSource(
+                    plugin, 
+                    configManager.getExchangeApiUrl(),
+                    configManager.getExchangeType(),
+                    configManager.getPriceUpdateInterval(),
+                    configManager.getExchangeProxyType(),
+                    configManager.getExchangeProxyHost(),
+                    configManager.getExchangeProxyPort(),
+                    configManager.getExchangeConnectTimeout(),
+                    configManager.getExchangeRequestTimeout()
+                );
+        }
+    }
+    
+    /**
+     * 根据配置创建交易引擎
+     */
+    private TradeEngine createTradeEngine() {
+        WaitStrategy waitStrategy = WaitStrategy.fromName(configManager.getEngineWaitStrategy());
+        if (waitStrategy == null) {
+            MessageUtils.logWarning("未知的等待策略: " + configManager.getEngineWaitStrategy() + "，使用 park");
+            waitStrategy = WaitStrategy.PARK;
+        }
+        return new TradeEngine(storage, priceService, configManager.getEngineShards(),
+                               configManager.getEngineRingSize(), waitStrategy);
+    }
+    
+    /**
+     * 打开交易日志（未启用或打开失败时返回 null）
+     */
+    private JournalService createJournalService() {
+        if (!configManager.isJournalEnabled()) {
+            return null;
+        }
+        JournalService service = new JournalService(
+            plugin,
+            new File(configManager.getBaseDir(), "journal"),
+            configManager.getJournalSegmentSize(),
+            configManager.isJournalFsync(),
+            configManager.getJournalSnapshotInterval(),
+            configManager.getJournalSnapshotRetain()
+        );
+        try {
+            service.open();
+        } catch (IOException e) {
+            MessageUtils.logError("打开交易日志失败，本次运行不记录交易日志: " + e.getMessage());
+            return null;
+        }
+        tradeEngine.setJournal(service.getJournal());
+        return service;
+    }
+    
+    /**
+     * 是否由交易日志负责崩溃恢复（仅 memory 存储；SQLite 存储自身已持久化，日志只作审计）
+     */
+    private boolean isJournalRecoveryEnabled() {
+        return journalService != null
+            && storage instanceof MemoryStockStorage
+            && !(storage instanceof SqliteStockStorage);
     }
     
     public void enable() {
         // 配置已在构造函数中加载，这里只需要启动服务
         
-        // 注册需要监控的交易对到价格服务
-        if (priceService instanceof ExchangeRestPriceSource) {
-            ExchangeRestPriceSource priceSource = (ExchangeRestPriceSource) priceService;
+        // 交易引擎启动前从快照 + 日志恢复状态
+        if (isJournalRecoveryEnabled()) {
+            journalService.recover(tradeEngine, (MemoryStockStorage) storage, configManager::getSymbol);
+        }
+        
+        // 根据已加载/恢复的挂单重建订单簿和冻结资金
+        tradeEngine.rebuildOrderBooks(configManager::getSymbol);
+        
+        // 根据已加载/恢复的仓位建立爆仓价索引和止盈止损索引
+        tradeEngine.rebuildTriggerIndexes(configManager::getSymbol);
+        
+        // 注册需要监控的交易对到价格服务和价格历史
+        for (String symbol : configManager.getAllSymbols().keySet()) {
+            priceHistory.addSymbol(symbol);
+        }
+        if (priceService instanceof AbstractPriceSource) {
+            AbstractPriceSource priceSource = (AbstractPriceSource) priceService;
             for (String symbol : configManager.getAllSymbols().keySet()) {
                 priceSource.addSymbol(symbol);
             }
+            priceSource.addListener(priceHistory);
+            priceSource.addListener(tradeEngine);
+            priceSource.addListener(tradeEngine.getEquityTracker());
+            priceSource.addListener(stopOrderEngine);
+            if (metrics != null) {
+                priceSource.setMetrics(metrics);
+            }
         }
         
+        if (mockTickerServer != null) {
+            try {
+                mockTickerServer.start();
+            } catch (IOException e) {
+                MessageUtils.logError("模拟行情服务器启动失败: " + e.getMessage());
+            }
+        }
         priceService.start();
         
+        callbackDispatcher.start();
         tradeEngine.start();
         
+        if (isJournalRecoveryEnabled()) {
+            journalService.startSnapshots(tradeEngine, (MemoryStockStorage) storage);
+        }
+        
         riskEngine.start();
+        fundingEngine.start();
+        
+        if (metrics != null) {
+            metrics.startDump(plugin, new File(configManager.getBaseDir(), configManager.getMetricsDumpFile()),
+                              configManager.getMetricsDumpInterval());
+        }
         
-        this.stockCommand = new StockCommand(plugin, configManager, storage, priceService, tradeEngine);
+        this.stockCommand = new StockCommand(plugin, configManager, storage, priceService, tradeEngine,
+                                             riskEngine, priceHistory, metrics, callbackDispatcher, leaderboard);
         
         MessageUtils.logSuccess("Stocks 模块已启用，配置目录: plugins/SnowTerritory/stocks/");
     }
     
     public void disable() {
+        if (metrics != null) {
+            metrics.stopDump();
+        }
+        if (fundingEngine != null) {
+            fundingEngine.stop();
+        }
         if (riskEngine != null) {
             riskEngine.stop();
         }
         if (tradeEngine != null) {
             tradeEngine.stop();
         }
+        if (callbackDispatcher != null) {
+            callbackDispatcher.stop();
+        }
+        if (journalService != null) {
+            journalService.close();
+        }
         if (priceService != null) {
             priceService.stop();
         }
+        if (mockTickerServer != null) {
+            mockTickerServer.stop();
+        }
+        if (storage != null) {
+            storage.close();
+        }
     }
     
     public void reload() {
@@ -1,5 +1,6 @@
 package top.arctain.snowTerritory.stocks.command;
 
+import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -7,14 +8,26 @@ import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import top.arctain.snowTerritory.Main;
 import top.arctain.snowTerritory.stocks.config.StocksConfigManager;
+import top.arctain.snowTerritory.stocks.engine.CallbackDispatcher;
+import top.arctain.snowTerritory.stocks.engine.Leaderboard;
+import top.arctain.snowTerritory.stocks.engine.OrderBook;
+import top.arctain.snowTerritory.stocks.engine.RiskEngine;
 import top.arctain.snowTerritory.stocks.engine.TradeEngine;
+import top.arctain.snowTerritory.stocks.history.Candle;
+import top.arctain.snowTerritory.stocks.history.PriceHistory;
+import top.arctain.snowTerritory.stocks.history.Timeframe;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
 import top.arctain.snowTerritory.stocks.model.*;
 import top.arctain.snowTerritory.stocks.price.PriceService;
 import top.arctain.snowTerritory.stocks.storage.StockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
 import top.arctain.snowTerritory.stocks.utils.StockUtils;
 import top.arctain.snowTerritory.utils.MessageUtils;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -24,17 +37,39 @@ import java.util.UUID;
  */
 public class StockCommand implements CommandExecutor, TabCompleter {
     
+    private static final int DEFAULT_CHART_CANDLES = 10;
+    private static final int MAX_CHART_CANDLES = 30;
+    private static final int BOOK_DEPTH_LEVELS = 5;
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final int LEADERBOARD_SIZE = 10;
+    private static final DateTimeFormatter CANDLE_TIME = DateTimeFormatter.ofPattern("MM-dd HH:mm")
+                                                                         .withZone(ZoneId.systemDefault());
+    
+    private final Main plugin;
     private final StocksConfigManager configManager;
     private final StockStorage storage;
     private final PriceService priceService;
     private final TradeEngine tradeEngine;
+    private final RiskEngine riskEngine;
+    private final PriceHistory priceHistory;
+    private final StocksMetrics metrics; // 未启用时为 null
+    private final CallbackDispatcher dispatcher;
+    private final Leaderboard leaderboard;
     
     public StockCommand(Main plugin, StocksConfigManager configManager, StockStorage storage,
-                       PriceService priceService, TradeEngine tradeEngine) {
+                       PriceService priceService, TradeEngine tradeEngine,
+                       RiskEngine riskEngine, PriceHistory priceHistory, StocksMetrics metrics,
+                       CallbackDispatcher dispatcher, Leaderboard leaderboard) {
+        this.plugin = plugin;
         this.configManager = configManager;
         this.storage = storage;
         this.priceService = priceService;
         this.tradeEngine = tradeEngine;
+        this.riskEngine = riskEngine;
+        this.priceHistory = priceHistory;
+        this.metrics = metrics;
+        this.dispatcher = dispatcher;
+        this.leaderboard = leaderboard;
     }
     
     @Override
@@ -56,21 +91,41 @@ public class StockCommand implements CommandExecutor, TabCompleter {
         switch (subCommand) {
             case "price":
                 return handlePrice(player, args);
+            case "chart":
+                return handleChart(player, args);
             case "open":
                 return handleOpen(player, args);
             case "close":
                 return handleClose(player, args);
+            case "limit":
+                return handleLimit(player, args);
+            case "orders":
+                return handleOrders(player, args);
+            case "cancel":
+                return handleCancel(player, args);
+            case "history":
+                return handleHistory(player, args);
+            case "book":
+                return handleBook(player, args);
             case "pos":
             case "position":
                 return handlePosition(player, args);
             case "margin":
                 return handleMargin(player, args);
+            case "sltp":
+                return handleStopOrders(player, args);
             case "setlev":
             case "setleverage":
                 return handleSetLeverage(player, args);
             case "bal":
             case "balance":
                 return handleBalance(player, args);
+            case "mode":
+                return handleMode(player, args);
+            case "top":
+                return handleTop(player, args);
+            case "admin":
+                return handleAdmin(player, args);
             default:
                 sendHelp(player);
                 return true;
@@ -104,6 +159,66 @@ public class StockCommand implements CommandExecutor, TabCompleter {
         return true;
     }
     
+    /**
+     * 查看K线: /sn stock chart BTCUSDT [1m|5m|1h] [数量]
+     */
+    private boolean handleChart(Player player, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendError(player, "stocks.usage.chart", "&c用法: /sn stock chart <symbol> [1m|5m|1h] [count]");
+            return true;
+        }
+        
+        String symbolName = args[1].toUpperCase();
+        Symbol symbol = configManager.getSymbol(symbolName);
+        if (symbol == null) {
+            MessageUtils.sendError(player, "stocks.symbol-not-found", "&c✗ &f交易对不存在: " + symbolName);
+            return true;
+        }
+        
+        Timeframe timeframe = Timeframe.M1;
+        if (args.length >= 3) {
+            timeframe = Timeframe.fromName(args[2]);
+            if (timeframe == null) {
+                MessageUtils.sendError(player, "stocks.invalid-timeframe", "&c✗ &f周期必须是 1m、5m 或 1h");
+                return true;
+            }
+        }
+        
+        int count = DEFAULT_CHART_CANDLES;
+        if (args.length >= 4) {
+            try {
+                count = Math.max(1, Math.min(MAX_CHART_CANDLES, Integer.parseInt(args[3])));
+            } catch (NumberFormatException e) {
+                MessageUtils.sendError(player, "stocks.invalid-number", "&c✗ &f数量格式错误");
+                return true;
+            }
+        }
+        
+        List<Candle> candles = priceHistory.getCandles(symbolName, timeframe, count);
+        if (candles.isEmpty()) {
+            MessageUtils.sendInfo(player, "stocks.no-history", "&7暂无价格历史，请稍后再试");
+            return true;
+        }
+        
+        MessageUtils.sendTitle(player, "&6" + symbolName + " K线 (" + timeframe.getName() + ")");
+        for (Candle candle : candles) {
+            String color = candle.isBullish() ? "&a" : "&c";
+            MessageUtils.sendRaw(player, "&7" + CANDLE_TIME.format(Instant.ofEpochMilli(candle.openTime())) +
+                " " + color + "开 " + StockUtils.formatPrice(candle.getOpen()) +
+                " 高 " + StockUtils.formatPrice(candle.getHigh()) +
+                " 低 " + StockUtils.formatPrice(candle.getLow()) +
+                " 收 " + StockUtils.formatPrice(candle.getClose()) +
+                " &7量 " + StockUtils.formatQuantity(candle.getVolume()));
+        }
+        double volatility = riskEngine.getVolatility(symbolName);
+        if (!Double.isNaN(volatility)) {
+            MessageUtils.sendRaw(player, "&7波动率(1m): &e" + String.format("%.4f%%", volatility * 100));
+        }
+        MessageUtils.sendSeparator(player);
+        
+        return true;
+    }
+    
     /**
      * 开仓: /sn stock open long BTCUSDT 0.01 20
      */
@@ -142,17 +257,8 @@ public class StockCommand implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        tradeEngine.openPosition(player, symbol, side, qty, leverage, new TradeEngine.TradeCallback() {
-            @Override
-            public void onSuccess(String message) {
-                MessageUtils.sendSuccess(player, "stocks.open-success", "&a✓ &f" + message);
-            }
-            
-            @Override
-            public void onError(String error) {
-                MessageUtils.sendError(player, "stocks.open-error", "&c✗ &f" + error);
-            }
-        });
+        tradeEngine.openPosition(player, symbol, side, qty, leverage,
+            dispatcher.reply(player.getUniqueId(), "stocks.open-success", "stocks.open-error"));
         
         return true;
     }
@@ -184,21 +290,192 @@ public class StockCommand implements CommandExecutor, TabCompleter {
             }
         }
         
-        tradeEngine.closePosition(player, symbol, qty, new TradeEngine.TradeCallback() {
-            @Override
-            public void onSuccess(String message) {
-                MessageUtils.sendSuccess(player, "stocks.close-success", "&a✓ &f" + message);
+        tradeEngine.closePosition(player, symbol, qty,
+            dispatcher.reply(player.getUniqueId(), "stocks.close-success", "stocks.close-error"));
+        
+        return true;
+    }
+    
+    /**
+     * 限价单: /sn stock limit long BTCUSDT 0.01 60000 20
+     */
+    private boolean handleLimit(Player player, String[] args) {
+        if (args.length < 6) {
+            MessageUtils.sendError(player, "stocks.usage.limit", 
+                "&c用法: /sn stock limit <long|short> <symbol> <qty> <price> <leverage>");
+            return true;
+        }
+        
+        String sideStr = args[1].toLowerCase();
+        OrderSide side;
+        if (sideStr.equals("long")) {
+            side = OrderSide.LONG;
+        } else if (sideStr.equals("short")) {
+            side = OrderSide.SHORT;
+        } else {
+            MessageUtils.sendError(player, "stocks.invalid-side", "&c✗ &f方向必须是 long 或 short");
+            return true;
+        }
+        
+        String symbolName = args[2].toUpperCase();
+        Symbol symbol = configManager.getSymbol(symbolName);
+        if (symbol == null) {
+            MessageUtils.sendError(player, "stocks.symbol-not-found", "&c✗ &f交易对不存在: " + symbolName);
+            return true;
+        }
+        
+        BigDecimal qty;
+        BigDecimal price;
+        int leverage;
+        try {
+            qty = new BigDecimal(args[3]);
+            price = new BigDecimal(args[4]);
+            leverage = Integer.parseInt(args[5]);
+        } catch (NumberFormatException e) {
+            MessageUtils.sendError(player, "stocks.invalid-number", "&c✗ &f数量、价格或杠杆格式错误");
+            return true;
+        }
+        
+        tradeEngine.placeLimitOrder(player, symbol, side, qty, price, leverage,
+            dispatcher.reply(player.getUniqueId(), "stocks.limit-success", "stocks.limit-error"));
+        
+        return true;
+    }
+    
+    /**
+     * 查看挂单: /sn stock orders
+     */
+    private boolean handleOrders(Player player, String[] args) {
+        List<Order> orders = tradeEngine.getOpenOrders(player.getUniqueId());
+        if (orders.isEmpty()) {
+            MessageUtils.sendInfo(player, "stocks.no-order", "&7您当前没有挂单");
+            return true;
+        }
+        
+        MessageUtils.sendTitle(player, "&6您的挂单");
+        for (Order order : orders) {
+            String sideStr = order.getSide() == OrderSide.LONG ? "&a做多" : "&c做空";
+            MessageUtils.sendRaw(player, "&7#" + order.getId() + " " + order.getSymbol() + " " + sideStr +
+                " &7价格: &e" + StockUtils.formatPrice(order.getPrice()) +
+                " &7已成交: &e" + StockUtils.formatQuantity(order.getFilledQty()) +
+                "&7/&e" + StockUtils.formatQuantity(order.getQty()) +
+                " &7杠杆: &e" + order.getLeverage() + "x");
+        }
+        MessageUtils.sendSeparator(player);
+        
+        return true;
+    }
+    
+    /**
+     * 查看订单历史: /sn stock history [页码]
+     * 较早的页需要读磁盘，在异步线程查询后回到主线程发送
+     */
+    private boolean handleHistory(Player player, String[] args) {
+        int page = 1;
+        if (args.length >= 2) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                page = 0;
             }
-            
-            @Override
-            public void onError(String error) {
-                MessageUtils.sendError(player, "stocks.close-error", "&c✗ &f" + error);
+            if (page < 1) {
+                MessageUtils.sendError(player, "stocks.invalid-page", "&c✗ &f页码无效: " + args[1]);
+                return true;
             }
+        }
+        
+        UUID playerId = player.getUniqueId();
+        int pageNumber = page;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<Order> orders = storage.getOrderHistory(playerId, pageNumber - 1, HISTORY_PAGE_SIZE);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (!player.isOnline()) {
+                    return;
+                }
+                if (orders.isEmpty()) {
+                    MessageUtils.sendInfo(player, "stocks.no-order-history",
+                        pageNumber == 1 ? "&7暂无订单记录" : "&7没有更多订单记录");
+                    return;
+                }
+                MessageUtils.sendTitle(player, "&6订单历史 &7(第 " + pageNumber + " 页)");
+                for (Order order : orders) {
+                    String sideStr = order.getSide() == OrderSide.LONG ? "&a做多" : "&c做空";
+                    MessageUtils.sendRaw(player, "&7#" + order.getId() + " " +
+                        CANDLE_TIME.format(Instant.ofEpochMilli(order.getCreateTime())) + " " +
+                        order.getSymbol() + " " + sideStr + " &7" + order.getType() + " " + order.getStatus() +
+                        " &7成交: &e" + StockUtils.formatQuantity(order.getFilledQty()) +
+                        " @ " + StockUtils.formatPrice(order.getFillPrice()));
+                }
+                if (orders.size() == HISTORY_PAGE_SIZE) {
+                    MessageUtils.sendRaw(player, "&7下一页: /sn stock history " + (pageNumber + 1));
+                }
+                MessageUtils.sendSeparator(player);
+            });
         });
         
         return true;
     }
     
+    /**
+     * 撤单: /sn stock cancel 123
+     */
+    private boolean handleCancel(Player player, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendError(player, "stocks.usage.cancel", "&c用法: /sn stock cancel <orderId>");
+            return true;
+        }
+        
+        long orderId;
+        try {
+            orderId = Long.parseLong(args[1].startsWith("#") ? args[1].substring(1) : args[1]);
+        } catch (NumberFormatException e) {
+            MessageUtils.sendError(player, "stocks.invalid-number", "&c✗ &f订单号格式错误");
+            return true;
+        }
+        
+        tradeEngine.cancelOrder(player, orderId,
+            dispatcher.reply(player.getUniqueId(), "stocks.cancel-success", "stocks.cancel-error"));
+        
+        return true;
+    }
+    
+    /**
+     * 查看订单簿: /sn stock book BTCUSDT
+     */
+    private boolean handleBook(Player player, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendError(player, "stocks.usage.book", "&c用法: /sn stock book <symbol>");
+            return true;
+        }
+        
+        String symbolName = args[1].toUpperCase();
+        if (configManager.getSymbol(symbolName) == null) {
+            MessageUtils.sendError(player, "stocks.symbol-not-found", "&c✗ &f交易对不存在: " + symbolName);
+            return true;
+        }
+        
+        OrderBook book = tradeEngine.getOrderBook(symbolName);
+        if (book == null || book.size() == 0) {
+            MessageUtils.sendInfo(player, "stocks.empty-book", "&7" + symbolName + " 当前没有挂单");
+            return true;
+        }
+        
+        MessageUtils.sendTitle(player, "&6" + symbolName + " 订单簿");
+        List<long[]> asks = book.getDepth(OrderSide.SHORT, BOOK_DEPTH_LEVELS);
+        for (int i = asks.size() - 1; i >= 0; i--) {
+            MessageUtils.sendRaw(player, "&c卖 " + StockUtils.formatPrice(FixedPoint.toDecimal(asks.get(i)[0])) +
+                " &7" + StockUtils.formatQuantity(FixedPoint.toDecimal(asks.get(i)[1])));
+        }
+        MessageUtils.sendRaw(player, "&7最新价: &e" + StockUtils.formatPrice(priceService.getLastPrice(symbolName)));
+        for (long[] level : book.getDepth(OrderSide.LONG, BOOK_DEPTH_LEVELS)) {
+            MessageUtils.sendRaw(player, "&a买 " + StockUtils.formatPrice(FixedPoint.toDecimal(level[0])) +
+                " &7" + StockUtils.formatQuantity(FixedPoint.toDecimal(level[1])));
+        }
+        MessageUtils.sendSeparator(player);
+        
+        return true;
+    }
+    
     /**
      * 查看持仓: /sn stock pos
      */
@@ -230,6 +507,12 @@ public class StockCommand implements CommandExecutor, TabCompleter {
             MessageUtils.sendRaw(player, "  &7杠杆: &e" + position.getLeverage() + "x");
             MessageUtils.sendRaw(player, "  &7保证金: &e" + StockUtils.formatAmount(position.getIsolatedMargin()) + " USDT");
             MessageUtils.sendRaw(player, "  &7未实现盈亏: " + StockUtils.formatPnl(position.getUnrealizedPnl()));
+            if (position.getStopLossPrice() != null || position.getTakeProfitPrice() != null) {
+                MessageUtils.sendRaw(player, "  &7止损: &e" + (position.getStopLossPrice() != null
+                        ? StockUtils.formatPrice(position.getStopLossPrice()) : "-") +
+                    " &7止盈: &e" + (position.getTakeProfitPrice() != null
+                        ? StockUtils.formatPrice(position.getTakeProfitPrice()) : "-"));
+            }
             MessageUtils.sendSeparator(player);
         }
         
@@ -261,21 +544,56 @@ public class StockCommand implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        tradeEngine.addMargin(player, symbol, amount, new TradeEngine.TradeCallback() {
-            @Override
-            public void onSuccess(String message) {
-                MessageUtils.sendSuccess(player, "stocks.margin-success", "&a✓ &f" + message);
-            }
-            
-            @Override
-            public void onError(String error) {
-                MessageUtils.sendError(player, "stocks.margin-error", "&c✗ &f" + error);
-            }
-        });
+        tradeEngine.addMargin(player, symbol, amount,
+            dispatcher.reply(player.getUniqueId(), "stocks.margin-success", "stocks.margin-error"));
+        
+        return true;
+    }
+    
+    /**
+     * 止盈止损: /sn stock sltp BTCUSDT 58000 65000（0 或 - 表示取消）
+     */
+    private boolean handleStopOrders(Player player, String[] args) {
+        if (args.length < 3) {
+            MessageUtils.sendError(player, "stocks.usage.sltp", 
+                "&c用法: /sn stock sltp <symbol> <止损价|0> [止盈价|0]");
+            return true;
+        }
+        
+        String symbolName = args[1].toUpperCase();
+        Symbol symbol = configManager.getSymbol(symbolName);
+        if (symbol == null) {
+            MessageUtils.sendError(player, "stocks.symbol-not-found", "&c✗ &f交易对不存在: " + symbolName);
+            return true;
+        }
+        
+        BigDecimal stopLoss;
+        BigDecimal takeProfit;
+        try {
+            stopLoss = parseTriggerPrice(args[2]);
+            takeProfit = args.length >= 4 ? parseTriggerPrice(args[3]) : null;
+        } catch (NumberFormatException e) {
+            MessageUtils.sendError(player, "stocks.invalid-number", "&c✗ &f价格格式错误");
+            return true;
+        }
+        
+        tradeEngine.setStopOrders(player, symbol, stopLoss, takeProfit,
+            dispatcher.reply(player.getUniqueId(), "stocks.sltp-success", "stocks.sltp-error"));
         
         return true;
     }
     
+    /**
+     * 解析触发价，0 或 - 表示不设置
+     */
+    private static BigDecimal parseTriggerPrice(String value) {
+        if (value.equals("-")) {
+            return null;
+        }
+        BigDecimal price = new BigDecimal(value);
+        return price.compareTo(BigDecimal.ZERO) > 0 ? price : null;
+    }
+    
     /**
      * 调整杠杆: /sn stock setlev BTCUSDT 10
      */
@@ -341,10 +659,110 @@ public class StockCommand implements CommandExecutor, TabCompleter {
         account.updateEquity(totalUnrealizedPnl);
         
         MessageUtils.sendTitle(player, "&6账户余额");
+        MessageUtils.sendRaw(player, "&7保证金模式: &e" + TradeEngine.marginModeName(account.getMarginMode()));
         MessageUtils.sendRaw(player, "&7钱包余额: &e" + StockUtils.formatAmount(account.getWalletBalance()) + " USDT");
-        MessageUtils.sendRaw(player, "&7可用余额: &e" + StockUtils.formatAmount(account.getAvailableBalance()) + " USDT");
+        MessageUtils.sendRaw(player, "&7可用余额: &e" + StockUtils.formatAmount(tradeEngine.getAvailableBalance(account)) + " USDT");
         MessageUtils.sendRaw(player, "&7未实现盈亏: " + StockUtils.formatPnl(totalUnrealizedPnl));
         MessageUtils.sendRaw(player, "&7账户净值: &e" + StockUtils.formatAmount(account.getEquity()) + " USDT");
+        MessageUtils.sendRaw(player, "&7累计已实现盈亏: " + StockUtils.formatPnl(account.getRealizedPnl()));
+        if (account.isCrossMargin() && !positions.isEmpty()) {
+            BigDecimal equity = tradeEngine.getEquityTracker().getEquity(playerId);
+            if (equity != null) {
+                MessageUtils.sendRaw(player, "&7全仓净值: &e" + StockUtils.formatAmount(equity) + " USDT &7维持保证金: &e"
+                    + StockUtils.formatAmount(tradeEngine.getEquityTracker().getMaintenanceMargin(playerId)) + " USDT");
+            }
+        }
+        MessageUtils.sendSeparator(player);
+        
+        return true;
+    }
+    
+    /**
+     * 排行榜: /sn stock top [equity|pnl|realized]
+     */
+    private boolean handleTop(Player player, String[] args) {
+        Leaderboard.Type type = args.length >= 2 ? Leaderboard.Type.fromName(args[1]) : Leaderboard.Type.EQUITY;
+        if (type == null) {
+            MessageUtils.sendError(player, "stocks.usage.top", "&c用法: /sn stock top [equity|pnl|realized]");
+            return true;
+        }
+        
+        List<Leaderboard.Rank> ranks = leaderboard.top(type, LEADERBOARD_SIZE);
+        MessageUtils.sendTitle(player, "&6" + type.getDisplayName() + "排行榜");
+        if (ranks.isEmpty()) {
+            MessageUtils.sendRaw(player, "&7暂无数据");
+        }
+        for (int i = 0; i < ranks.size(); i++) {
+            Leaderboard.Rank rank = ranks.get(i);
+            String name = Bukkit.getOfflinePlayer(rank.playerId()).getName();
+            String score = type == Leaderboard.Type.EQUITY
+                ? "&e" + StockUtils.formatAmount(rank.getScore()) + " USDT"
+                : StockUtils.formatPnl(rank.getScore());
+            MessageUtils.sendRaw(player, "&6#" + (i + 1) + " &f" + (name != null ? name : rank.playerId().toString())
+                                 + " &7- " + score);
+        }
+        MessageUtils.sendSeparator(player);
+        
+        return true;
+    }
+    
+    /**
+     * 保证金模式: /sn stock mode [isolated|cross]
+     */
+    private boolean handleMode(Player player, String[] args) {
+        Account account = storage.getAccount(player.getUniqueId());
+        if (args.length < 2) {
+            MessageUtils.sendInfo(player, "stocks.margin-mode", 
+                "&7当前保证金模式: &e" + TradeEngine.marginModeName(account.getMarginMode()) +
+                " &7(/sn stock mode <isolated|cross>)");
+            return true;
+        }
+        
+        String marginMode;
+        switch (args[1].toLowerCase()) {
+            case "isolated":
+                marginMode = Account.ISOLATED;
+                break;
+            case "cross":
+                marginMode = Account.CROSS;
+                break;
+            default:
+                MessageUtils.sendError(player, "stocks.usage.mode", "&c用法: /sn stock mode <isolated|cross>");
+                return true;
+        }
+        
+        tradeEngine.setMarginMode(player, marginMode,
+            dispatcher.reply(player.getUniqueId(), "stocks.mode-success", "stocks.mode-error"));
+        
+        return true;
+    }
+    
+    /**
+     * 管理指令: /sn stock admin metrics [reset]
+     */
+    private boolean handleAdmin(Player player, String[] args) {
+        if (!player.hasPermission("st.stocks.admin")) {
+            MessageUtils.sendError(player, "stocks.no-permission", "&c✗ &f没有权限");
+            return true;
+        }
+        if (args.length < 2 || !args[1].equalsIgnoreCase("metrics")) {
+            MessageUtils.sendError(player, "stocks.usage.admin", "&c用法: /sn stock admin metrics [reset]");
+            return true;
+        }
+        if (metrics == null) {
+            MessageUtils.sendInfo(player, "stocks.metrics-disabled", "&7运行指标未启用（metrics.enabled）");
+            return true;
+        }
+        if (args.length >= 3 && args[2].equalsIgnoreCase("reset")) {
+            metrics.reset();
+            MessageUtils.sendSuccess(player, "stocks.metrics-reset", "&a✓ &f运行指标已清空");
+            return true;
+        }
+        
+        MessageUtils.sendTitle(player, "&6运行指标");
+        for (String line : metrics.report()) {
+            MessageUtils.sendRaw(player, "&7" + line);
+        }
         MessageUtils.sendSeparator(player);
         
         return true;
@@ -356,12 +774,24 @@ public class StockCommand implements CommandExecutor, TabCompleter {
     private void sendHelp(Player player) {
         MessageUtils.sendTitle(player, "&6期货交易系统");
         MessageUtils.sendHelpLine(player, "/sn stock price <symbol>", "查询价格");
+        MessageUtils.sendHelpLine(player, "/sn stock chart <symbol> [1m|5m|1h] [count]", "查看K线");
         MessageUtils.sendHelpLine(player, "/sn stock open <long|short> <symbol> <qty> <lev>", "开仓");
         MessageUtils.sendHelpLine(player, "/sn stock close <symbol> [qty]", "平仓");
+        MessageUtils.sendHelpLine(player, "/sn stock limit <long|short> <symbol> <qty> <price> <lev>", "限价单");
+        MessageUtils.sendHelpLine(player, "/sn stock orders", "查看挂单");
+        MessageUtils.sendHelpLine(player, "/sn stock cancel <orderId>", "撤单");
+        MessageUtils.sendHelpLine(player, "/sn stock history [page]", "查看订单历史");
+        MessageUtils.sendHelpLine(player, "/sn stock book <symbol>", "查看订单簿");
         MessageUtils.sendHelpLine(player, "/sn stock pos", "查看持仓");
         MessageUtils.sendHelpLine(player, "/sn stock margin add <symbol> <amount>", "追加保证金");
+        MessageUtils.sendHelpLine(player, "/sn stock sltp <symbol> <sl|0> [tp|0]", "设置止损止盈");
         MessageUtils.sendHelpLine(player, "/sn stock setlev <symbol> <lev>", "设置杠杆");
         MessageUtils.sendHelpLine(player, "/sn stock bal", "查看余额");
+        MessageUtils.sendHelpLine(player, "/sn stock mode [isolated|cross]", "切换逐仓/全仓");
+        MessageUtils.sendHelpLine(player, "/sn stock top [equity|pnl|realized]", "查看排行榜");
+        if (player.hasPermission("st.stocks.admin")) {
+            MessageUtils.sendHelpLine(player, "/sn stock admin metrics [reset]", "查看运行指标");
+        }
         MessageUtils.sendSeparator(player);
     }
     
@@ -372,18 +802,41 @@ public class StockCommand implements CommandExecutor, TabCompleter {
         if (args.length == 1) {
             String input = args[0].toLowerCase();
             if ("price".startsWith(input)) completions.add("price");
+            if ("chart".startsWith(input)) completions.add("chart");
             if ("open".startsWith(input)) completions.add("open");
             if ("close".startsWith(input)) completions.add("close");
+            if ("limit".startsWith(input)) completions.add("limit");
+            if ("orders".startsWith(input)) completions.add("orders");
+            if ("cancel".startsWith(input)) completions.add("cancel");
+            if ("history".startsWith(input)) completions.add("history");
+            if ("book".startsWith(input)) completions.add("book");
             if ("pos".startsWith(input)) completions.add("pos");
             if ("margin".startsWith(input)) completions.add("margin");
+            if ("sltp".startsWith(input)) completions.add("sltp");
             if ("setlev".startsWith(input)) completions.add("setlev");
             if ("bal".startsWith(input)) completions.add("bal");
+            if ("mode".startsWith(input)) completions.add("mode");
+            if ("top".startsWith(input)) completions.add("top");
+            if ("admin".startsWith(input) && sender.hasPermission("st.stocks.admin")) completions.add("admin");
         } else if (args.length == 2) {
-            if (args[0].equalsIgnoreCase("open")) {
+            if (args[0].equalsIgnoreCase("open") || args[0].equalsIgnoreCase("limit")) {
                 String input = args[1].toLowerCase();
                 if ("long".startsWith(input)) completions.add("long");
                 if ("short".startsWith(input)) completions.add("short");
-            } else if (args[0].equalsIgnoreCase("price") || args[0].equalsIgnoreCase("close") || 
+            } else if (args[0].equalsIgnoreCase("mode")) {
+                String input = args[1].toLowerCase();
+                if ("isolated".startsWith(input)) completions.add("isolated");
+                if ("cross".startsWith(input)) completions.add("cross");
+            } else if (args[0].equalsIgnoreCase("top")) {
+                String input = args[1].toLowerCase();
+                if ("equity".startsWith(input)) completions.add("equity");
+                if ("pnl".startsWith(input)) completions.add("pnl");
+                if ("realized".startsWith(input)) completions.add("realized");
+            } else if (args[0].equalsIgnoreCase("admin") && sender.hasPermission("st.stocks.admin")) {
+                if ("metrics".startsWith(args[1].toLowerCase())) completions.add("metrics");
+            } else if (args[0].equalsIgnoreCase("price") || args[0].equalsIgnoreCase("chart") ||
+                       args[0].equalsIgnoreCase("book") || args[0].equalsIgnoreCase("sltp") ||
+                       args[0].equalsIgnoreCase("close") || 
                        args[0].equalsIgnoreCase("margin") || args[0].equalsIgnoreCase("setlev")) {
                 // 补全交易对
                 String input = args[1].toUpperCase();
@@ -393,6 +846,20 @@ public class StockCommand implements CommandExecutor, TabCompleter {
                     }
                 }
             }
+        } else if (args.length == 3 && (args[0].equalsIgnoreCase("open") || args[0].equalsIgnoreCase("limit"))) {
+            String input = args[2].toUpperCase();
+            for (String symbol : configManager.getAllSymbols().keySet()) {
+                if (symbol.startsWith(input)) {
+                    completions.add(symbol);
+                }
+            }
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("chart")) {
+            String input = args[2].toLowerCase();
+            for (Timeframe timeframe : Timeframe.values()) {
+                if (timeframe.getName().startsWith(input)) {
+                    completions.add(timeframe.getName());
+                }
+            }
         } else if (args.length == 3 && args[0].equalsIgnoreCase("margin") && args[1].equalsIgnoreCase("add")) {
             String input = args[2].toUpperCase();
             for (String symbol : configManager.getAllSymbols().keySet()) {
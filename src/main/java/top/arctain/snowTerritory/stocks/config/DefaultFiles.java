@@ -4,6 +4,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * 生成默认配置文件
@@ -21,12 +22,73 @@ public class DefaultFiles {
             // 交易所配置
             config.set("exchange.apiUrl", "https://api.coingecko.com/api/v3");
             config.set("exchange.type", "coingecko"); // coingecko, binance
+            config.set("exchange.proxy.type", "none"); // none, http（HTTP 客户端不支持 socks）
+            config.set("exchange.proxy.host", "127.0.0.1");
+            config.set("exchange.proxy.port", 21881);
+            config.set("exchange.connectTimeout", 15); // 秒
+            config.set("exchange.requestTimeout", 15); // 秒，含读取响应体
             
             // 价格更新配置
-            config.set("price.updateInterval", 1200L); // tick数，1200 = 60秒（1分钟）
+            config.set("price.source", "rest"); // rest（轮询CoinGecko）, websocket（推送）, mock（本地模拟行情）, file（本地文件）, replay（回放历史行情文件）, aggregate（多源聚合）
+            config.set("price.maxAge", 180); // 秒，价格超过该时间未更新则暂停交易和强平，0 表示不检查
+            config.set("price.updateInterval", 1200L); // tick数，1200 = 60秒（1分钟），仅 rest
+            config.set("price.websocket.url", "wss://fstream.binance.com");
+            config.set("price.websocket.staleTimeout", 30); // 秒，超过该时间无推送则重连
+            config.set("price.mock.port", 18765);
+            config.set("price.mock.interval", 500L); // 毫秒，模拟推送间隔
+            config.set("price.mock.basePrices.BTCUSDT", "60000");
+            config.set("price.mock.basePrices.ETHUSDT", "3000");
+            config.set("price.file.path", "prices.txt"); // 相对 stocks 目录，每行 交易对=价格
+            config.set("price.file.interval", 1000L); // 毫秒，读取间隔
+            config.set("price.replay.path", "ticks.csv"); // 相对 stocks 目录，CSV（时间戳,交易对,标记价格[,最新价]）或 STKR 二进制文件
+            config.set("price.replay.speed", 1.0); // 回放倍速，0 表示不等待、尽快回放
+            config.set("price.replay.loop", true); // 放完后是否从头循环
+            config.set("price.aggregate.sources", Arrays.asList("rest", "websocket")); // 可选 rest, websocket, mock, file, replay
+            config.set("price.aggregate.checkInterval", 1000L); // 毫秒，上游健康检查间隔
+            config.set("price.aggregate.sourceStaleAfter", 120); // 秒，上游超过该时间没有价格记为失败（需大于 rest 轮询间隔）
+            config.set("price.aggregate.minSources", 1); // 发布价格所需的最少健康上游数
+            config.set("price.aggregate.maxDeviation", "0.05"); // 至少3个上游时，偏离中位数超过该比例的报价被剔除
+            config.set("price.aggregate.breaker.failureThreshold", 3); // 连续失败次数，达到后熔断
+            config.set("price.aggregate.breaker.openTime", 60); // 秒，熔断持续时间，之后重新探测
+            
+            // 价格历史配置（每个交易对的缓冲区大小固定）
+            config.set("history.tickCapacity", 1024); // 保留的原始价格数量
+            config.set("history.candleCapacity", 240); // 每个周期（1m/5m/1h）保留的K线数量
+            
+            // 存储配置
+            config.set("storage.type", "sqlite"); // sqlite, memory
+            config.set("storage.nodeId", 0); // 订单ID的节点ID（0-1023），多台服务器共用数据时各自配置不同的值
+            config.set("storage.file", "stocks.db");
+            config.set("storage.flushInterval", 100L); // tick数，100 = 5秒，后台批量落盘间隔
+            config.set("storage.orderHotWindow", 50); // 每个玩家在内存中保留的最近订单数，更早的订单只在磁盘上
+            
+            // 交易日志配置（事件溯源，memory 存储时用于崩溃恢复）
+            config.set("journal.enabled", true);
+            config.set("journal.segmentSize", 64); // 单个日志分段大小（MB）
+            config.set("journal.fsync", false); // 每条事件都强制刷盘（更安全但更慢）
+            config.set("journal.snapshotInterval", 6000L); // tick数，6000 = 5分钟
+            config.set("journal.snapshotRetain", 2); // 保留的快照数量
+            
+            // 交易引擎配置
+            config.set("engine.shards", 4); // 交易分片数（按玩家分片并行执行），1 = 单线程
+            config.set("engine.ringSize", 4096); // 每个分片的命令缓冲区大小（取2的幂），满时拒绝新订单
+            config.set("engine.waitStrategy", "park"); // 分片空闲等待策略: busy_spin, yield, park
             
             // 风控配置
             config.set("risk.checkInterval", 40L); // tick数，40 = 2秒
+            config.set("risk.fullScanInterval", 1200L); // tick数，1200 = 60秒，全量检查所有仓位的间隔，0 = 关闭
+            config.set("risk.volatilityWindow", 30); // 波动率计算使用的1分钟K线数量
+            
+            // 资金费配置（费率 = 溢价 + clamp(利率 - 溢价, ±clamp)，正数时多头支付空头）
+            config.set("funding.interval", 576000L); // tick数，576000 = 8小时，0 = 关闭
+            config.set("funding.interestRate", "0.0001"); // 每期利率 0.01%，价格源不提供独立最新成交价时即为费率
+            config.set("funding.clamp", "0.0005"); // 利率与溢价之差的限制 0.05%
+            config.set("funding.maxRate", "0.0075"); // 单期费率上限 0.75%
+            
+            // 运行指标配置
+            config.set("metrics.enabled", true); // 统计排队延迟、执行耗时、风控与行情指标
+            config.set("metrics.dumpInterval", 1200L); // tick数，1200 = 60秒，定期写出指标文件的间隔，0 = 不写出
+            config.set("metrics.dumpFile", "metrics.txt");
             
             // 交易对配置
             config.set("symbols.BTCUSDT.priceTick", "0.01");
@@ -1,14 +1,17 @@
 package top.arctain.snowTerritory.stocks.config;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import top.arctain.snowTerritory.Main;
 import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.storage.SnowflakeIdGenerator;
 import top.arctain.snowTerritory.utils.MessageUtils;
 
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,7 +24,14 @@ public class StocksConfigManager {
     private final Map<String, Symbol> symbols = new HashMap<>();
     
     public StocksConfigManager(Main plugin) {
-        this.baseDir = new File(plugin.getDataFolder(), "stocks");
+        this(new File(plugin.getDataFolder(), "stocks"));
+    }
+    
+    /**
+     * 指定配置目录（离线工具使用，不依赖插件实例）
+     */
+    public StocksConfigManager(File baseDir) {
+        this.baseDir = baseDir;
     }
     
     public void loadAll() {
@@ -85,14 +95,222 @@ public class StocksConfigManager {
         return mainConfig.getString("exchange.type", "coingecko");
     }
     
+    public String getExchangeProxyType() {
+        return mainConfig.getString("exchange.proxy.type", "none").toLowerCase();
+    }
+    
+    public String getExchangeProxyHost() {
+        return mainConfig.getString("exchange.proxy.host", "127.0.0.1");
+    }
+    
+    public int getExchangeProxyPort() {
+        return mainConfig.getInt("exchange.proxy.port", 21881);
+    }
+    
+    public long getExchangeConnectTimeout() {
+        return mainConfig.getLong("exchange.connectTimeout", 15) * 1000L; // 秒 -> 毫秒
+    }
+    
+    public long getExchangeRequestTimeout() {
+        return mainConfig.getLong("exchange.requestTimeout", 15) * 1000L; // 秒 -> 毫秒
+    }
+    
     public long getPriceUpdateInterval() {
         return mainConfig.getLong("price.updateInterval", 1200L); // 1200 tick = 60秒（1分钟）
     }
     
+    public String getPriceSource() {
+        return mainConfig.getString("price.source", "rest").toLowerCase();
+    }
+    
+    public long getPriceMaxAge() {
+        return mainConfig.getLong("price.maxAge", 180L) * 1000; // 秒 -> 毫秒，0 表示不检查
+    }
+    
+    public List<String> getAggregateSources() {
+        return mainConfig.getStringList("price.aggregate.sources");
+    }
+    
+    public long getAggregateCheckInterval() {
+        return mainConfig.getLong("price.aggregate.checkInterval", 1000L); // 毫秒
+    }
+    
+    public long getAggregateSourceStaleAfter() {
+        return mainConfig.getLong("price.aggregate.sourceStaleAfter", 120L) * 1000; // 秒 -> 毫秒
+    }
+    
+    public int getAggregateMinSources() {
+        return mainConfig.getInt("price.aggregate.minSources", 1);
+    }
+    
+    public BigDecimal getAggregateMaxDeviation() {
+        return new BigDecimal(mainConfig.getString("price.aggregate.maxDeviation", "0.05")); // 5%
+    }
+    
+    public int getBreakerFailureThreshold() {
+        return mainConfig.getInt("price.aggregate.breaker.failureThreshold", 3);
+    }
+    
+    public long getBreakerOpenTime() {
+        return mainConfig.getLong("price.aggregate.breaker.openTime", 60L) * 1000; // 秒 -> 毫秒
+    }
+    
+    public String getPriceFile() {
+        return mainConfig.getString("price.file.path", "prices.txt");
+    }
+    
+    public long getPriceFileInterval() {
+        return mainConfig.getLong("price.file.interval", 1000L); // 毫秒
+    }
+    
+    public String getPriceReplayPath() {
+        return mainConfig.getString("price.replay.path", "ticks.csv");
+    }
+    
+    public double getPriceReplaySpeed() {
+        return mainConfig.getDouble("price.replay.speed", 1.0); // 0 表示尽快回放
+    }
+    
+    public boolean isPriceReplayLoop() {
+        return mainConfig.getBoolean("price.replay.loop", true);
+    }
+    
+    public String getWebSocketUrl() {
+        return mainConfig.getString("price.websocket.url", "wss://fstream.binance.com");
+    }
+    
+    public long getWebSocketStaleTimeout() {
+        return mainConfig.getLong("price.websocket.staleTimeout", 30L) * 1000; // 秒 -> 毫秒
+    }
+    
+    public int getMockPort() {
+        return mainConfig.getInt("price.mock.port", 18765);
+    }
+    
+    public long getMockInterval() {
+        return mainConfig.getLong("price.mock.interval", 500L); // 毫秒
+    }
+    
+    public Map<String, BigDecimal> getMockBasePrices() {
+        Map<String, BigDecimal> prices = new HashMap<>();
+        ConfigurationSection section = mainConfig.getConfigurationSection("price.mock.basePrices");
+        if (section != null) {
+            for (String symbol : section.getKeys(false)) {
+                prices.put(symbol, new BigDecimal(section.getString(symbol, "100")));
+            }
+        }
+        // 没有配置基准价的交易对从100开始
+        for (String symbol : symbols.keySet()) {
+            prices.putIfAbsent(symbol, new BigDecimal("100"));
+        }
+        return prices;
+    }
+    
+    public String getStorageType() {
+        return mainConfig.getString("storage.type", "sqlite").toLowerCase();
+    }
+    
+    public int getStorageNodeId() {
+        int nodeId = mainConfig.getInt("storage.nodeId", 0);
+        return Math.max(0, Math.min(SnowflakeIdGenerator.MAX_NODE_ID, nodeId)); // 0-1023
+    }
+    
+    public String getStorageFile() {
+        return mainConfig.getString("storage.file", "stocks.db");
+    }
+    
+    public long getStorageFlushInterval() {
+        return mainConfig.getLong("storage.flushInterval", 100L); // 100 tick = 5秒
+    }
+    
+    public int getStorageOrderHotWindow() {
+        return mainConfig.getInt("storage.orderHotWindow", 50); // 每个玩家在内存中保留的订单数
+    }
+    
+    public boolean isJournalEnabled() {
+        return mainConfig.getBoolean("journal.enabled", true);
+    }
+    
+    public int getJournalSegmentSize() {
+        return mainConfig.getInt("journal.segmentSize", 64) * 1024 * 1024;
+    }
+    
+    public boolean isJournalFsync() {
+        return mainConfig.getBoolean("journal.fsync", false);
+    }
+    
+    public long getJournalSnapshotInterval() {
+        return mainConfig.getLong("journal.snapshotInterval", 6000L); // 6000 tick = 5分钟
+    }
+    
+    public int getJournalSnapshotRetain() {
+        return mainConfig.getInt("journal.snapshotRetain", 2);
+    }
+    
+    public int getHistoryTickCapacity() {
+        return mainConfig.getInt("history.tickCapacity", 1024);
+    }
+    
+    public int getHistoryCandleCapacity() {
+        return mainConfig.getInt("history.candleCapacity", 240);
+    }
+    
+    public int getEngineShards() {
+        return Math.max(1, mainConfig.getInt("engine.shards", 4));
+    }
+    
+    public int getEngineRingSize() {
+        return Math.max(16, mainConfig.getInt("engine.ringSize", 4096));
+    }
+    
+    public String getEngineWaitStrategy() {
+        return mainConfig.getString("engine.waitStrategy", "park");
+    }
+    
     public long getRiskCheckInterval() {
         return mainConfig.getLong("risk.checkInterval", 40L); // 40 tick = 2秒
     }
     
+    public long getRiskFullScanInterval() {
+        return mainConfig.getLong("risk.fullScanInterval", 1200L); // 1200 tick = 60秒
+    }
+    
+    public int getRiskVolatilityWindow() {
+        return Math.max(2, mainConfig.getInt("risk.volatilityWindow", 30));
+    }
+    
+    public long getFundingInterval() {
+        return mainConfig.getLong("funding.interval", 576000L); // 576000 tick = 8小时，0 = 关闭
+    }
+    
+    public BigDecimal getFundingInterestRate() {
+        return new BigDecimal(mainConfig.getString("funding.interestRate", "0.0001")); // 每期 0.01%，溢价为0时即为费率
+    }
+    
+    public BigDecimal getFundingClamp() {
+        return new BigDecimal(mainConfig.getString("funding.clamp", "0.0005")); // 0.05%
+    }
+    
+    public BigDecimal getFundingMaxRate() {
+        return new BigDecimal(mainConfig.getString("funding.maxRate", "0.0075")); // 0.75%
+    }
+    
+    public boolean isMetricsEnabled() {
+        return mainConfig.getBoolean("metrics.enabled", true);
+    }
+    
+    public long getMetricsDumpInterval() {
+        return mainConfig.getLong("metrics.dumpInterval", 1200L); // 1200 tick = 60秒，0 = 不写出
+    }
+    
+    public String getMetricsDumpFile() {
+        return mainConfig.getString("metrics.dumpFile", "metrics.txt");
+    }
+    
+    public File getBaseDir() {
+        return baseDir;
+    }
+    
     public FileConfiguration getMainConfig() {
         return mainConfig;
     }
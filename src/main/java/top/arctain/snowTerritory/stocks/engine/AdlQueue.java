@@ -0,0 +1,76 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.stocks.storage.StockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 自动减仓排名队列
+ * 某交易对一侧的盈利仓位按 盈利率 × 杠杆 从高到低排列，保险基金不足时依次承担穿仓亏损
+ * 只在强平批次需要时构建（独占执行期间），批次内按顺序消费；
+ * 候选来自开仓均价索引（多仓 RISING、空仓 FALLING），标记价格穿越均价的即为盈利仓位，不扫描全部持仓
+ */
+class AdlQueue {
+
+    private final List<Candidate> ranked;
+    private int cursor;
+
+    private AdlQueue(List<Candidate> ranked) {
+        this.ranked = ranked;
+    }
+
+    /**
+     * 收集交易对指定方向上按标记价格盈利的仓位并排序
+     */
+    static AdlQueue build(StockStorage storage, TriggerIndex entryIndex, String symbol, OrderSide side,
+                          BigDecimal markPrice) {
+        boolean isLong = side == OrderSide.LONG;
+        long mark = FixedPoint.fromDecimalOrInvalid(markPrice);
+        if (mark == FixedPoint.INVALID) {
+            mark = isLong ? Long.MAX_VALUE : 0; // 无法表示时取该方向全部仓位，由精确盈亏筛选
+        }
+        List<UUID> players = new ArrayList<>();
+        entryIndex.collectCrossed(symbol, mark, isLong ? TriggerIndex.Direction.RISING : TriggerIndex.Direction.FALLING,
+                                  players);
+        List<Candidate> candidates = new ArrayList<>(players.size());
+        for (UUID playerId : players) {
+            Position position = storage.getPosition(playerId, symbol);
+            if (position == null || position.getSide() != side || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            BigDecimal pnl = MarginModel.calculateUnrealizedPnl(position, markPrice);
+            BigDecimal notional = position.getEntryPrice().multiply(position.getQty());
+            if (pnl.signum() <= 0 || notional.signum() <= 0) {
+                continue;
+            }
+            double score = pnl.doubleValue() / notional.doubleValue() * Math.max(1, position.getLeverage());
+            candidates.add(new Candidate(position, pnl, score));
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return new AdlQueue(candidates);
+    }
+
+    /**
+     * 下一个排名最高的仓位，队列耗尽时返回 null
+     */
+    Candidate poll() {
+        return cursor < ranked.size() ? ranked.get(cursor++) : null;
+    }
+
+    int size() {
+        return ranked.size() - cursor;
+    }
+
+    /**
+     * 候选仓位及其按标记价格计算的未实现盈亏
+     */
+    record Candidate(Position position, BigDecimal pnl, double score) {
+    }
+}
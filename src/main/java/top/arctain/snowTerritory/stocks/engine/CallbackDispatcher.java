@@ -0,0 +1,146 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 交易结果回调分发器
+ * 交易线程只把结果放入无锁队列，不调用任何 Bukkit API；主线程每 tick 执行一次批量发送：
+ * 先按顺序执行排队的主线程任务，再把同一玩家本 tick 内的消息合并为一次发送
+ */
+public class CallbackDispatcher {
+
+    private static final int MAX_LINES_PER_PLAYER = 8;     // 每个玩家每 tick 最多显示的消息行数
+    private static final int MAX_ITEMS_PER_FLUSH = 10000;  // 单次最多处理的条目，剩余留到下一 tick
+
+    private final JavaPlugin plugin;
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>(); // Notice 或 Runnable
+    private BukkitRunnable flushTask;
+
+    public CallbackDispatcher(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 启动每 tick 一次的发送任务（主线程）
+     */
+    public void start() {
+        if (flushTask != null) {
+            return;
+        }
+        flushTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+        flushTask.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * 停止发送任务，并发送剩余的消息（在主线程调用）
+     */
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+    }
+
+    /**
+     * 向玩家发送一条消息（任意线程，玩家离线时丢弃）
+     */
+    public void send(UUID playerId, String key, String defaultValue) {
+        queue.add(new Notice(playerId, key, defaultValue));
+    }
+
+    /**
+     * 在下一次发送时于主线程执行任务（任意线程）
+     */
+    public void runOnMain(Runnable task) {
+        queue.add(task);
+    }
+
+    /**
+     * 把交易结果作为消息发送给玩家的回调
+     */
+    public TradeEngine.TradeCallback reply(UUID playerId, String successKey, String errorKey) {
+        return new TradeEngine.TradeCallback() {
+            @Override
+            public void onSuccess(String message) {
+                send(playerId, successKey, "&a✓ &f" + message);
+            }
+
+            @Override
+            public void onError(String error) {
+                send(playerId, errorKey, "&c✗ &f" + error);
+            }
+        };
+    }
+
+    /**
+     * 处理队列中的条目（主线程）
+     */
+    public void flush() {
+        Map<UUID, List<Notice>> notices = null;
+        Object item;
+        int processed = 0;
+        while (processed++ < MAX_ITEMS_PER_FLUSH && (item = queue.poll()) != null) {
+            if (item instanceof Notice notice) {
+                if (notices == null) {
+                    notices = new LinkedHashMap<>();
+                }
+                notices.computeIfAbsent(notice.playerId, k -> new ArrayList<>()).add(notice);
+                continue;
+            }
+            try {
+                ((Runnable) item).run();
+            } catch (Exception e) {
+                MessageUtils.logError("交易回调任务异常: " + e.getMessage());
+            }
+        }
+        if (notices == null) {
+            return;
+        }
+        for (Map.Entry<UUID, List<Notice>> entry : notices.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player != null) {
+                player.sendMessage(join(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * 合并为一条多行消息，超出部分只显示条数
+     */
+    private static String join(List<Notice> notices) {
+        StringBuilder message = new StringBuilder();
+        int shown = Math.min(notices.size(), MAX_LINES_PER_PLAYER);
+        for (int i = 0; i < shown; i++) {
+            Notice notice = notices.get(i);
+            if (i > 0) {
+                message.append('\n');
+            }
+            message.append(MessageUtils.formatConfigMessage(notice.key, notice.defaultValue));
+        }
+        if (notices.size() > shown) {
+            message.append('\n').append(MessageUtils.colorize("&7... 另有 " + (notices.size() - shown) + " 条交易通知"));
+        }
+        return message.toString();
+    }
+
+    private record Notice(UUID playerId, String key, String defaultValue) {
+    }
+}
@@ -0,0 +1,410 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.Account;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.price.PriceListener;
+import top.arctain.snowTerritory.stocks.price.PriceService;
+import top.arctain.snowTerritory.stocks.storage.StockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 账户净值跟踪
+ * 为每个有持仓的账户维护 钱包余额、仓位保证金、未实现盈亏、维持保证金 的合计（定点数）。
+ * 标记价格更新时只对持有该交易对的账户应用该交易对仓位的增量，不重新遍历账户的全部仓位；
+ * 仓位或余额变更时由交易分片更新对应的一项。
+ * 全仓账户的净值跌破维持保证金合计时记入待检查集合，由风控引擎复核后整体强平。
+ * 设置了排行榜时，每次合计值变化都把该账户的新分数推送到排行榜
+ */
+public class EquityTracker implements PriceListener {
+
+    private final StockStorage storage;
+    private final PriceService priceService;
+    private final Map<UUID, AccountEquity> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Set<AccountEquity>> holders = new ConcurrentHashMap<>(); // 交易对 -> 持仓账户
+    private final Set<UUID> atRisk = ConcurrentHashMap.newKeySet();
+    private Leaderboard leaderboard;
+
+    public EquityTracker(StockStorage storage, PriceService priceService) {
+        this.storage = storage;
+        this.priceService = priceService;
+    }
+
+    /**
+     * 设置排行榜（为空则不推送）
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * 按当前跟踪的数据重建排行榜（启动恢复仓位后调用一次，需遍历全部账户）
+     */
+    public void rebuildLeaderboard() {
+        if (leaderboard == null) {
+            return;
+        }
+        leaderboard.clear();
+        storage.forEachAccount(account -> {
+            if (InsuranceFund.isFundAccount(account.getPlayerId())) {
+                return;
+            }
+            AccountEquity equity = accounts.get(account.getPlayerId());
+            if (equity == null) {
+                publishWallet(account);
+                return;
+            }
+            synchronized (equity) {
+                publish(equity, true);
+            }
+        });
+    }
+
+    /**
+     * 同步账户余额与该交易对的仓位（在玩家所属交易分片中调用）
+     */
+    public void update(UUID playerId, Symbol symbol) {
+        String symbolName = symbol.getName();
+        Position position = storage.getPosition(playerId, symbolName);
+        boolean hasPosition = position != null && position.getQty().compareTo(BigDecimal.ZERO) > 0;
+        AccountEquity equity = hasPosition
+            ? accounts.computeIfAbsent(playerId, AccountEquity::new)
+            : accounts.get(playerId);
+        if (equity == null) {
+            publishWallet(storage.getAccount(playerId));
+            return;
+        }
+        synchronized (equity) {
+            equity.setAccount(storage.getAccount(playerId));
+            Leg old = equity.legs.remove(symbolName);
+            if (old != null) {
+                equity.remove(old);
+            }
+            if (hasPosition) {
+                Leg leg = new Leg(position, symbol);
+                leg.mark(priceService.getMarkPriceFixed(symbolName));
+                equity.legs.put(symbolName, leg);
+                equity.add(leg);
+                holders.computeIfAbsent(symbolName, k -> ConcurrentHashMap.newKeySet()).add(equity);
+            } else {
+                Set<AccountEquity> set = holders.get(symbolName);
+                if (set != null) {
+                    set.remove(equity);
+                }
+                if (equity.legs.isEmpty()) {
+                    accounts.remove(playerId);
+                    atRisk.remove(playerId);
+                    publishWallet(storage.getAccount(playerId));
+                    return;
+                }
+            }
+            flagIfAtRisk(equity);
+            publish(equity, true);
+        }
+    }
+
+    /**
+     * 只同步账户余额与保证金模式（资金费等不涉及仓位的变更后调用）
+     */
+    public void updateAccount(UUID playerId) {
+        AccountEquity equity = accounts.get(playerId);
+        if (equity == null) {
+            publishWallet(storage.getAccount(playerId));
+            return;
+        }
+        synchronized (equity) {
+            equity.setAccount(storage.getAccount(playerId));
+            flagIfAtRisk(equity);
+            publish(equity, true);
+        }
+    }
+
+    @Override
+    public void onLastPrice(String symbol, long timeMs, long price) {
+        // 净值按标记价格计算
+    }
+
+    /**
+     * 标记价格更新：对持有该交易对的账户应用未实现盈亏与维持保证金的增量
+     */
+    @Override
+    public void onMarkPrice(String symbol, long timeMs, long markPrice) {
+        Set<AccountEquity> set = holders.get(symbol);
+        if (set == null || markPrice <= 0) {
+            return;
+        }
+        for (AccountEquity equity : set) {
+            synchronized (equity) {
+                Leg leg = equity.legs.get(symbol);
+                if (leg == null) {
+                    continue;
+                }
+                equity.remove(leg);
+                leg.mark(markPrice);
+                equity.add(leg);
+                flagIfAtRisk(equity);
+                publish(equity, false);
+            }
+        }
+    }
+
+    private void flagIfAtRisk(AccountEquity equity) {
+        if (equity.cross && equity.mayBeBelowMaintenance()) {
+            atRisk.add(equity.playerId);
+        }
+    }
+
+    /**
+     * 推送账户的净值、未实现盈亏（账户含无法精确计算的仓位时保留上一次的分数）；
+     * 已实现盈亏只在成交后变化，标记价格更新时不推送
+     */
+    private void publish(AccountEquity equity, boolean withRealized) {
+        if (leaderboard == null) {
+            return;
+        }
+        if (equity.inexact == 0 && !equity.walletInexact) {
+            leaderboard.update(Leaderboard.Type.EQUITY, equity.playerId, equity.equity());
+            leaderboard.update(Leaderboard.Type.UNREALIZED, equity.playerId, equity.unrealizedPnl);
+        }
+        if (withRealized && equity.realizedPnl != FixedPoint.INVALID) {
+            leaderboard.update(Leaderboard.Type.REALIZED, equity.playerId, equity.realizedPnl);
+        }
+    }
+
+    /**
+     * 推送没有持仓的账户（净值即钱包余额）
+     */
+    private void publishWallet(Account account) {
+        if (leaderboard == null) {
+            return;
+        }
+        UUID playerId = account.getPlayerId();
+        long wallet = FixedPoint.fromDecimalOrInvalid(account.getWalletBalance());
+        if (wallet != FixedPoint.INVALID) {
+            leaderboard.update(Leaderboard.Type.EQUITY, playerId, wallet);
+        }
+        leaderboard.update(Leaderboard.Type.UNREALIZED, playerId, 0);
+        long realized = FixedPoint.fromDecimalOrInvalid(account.getRealizedPnl());
+        if (realized != FixedPoint.INVALID) {
+            leaderboard.update(Leaderboard.Type.REALIZED, playerId, realized);
+        }
+    }
+
+    /**
+     * 取出自上次调用以来净值可能跌破维持保证金的全仓账户，返回数量
+     */
+    public int drainAtRisk(Collection<UUID> out) {
+        int count = 0;
+        Iterator<UUID> iterator = atRisk.iterator();
+        while (iterator.hasNext()) {
+            out.add(iterator.next());
+            iterator.remove();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 遍历全部有持仓的全仓账户
+     */
+    public void forEachCrossAccount(Consumer<UUID> consumer) {
+        for (AccountEquity equity : accounts.values()) {
+            if (equity.cross) {
+                consumer.accept(equity.playerId);
+            }
+        }
+    }
+
+    /**
+     * 全仓账户净值是否已跌破维持保证金合计（定点数无法表示时按 BigDecimal 重新计算）
+     */
+    public boolean isBelowMaintenance(UUID playerId) {
+        AccountEquity equity = accounts.get(playerId);
+        if (equity == null) {
+            return false;
+        }
+        synchronized (equity) {
+            if (equity.inexact == 0 && !equity.walletInexact) {
+                return equity.maintenance > 0 && equity.equity() <= equity.maintenance;
+            }
+            BigDecimal total = storage.getAccount(playerId).getWalletBalance();
+            BigDecimal maintenance = BigDecimal.ZERO;
+            for (Leg leg : equity.legs.values()) {
+                BigDecimal markPrice = priceService.getMarkPrice(leg.position.getSymbol());
+                if (markPrice.compareTo(BigDecimal.ZERO) <= 0) {
+                    return false;
+                }
+                total = total.add(MarginModel.calculateAvailableMargin(leg.position, markPrice));
+                maintenance = maintenance.add(MarginModel.calculateMaintenanceMargin(
+                    markPrice, leg.position.getQty(), leg.mmr));
+            }
+            return total.compareTo(maintenance) <= 0;
+        }
+    }
+
+    /**
+     * 账户净值（钱包 + 仓位保证金 + 未实现盈亏），没有持仓时返回 null
+     */
+    public BigDecimal getEquity(UUID playerId) {
+        AccountEquity equity = accounts.get(playerId);
+        if (equity == null) {
+            return null;
+        }
+        synchronized (equity) {
+            return FixedPoint.toDecimal(equity.equity());
+        }
+    }
+
+    /**
+     * 未实现盈亏合计，没有持仓时返回0
+     */
+    public BigDecimal getUnrealizedPnl(UUID playerId) {
+        AccountEquity equity = accounts.get(playerId);
+        if (equity == null) {
+            return BigDecimal.ZERO;
+        }
+        synchronized (equity) {
+            return FixedPoint.toDecimal(equity.unrealizedPnl);
+        }
+    }
+
+    /**
+     * 维持保证金合计，没有持仓时返回0
+     */
+    public BigDecimal getMaintenanceMargin(UUID playerId) {
+        AccountEquity equity = accounts.get(playerId);
+        if (equity == null) {
+            return BigDecimal.ZERO;
+        }
+        synchronized (equity) {
+            return FixedPoint.toDecimal(equity.maintenance);
+        }
+    }
+
+    /**
+     * 跟踪中的账户数
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    public void clear() {
+        accounts.clear();
+        holders.clear();
+        atRisk.clear();
+    }
+
+    /**
+     * 单个账户的合计值（访问时持有对象锁）
+     */
+    private static final class AccountEquity {
+        final UUID playerId;
+        final Map<String, Leg> legs = new HashMap<>();
+        boolean cross;
+        long wallet;
+        long margin;
+        long unrealizedPnl;
+        long maintenance;
+        long realizedPnl;   // 累计已实现盈亏，无法表示时为 INVALID
+        int inexact;        // 无法用定点数计算的仓位数
+        boolean walletInexact;
+
+        AccountEquity(UUID playerId) {
+            this.playerId = playerId;
+        }
+
+        void setAccount(Account account) {
+            cross = account.isCrossMargin();
+            long value = FixedPoint.fromDecimalOrInvalid(account.getWalletBalance());
+            walletInexact = value == FixedPoint.INVALID;
+            wallet = walletInexact ? 0 : value;
+            realizedPnl = FixedPoint.fromDecimalOrInvalid(account.getRealizedPnl());
+        }
+
+        void add(Leg leg) {
+            margin += leg.margin;
+            unrealizedPnl += leg.unrealizedPnl;
+            maintenance += leg.maintenance;
+            if (!leg.exact) {
+                inexact++;
+            }
+        }
+
+        void remove(Leg leg) {
+            margin -= leg.margin;
+            unrealizedPnl -= leg.unrealizedPnl;
+            maintenance -= leg.maintenance;
+            if (!leg.exact) {
+                inexact--;
+            }
+        }
+
+        long equity() {
+            return wallet + margin + unrealizedPnl;
+        }
+
+        /**
+         * 存在无法精确计算的仓位时总是交给风控复核
+         */
+        boolean mayBeBelowMaintenance() {
+            return inexact != 0 || walletInexact || (maintenance > 0 && equity() <= maintenance);
+        }
+    }
+
+    /**
+     * 账户在单个交易对上的仓位贡献（创建时复制仓位数值，仓位变更后整体替换）
+     */
+    private static final class Leg {
+        final Position position;
+        final OrderSide side;
+        final long qty;
+        final long entryPrice;
+        final long margin;
+        final BigDecimal mmr;
+        final long mmrFixed;
+        boolean exact;
+        long unrealizedPnl;
+        long maintenance;
+
+        Leg(Position position, Symbol symbol) {
+            this.position = position;
+            this.side = position.getSide();
+            this.qty = position.getQtyFixed();
+            this.entryPrice = position.getEntryPriceFixed();
+            this.mmr = symbol.getMaintenanceMarginRate();
+            this.mmrFixed = symbol.getMaintenanceMarginRateFixed();
+            this.exact = position.hasFixedValues() && mmrFixed != FixedPoint.INVALID;
+            this.margin = exact ? position.getIsolatedMarginFixed() : 0;
+        }
+
+        /**
+         * 按新的标记价格重算本仓位的未实现盈亏与维持保证金，溢出时改为 BigDecimal 复核
+         */
+        void mark(long markPrice) {
+            if (!exact || markPrice <= 0) {
+                return;
+            }
+            try {
+                long pnl = MarginModel.unrealizedPnlFixed(side, entryPrice, qty, markPrice);
+                long mm = MarginModel.maintenanceMarginFixed(markPrice, qty, mmrFixed);
+                unrealizedPnl = pnl;
+                maintenance = mm;
+            } catch (ArithmeticException e) {
+                exact = false;
+                unrealizedPnl = 0;
+                maintenance = 0;
+            }
+        }
+    }
+}
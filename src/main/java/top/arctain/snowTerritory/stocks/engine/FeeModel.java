@@ -1,6 +1,7 @@
 package top.arctain.snowTerritory.stocks.engine;
 
 import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -15,10 +16,26 @@ public class FeeModel {
      * fee = price * qty * takerFeeRate
      */
     public static BigDecimal calculateTakerFee(Symbol symbol, BigDecimal qty, BigDecimal price) {
+        long fixedPrice = FixedPoint.fromDecimalExact(price);
+        long fixedQty = FixedPoint.fromDecimalExact(qty);
+        if (fixedPrice != FixedPoint.INVALID && fixedQty != FixedPoint.INVALID
+            && symbol.getTakerFeeRateFixed() != FixedPoint.INVALID) {
+            try {
+                return FixedPoint.toDecimal(takerFeeFixed(symbol, fixedQty, fixedPrice));
+            } catch (ArithmeticException e) {
+                // 溢出，回退到 BigDecimal
+            }
+        }
         BigDecimal notional = price.multiply(qty);
         BigDecimal fee = notional.multiply(symbol.getTakerFeeRate());
         // 保留8位小数
         return fee.setScale(8, RoundingMode.HALF_UP);
     }
+    
+    /**
+     * 计算taker手续费（定点数）
+     */
+    public static long takerFeeFixed(Symbol symbol, long qty, long price) {
+        return FixedPoint.mul3(price, qty, symbol.getTakerFeeRateFixed());
+    }
 }
-
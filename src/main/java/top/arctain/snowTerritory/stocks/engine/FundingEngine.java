@@ -0,0 +1,154 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import top.arctain.snowTerritory.stocks.metrics.LatencyHistogram;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.price.PriceService;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 资金费引擎
+ * 按固定周期根据标记价格与最新成交价的溢价计算各交易对的资金费率，
+ * 交由交易引擎在独占期间按交易对批量结算全部仓位；价格过期的交易对本期不结算
+ * 溢价只在价格源分别提供标记价格和最新成交价时才有意义（WebSocket、聚合、回放价格源）；
+ * 两者相同的价格源（REST、文件）溢价恒为0，费率即为限制在 ±clamp 内的利率
+ */
+public class FundingEngine {
+
+    private final JavaPlugin plugin;
+    private final PriceService priceService;
+    private final TradeEngine tradeEngine;
+    private final Collection<Symbol> symbols;
+    private final long interval;          // 结算间隔（tick）
+    private final BigDecimal interestRate; // 每期利率
+    private final BigDecimal clamp;        // 利率与溢价之差的限制
+    private final BigDecimal maxRate;      // 单期费率上限
+    private final AtomicBoolean settling = new AtomicBoolean(false);
+    private CallbackDispatcher dispatcher;
+    private LatencyHistogram settleTime;
+    private BukkitRunnable settleTask;
+
+    public FundingEngine(JavaPlugin plugin, PriceService priceService, TradeEngine tradeEngine,
+                         Collection<Symbol> symbols, long interval,
+                         BigDecimal interestRate, BigDecimal clamp, BigDecimal maxRate) {
+        this.plugin = plugin;
+        this.priceService = priceService;
+        this.tradeEngine = tradeEngine;
+        this.symbols = symbols;
+        this.interval = interval;
+        this.interestRate = interestRate;
+        this.clamp = clamp;
+        this.maxRate = maxRate;
+    }
+
+    /**
+     * 设置回调分发器（结算后通知玩家，为空则不通知）
+     */
+    public void setCallbackDispatcher(CallbackDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * 设置运行指标（为空则不统计）
+     */
+    public void setMetrics(StocksMetrics metrics) {
+        this.settleTime = metrics.histogram("funding.settle");
+    }
+
+    /**
+     * 启动定期结算
+     */
+    public void start() {
+        if (settleTask != null || interval <= 0) {
+            return;
+        }
+        settleTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                settle();
+            }
+        };
+        settleTask.runTaskTimerAsynchronously(plugin, interval, interval);
+        MessageUtils.logInfo("资金费引擎已启动，结算间隔: " + (interval / 20) + "秒");
+    }
+
+    /**
+     * 停止定期结算
+     */
+    public void stop() {
+        if (settleTask != null) {
+            settleTask.cancel();
+            settleTask = null;
+        }
+    }
+
+    /**
+     * 计算当前各交易对的资金费率（没有价格或价格过期的交易对不参与）
+     */
+    public List<FundingRate> calculateRates() {
+        List<FundingRate> rates = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            String name = symbol.getName();
+            BigDecimal markPrice = priceService.getMarkPrice(name);
+            if (markPrice.compareTo(BigDecimal.ZERO) <= 0 || tradeEngine.isPriceStale(name)) {
+                continue;
+            }
+            // 没有独立最新成交价的价格源返回标记价格，溢价为0
+            BigDecimal lastPrice = priceService.getLastPrice(name);
+            BigDecimal rate = FundingModel.calculateRate(markPrice, lastPrice, interestRate, clamp, maxRate);
+            if (rate.signum() != 0) {
+                rates.add(new FundingRate(symbol, markPrice, rate));
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * 执行一期结算，上一期未完成时跳过
+     * 在异步定时线程中调用：发布结算前需等待正在进行的强平批次或快照结束，不会与其交错发布屏障
+     */
+    public void settle() {
+        List<FundingRate> rates = calculateRates();
+        if (rates.isEmpty() || !settling.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        tradeEngine.settleFunding(rates).whenComplete((payments, error) -> {
+            settling.set(false);
+            if (error != null) {
+                MessageUtils.logError("资金费结算失败: " + error.getMessage());
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (settleTime != null) {
+                settleTime.record(elapsed);
+            }
+            MessageUtils.logInfo("资金费结算完成，交易对: " + rates.size() + "，账户: " + payments.size()
+                                 + "，耗时: " + (elapsed / 1_000_000) + "ms");
+            notifyPlayers(payments);
+        });
+    }
+
+    private void notifyPlayers(Map<UUID, BigDecimal> payments) {
+        if (dispatcher == null) {
+            return;
+        }
+        for (Map.Entry<UUID, BigDecimal> entry : payments.entrySet()) {
+            BigDecimal payment = entry.getValue().stripTrailingZeros();
+            String text = payment.signum() >= 0
+                ? "&e资金费结算: &a+" + payment.toPlainString() + " USDT"
+                : "&e资金费结算: &c" + payment.toPlainString() + " USDT";
+            dispatcher.send(entry.getKey(), "stocks.funding-settled", text);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 资金费计算模型
+ * 溢价 = (最新成交价 - 标记价格) / 标记价格（最新成交价与标记价格相同时为0，费率即为限制后的利率）
+ * 费率 = 溢价 + clamp(利率 - 溢价, -clamp, clamp)，再限制在 ±maxRate 以内
+ * 费率为正时多头向空头支付，为负时空头向多头支付，金额 = 标记价格 * 数量 * 费率
+ */
+public class FundingModel {
+
+    /**
+     * 计算资金费率（保留8位小数）
+     */
+    public static BigDecimal calculateRate(BigDecimal markPrice, BigDecimal lastPrice, BigDecimal interestRate,
+                                           BigDecimal clamp, BigDecimal maxRate) {
+        BigDecimal premium = lastPrice.subtract(markPrice).divide(markPrice, 8, RoundingMode.HALF_UP);
+        BigDecimal adjustment = interestRate.subtract(premium).max(clamp.negate()).min(clamp);
+        return premium.add(adjustment).max(maxRate.negate()).min(maxRate).setScale(8, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 仓位本期的资金费（正数为收入，负数为支出）
+     */
+    public static BigDecimal calculatePayment(OrderSide side, BigDecimal qty, BigDecimal markPrice, BigDecimal rate) {
+        BigDecimal payment = markPrice.multiply(qty).multiply(rate).setScale(8, RoundingMode.HALF_UP);
+        return side == OrderSide.LONG ? payment.negate() : payment;
+    }
+
+    /**
+     * 仓位本期的资金费（定点数，正数为收入，负数为支出），溢出时抛出 ArithmeticException
+     */
+    public static long paymentFixed(OrderSide side, long qty, long markPrice, long rate) {
+        long payment = FixedPoint.mul3(markPrice, qty, rate);
+        return side == OrderSide.LONG ? -payment : payment;
+    }
+}
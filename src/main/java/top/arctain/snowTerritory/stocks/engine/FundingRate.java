@@ -0,0 +1,11 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.Symbol;
+
+import java.math.BigDecimal;
+
+/**
+ * 单个交易对的一期资金费率（结算使用的标记价格与费率）
+ */
+public record FundingRate(Symbol symbol, BigDecimal markPrice, BigDecimal rate) {
+}
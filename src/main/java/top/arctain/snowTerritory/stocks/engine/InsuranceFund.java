@@ -0,0 +1,55 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.Account;
+import top.arctain.snowTerritory.stocks.storage.StockStorage;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * 保险基金
+ * 以保留账户的钱包余额记账，随账户一起持久化和写入快照：
+ * 逐仓强平剩余的保证金计入基金，穿仓亏损由基金垫付；余额不足时可为负，由自动减仓补回
+ * 只在交易引擎独占执行期间或回放时变更
+ */
+public class InsuranceFund {
+
+    public static final UUID ACCOUNT_ID = new UUID(0, 1); // 保留账户，不参与排行与强平
+
+    private final StockStorage storage;
+
+    InsuranceFund(StockStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * 是否为保险基金账户
+     */
+    public static boolean isFundAccount(UUID playerId) {
+        return ACCOUNT_ID.equals(playerId);
+    }
+
+    /**
+     * 当前余额（USDT），可能为负
+     */
+    public BigDecimal getBalance() {
+        return storage.getAccount(ACCOUNT_ID).getWalletBalance();
+    }
+
+    /**
+     * 记入一笔收入（正数）或支出（负数），返回支出中超出原有正余额、基金无力承担的部分
+     */
+    BigDecimal book(BigDecimal amount) {
+        if (amount.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        Account account = storage.getAccount(ACCOUNT_ID);
+        BigDecimal before = account.getWalletBalance();
+        account.addWalletBalance(amount);
+        storage.saveAccount(account);
+        if (amount.signum() > 0) {
+            return BigDecimal.ZERO;
+        }
+        return amount.negate().subtract(before.max(BigDecimal.ZERO)).max(BigDecimal.ZERO);
+    }
+}
@@ -0,0 +1,136 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 盈亏排行榜
+ * 每个榜单是按分数降序排列的跳表加上 玩家 -> 当前条目 的位置表：
+ * 成交和标记价格更新时由净值跟踪推送单个账户的新分数，更新为 O(log n)，读取前 K 名为 O(K)，不扫描账户和仓位
+ */
+public class Leaderboard {
+
+    /**
+     * 榜单类型
+     */
+    public enum Type {
+        EQUITY("净值"),           // 钱包 + 仓位保证金 + 未实现盈亏
+        UNREALIZED("未实现盈亏"),
+        REALIZED("已实现盈亏");   // 累计平仓盈亏
+
+        private final String displayName;
+
+        Type(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * 按名称查找（equity / pnl / realized），未知时返回 null
+         */
+        public static Type fromName(String name) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "equity":
+                    return EQUITY;
+                case "pnl":
+                case "unrealized":
+                    return UNREALIZED;
+                case "realized":
+                    return REALIZED;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final Board[] boards = new Board[Type.values().length];
+
+    public Leaderboard() {
+        for (Type type : Type.values()) {
+            boards[type.ordinal()] = new Board();
+        }
+    }
+
+    /**
+     * 更新玩家在指定榜单上的分数（定点数，8位小数）
+     */
+    public void update(Type type, UUID playerId, long score) {
+        boards[type.ordinal()].update(playerId, score);
+    }
+
+    /**
+     * 前 K 名（按分数降序）
+     */
+    public List<Rank> top(Type type, int k) {
+        List<Rank> result = new ArrayList<>(Math.max(0, k));
+        Iterator<Rank> iterator = boards[type.ordinal()].ranks.iterator();
+        while (result.size() < k && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    /**
+     * 榜单上的玩家数
+     */
+    public int size(Type type) {
+        return boards[type.ordinal()].positions.size();
+    }
+
+    public void clear() {
+        for (Board board : boards) {
+            board.positions.clear();
+            board.ranks.clear();
+        }
+    }
+
+    /**
+     * 榜单条目
+     */
+    public record Rank(UUID playerId, long score) {
+
+        public BigDecimal getScore() {
+            return FixedPoint.toDecimal(score);
+        }
+    }
+
+    private static final Comparator<Rank> ORDER = Comparator.comparingLong(Rank::score).reversed()
+                                                            .thenComparing(Rank::playerId);
+
+    /**
+     * 单个榜单：跳表保存排序，位置表记录每个玩家当前的条目以便删除旧分数
+     */
+    private static final class Board {
+        final NavigableSet<Rank> ranks = new ConcurrentSkipListSet<>(ORDER);
+        final Map<UUID, Rank> positions = new ConcurrentHashMap<>();
+
+        void update(UUID playerId, long score) {
+            // compute 锁住该玩家的位置表条目，同一玩家的并发更新按顺序替换
+            positions.compute(playerId, (id, old) -> {
+                if (old != null) {
+                    if (old.score() == score) {
+                        return old;
+                    }
+                    ranks.remove(old);
+                }
+                Rank rank = new Rank(id, score);
+                ranks.add(rank);
+                return rank;
+            });
+        }
+    }
+}
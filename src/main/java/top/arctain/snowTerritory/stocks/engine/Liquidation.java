@@ -0,0 +1,11 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.Symbol;
+
+import java.util.UUID;
+
+/**
+ * 风控检查选出的一笔待强平仓位
+ */
+public record Liquidation(UUID playerId, Symbol symbol) {
+}
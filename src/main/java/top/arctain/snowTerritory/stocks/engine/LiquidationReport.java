@@ -0,0 +1,14 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.LiquidationEvent;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 一批强平的执行结果
+ * liquidated 的 loss 为玩家损失；deleveraged 为被自动减仓的对手方仓位，loss 为其让利金额
+ */
+public record LiquidationReport(List<LiquidationEvent> liquidated, List<LiquidationEvent> deleveraged,
+                                BigDecimal insuranceFund) {
+}
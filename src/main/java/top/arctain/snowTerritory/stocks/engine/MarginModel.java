@@ -3,12 +3,14 @@ package top.arctain.snowTerritory.stocks.engine;
 import top.arctain.snowTerritory.stocks.model.OrderSide;
 import top.arctain.snowTerritory.stocks.model.Position;
 import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
 /**
  * 保证金计算模型
+ * 输入可精确表示为8位小数时走定点数路径，否则回退到 BigDecimal 计算，两者结果一致
  */
 public class MarginModel {
     
@@ -17,6 +19,15 @@ public class MarginModel {
      * IM = (P * Q) / L
      */
     public static BigDecimal calculateInitialMargin(BigDecimal price, BigDecimal qty, int leverage) {
+        long fixedPrice = FixedPoint.fromDecimalExact(price);
+        long fixedQty = FixedPoint.fromDecimalExact(qty);
+        if (fixedPrice != FixedPoint.INVALID && fixedQty != FixedPoint.INVALID) {
+            try {
+                return FixedPoint.toDecimal(initialMarginFixed(fixedPrice, fixedQty, leverage));
+            } catch (ArithmeticException e) {
+                // 溢出，回退到 BigDecimal
+            }
+        }
         BigDecimal notional = price.multiply(qty);
         BigDecimal margin = notional.divide(new BigDecimal(leverage), 8, RoundingMode.HALF_UP);
         return margin;
@@ -27,6 +38,16 @@ public class MarginModel {
      * MM = V * mmr
      */
     public static BigDecimal calculateMaintenanceMargin(BigDecimal price, BigDecimal qty, BigDecimal mmr) {
+        long fixedPrice = FixedPoint.fromDecimalExact(price);
+        long fixedQty = FixedPoint.fromDecimalExact(qty);
+        long fixedMmr = FixedPoint.fromDecimalExact(mmr);
+        if (fixedPrice != FixedPoint.INVALID && fixedQty != FixedPoint.INVALID && fixedMmr != FixedPoint.INVALID) {
+            try {
+                return FixedPoint.toDecimal(maintenanceMarginFixed(fixedPrice, fixedQty, fixedMmr));
+            } catch (ArithmeticException e) {
+                // 溢出，回退到 BigDecimal
+            }
+        }
         BigDecimal notional = price.multiply(qty);
         BigDecimal margin = notional.multiply(mmr);
         return margin.setScale(8, RoundingMode.HALF_UP);
@@ -61,10 +82,10 @@ public class MarginModel {
     }
     
     /**
-     * 计算爆仓价（数值方法）
-     * 当 availableMargin <= maintenanceMargin 时触发强平
-     * 多仓：liquidationPrice = entryPrice - (isolatedMargin / qty) * (1 - mmr)
-     * 空仓：liquidationPrice = entryPrice + (isolatedMargin / qty) * (1 - mmr)
+     * 计算爆仓价
+     * 当 availableMargin <= maintenanceMargin 时触发强平，即 isolatedMargin + uPnL = P * Q * mmr 的解：
+     * 多仓：liquidationPrice = (entryPrice - isolatedMargin / qty) / (1 - mmr)
+     * 空仓：liquidationPrice = (entryPrice + isolatedMargin / qty) / (1 + mmr)
      */
     public static BigDecimal calculateLiquidationPrice(Position position, Symbol symbol) {
         BigDecimal qty = position.getQty();
@@ -80,14 +101,72 @@ public class MarginModel {
         BigDecimal marginPerUnit = isolatedMargin.divide(qty, 8, RoundingMode.HALF_UP);
         
         if (position.getSide() == OrderSide.LONG) {
-            // 多仓爆仓价 = 开仓价 - (保证金/数量) * (1 - 维持保证金率)
-            BigDecimal adjustment = marginPerUnit.multiply(BigDecimal.ONE.subtract(mmr));
-            return entryPrice.subtract(adjustment);
+            // 多仓爆仓价 = (开仓价 - 保证金/数量) / (1 - 维持保证金率)
+            BigDecimal price = entryPrice.subtract(marginPerUnit)
+                                         .divide(BigDecimal.ONE.subtract(mmr), 8, RoundingMode.HALF_UP);
+            return price.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : price;
         } else {
-            // 空仓爆仓价 = 开仓价 + (保证金/数量) * (1 - 维持保证金率)
-            BigDecimal adjustment = marginPerUnit.multiply(BigDecimal.ONE.subtract(mmr));
-            return entryPrice.add(adjustment);
+            // 空仓爆仓价 = (开仓价 + 保证金/数量) / (1 + 维持保证金率)
+            return entryPrice.add(marginPerUnit)
+                             .divide(BigDecimal.ONE.add(mmr), 8, RoundingMode.HALF_UP);
+        }
+    }
+    
+    // ========== 定点数路径（8位小数的 long，见 FixedPoint），溢出时抛出 ArithmeticException ==========
+    
+    /**
+     * 初始保证金 IM = (P * Q) / L
+     */
+    public static long initialMarginFixed(long price, long qty, int leverage) {
+        return FixedPoint.mulDivInt(price, qty, leverage);
+    }
+    
+    /**
+     * 维持保证金 MM = P * Q * mmr
+     */
+    public static long maintenanceMarginFixed(long price, long qty, long mmr) {
+        return FixedPoint.mul3(price, qty, mmr);
+    }
+    
+    /**
+     * 未实现盈亏（保留8位小数）
+     */
+    public static long unrealizedPnlFixed(OrderSide side, long entryPrice, long qty, long currentPrice) {
+        long diff = side == OrderSide.LONG
+            ? FixedPoint.sub(currentPrice, entryPrice)
+            : FixedPoint.sub(entryPrice, currentPrice);
+        return FixedPoint.mul(diff, qty);
+    }
+    
+    public static long unrealizedPnlFixed(Position position, long currentPrice) {
+        return unrealizedPnlFixed(position.getSide(), position.getEntryPriceFixed(),
+                                  position.getQtyFixed(), currentPrice);
+    }
+    
+    /**
+     * 可用保证金（逐仓）= isolatedMargin + uPnL
+     */
+    public static long availableMarginFixed(Position position, long currentPrice) {
+        return FixedPoint.add(position.getIsolatedMarginFixed(), unrealizedPnlFixed(position, currentPrice));
+    }
+    
+    /**
+     * 爆仓价，公式同 calculateLiquidationPrice（结果保留8位小数，多仓可能为负，表示不会强平）
+     */
+    public static long liquidationPriceFixed(OrderSide side, long entryPrice, long qty,
+                                             long isolatedMargin, long mmr) {
+        if (qty <= 0) {
+            return 0;
+        }
+        long marginPerUnit = FixedPoint.div(isolatedMargin, qty);
+        if (side == OrderSide.LONG) {
+            return FixedPoint.div(FixedPoint.sub(entryPrice, marginPerUnit), FixedPoint.sub(FixedPoint.ONE, mmr));
         }
+        return FixedPoint.div(FixedPoint.add(entryPrice, marginPerUnit), FixedPoint.add(FixedPoint.ONE, mmr));
+    }
+    
+    public static long liquidationPriceFixed(Position position, long mmr) {
+        return liquidationPriceFixed(position.getSide(), position.getEntryPriceFixed(), position.getQtyFixed(),
+                                     position.getIsolatedMarginFixed(), mmr);
     }
 }
-
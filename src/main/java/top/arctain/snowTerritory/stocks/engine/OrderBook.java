@@ -0,0 +1,268 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.Order;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 单个交易对的限价挂单簿
+ * 按价格分档（TreeMap，插入/删除 O(log n)），同一价格档内按时间先后排队（FIFO），
+ * 缓存最优买价/卖价档位，读取最优价 O(1)。价格与数量均为定点数。
+ * 挂单簿只负责撮合并产出成交，账户结算由各玩家所属的交易分片执行
+ */
+public class OrderBook {
+
+    private final String symbol;
+    private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder()); // 买单，价格从高到低
+    private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();                          // 卖单，价格从低到高
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private PriceLevel bestBid;
+    private PriceLevel bestAsk;
+
+    OrderBook(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * 提交一笔限价单：先与对手方挂单按价格优先、时间优先撮合，
+     * 剩余部分若已穿越市场最新价（marketPrice > 0）则按最新价成交，否则挂入订单簿
+     */
+    synchronized void submit(Entry taker, long marketPrice, List<Fill> fills) {
+        boolean buy = taker.side == OrderSide.LONG;
+        while (taker.remaining > 0) {
+            PriceLevel level = buy ? bestAsk : bestBid;
+            if (level == null || (buy ? level.price > taker.price : level.price < taker.price)) {
+                break;
+            }
+            Entry maker = level.orders.peekFirst();
+            if (maker.playerId.equals(taker.playerId)) {
+                // 自成交保护：撤销较早的挂单
+                removeEntry(maker);
+                fills.add(new Fill(maker, maker.remaining, 0, Fill.Kind.SELF_TRADE_CANCEL));
+                continue;
+            }
+            long qty = Math.min(taker.remaining, maker.remaining);
+            maker.remaining -= qty;
+            level.totalQty -= qty;
+            taker.remaining -= qty;
+            fills.add(new Fill(maker, qty, level.price, Fill.Kind.MAKER));
+            fills.add(new Fill(taker, qty, level.price, Fill.Kind.TAKER));
+            if (maker.remaining == 0) {
+                removeEntry(maker);
+            }
+        }
+        if (taker.remaining == 0) {
+            return;
+        }
+        if (marketPrice > 0 && (buy ? marketPrice <= taker.price : marketPrice >= taker.price)) {
+            fills.add(new Fill(taker, taker.remaining, marketPrice, Fill.Kind.MARKET));
+            taker.remaining = 0;
+            return;
+        }
+        rest(taker);
+    }
+
+    /**
+     * 收集被最新价穿越的挂单（买单价 >= 最新价、卖单价 <= 最新价），从订单簿移除并按最新价成交
+     * 未穿越时只比较两个缓存的最优价即可返回
+     */
+    synchronized void matchMarket(long marketPrice, List<Fill> fills) {
+        while (bestBid != null && bestBid.price >= marketPrice) {
+            drainLevel(bestBid, marketPrice, fills);
+        }
+        while (bestAsk != null && bestAsk.price <= marketPrice) {
+            drainLevel(bestAsk, marketPrice, fills);
+        }
+    }
+
+    private void drainLevel(PriceLevel level, long marketPrice, List<Fill> fills) {
+        while (!level.orders.isEmpty()) {
+            Entry entry = level.orders.peekFirst();
+            fills.add(new Fill(entry, entry.remaining, marketPrice, Fill.Kind.MARKET));
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * 撤销挂单，返回被移除的条目（剩余数量为撤销数量）；已完全成交或不存在时返回 null
+     */
+    synchronized Entry cancel(long orderId) {
+        Entry entry = entries.get(orderId);
+        if (entry == null) {
+            return null;
+        }
+        removeEntry(entry);
+        return entry;
+    }
+
+    /**
+     * 按原有时间顺序放回重启前的挂单，不撮合（启动恢复时使用）
+     */
+    synchronized void restore(Entry entry) {
+        rest(entry);
+    }
+
+    private void rest(Entry entry) {
+        TreeMap<Long, PriceLevel> side = entry.side == OrderSide.LONG ? bids : asks;
+        PriceLevel level = side.get(entry.price);
+        if (level == null) {
+            level = new PriceLevel(entry.price);
+            side.put(entry.price, level);
+            if (entry.side == OrderSide.LONG) {
+                if (bestBid == null || entry.price > bestBid.price) {
+                    bestBid = level;
+                }
+            } else if (bestAsk == null || entry.price < bestAsk.price) {
+                bestAsk = level;
+            }
+        }
+        level.orders.addLast(entry);
+        level.totalQty += entry.remaining;
+        entry.level = level;
+        entries.put(entry.orderId, entry);
+    }
+
+    /**
+     * 从所在价格档移除条目（档位内按引用查找），档位清空时删除档位并更新最优价缓存
+     */
+    private void removeEntry(Entry entry) {
+        PriceLevel level = entry.level;
+        if (level == null) {
+            return;
+        }
+        if (level.orders.peekFirst() == entry) {
+            level.orders.pollFirst();
+        } else {
+            Iterator<Entry> iterator = level.orders.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == entry) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        level.totalQty -= entry.remaining;
+        entry.level = null;
+        entries.remove(entry.orderId);
+        if (!level.orders.isEmpty()) {
+            return;
+        }
+        if (entry.side == OrderSide.LONG) {
+            bids.remove(level.price);
+            if (bestBid == level) {
+                bestBid = bids.isEmpty() ? null : bids.firstEntry().getValue();
+            }
+        } else {
+            asks.remove(level.price);
+            if (bestAsk == level) {
+                bestAsk = asks.isEmpty() ? null : asks.firstEntry().getValue();
+            }
+        }
+    }
+
+    /**
+     * 最优买价（定点数），无买单时返回0
+     */
+    public synchronized long getBestBid() {
+        return bestBid != null ? bestBid.price : 0;
+    }
+
+    /**
+     * 最优卖价（定点数），无卖单时返回0
+     */
+    public synchronized long getBestAsk() {
+        return bestAsk != null ? bestAsk.price : 0;
+    }
+
+    /**
+     * 挂单数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 前 levels 档深度，每项为 {价格, 数量}（定点数）
+     */
+    public synchronized List<long[]> getDepth(OrderSide side, int levels) {
+        TreeMap<Long, PriceLevel> book = side == OrderSide.LONG ? bids : asks;
+        if (book.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<long[]> depth = new ArrayList<>(Math.min(levels, book.size()));
+        for (PriceLevel level : book.values()) {
+            if (depth.size() >= levels) {
+                break;
+            }
+            depth.add(new long[]{level.price, level.totalQty});
+        }
+        return depth;
+    }
+
+    /**
+     * 挂单条目
+     */
+    static final class Entry {
+        final Order order;
+        final long orderId;
+        final UUID playerId;
+        final Symbol symbol;
+        final OrderSide side;
+        final long price;
+        final TradeEngine.TradeCallback callback;
+        long remaining;         // 订单簿中剩余数量（仅在持有订单簿锁时修改）
+        PriceLevel level;
+
+        Entry(Order order, Symbol symbol, long price, long qty, TradeEngine.TradeCallback callback) {
+            this.order = order;
+            this.orderId = order.getId();
+            this.playerId = order.getPlayerId();
+            this.symbol = symbol;
+            this.side = order.getSide();
+            this.price = price;
+            this.remaining = qty;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * 价格档：同价挂单按时间先后排队
+     */
+    private static final class PriceLevel {
+        final long price;
+        final ArrayDeque<Entry> orders = new ArrayDeque<>();
+        long totalQty;
+
+        PriceLevel(long price) {
+            this.price = price;
+        }
+    }
+
+    /**
+     * 撮合产出的一笔成交（或自成交保护撤单）
+     */
+    record Fill(Entry entry, long qty, long price, Kind kind) {
+
+        enum Kind {
+            MAKER,              // 挂单方被动成交
+            TAKER,              // 新订单与挂单成交
+            MARKET,             // 按市场最新价成交
+            SELF_TRADE_CANCEL   // 自成交保护撤单
+        }
+    }
+}
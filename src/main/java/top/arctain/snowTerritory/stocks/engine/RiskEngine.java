@@ -1,41 +1,78 @@
 package top.arctain.snowTerritory.stocks.engine;
 
 import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 import top.arctain.snowTerritory.stocks.config.StocksConfigManager;
+import top.arctain.snowTerritory.stocks.history.PriceHistory;
+import top.arctain.snowTerritory.stocks.history.Timeframe;
+import top.arctain.snowTerritory.stocks.metrics.LatencyHistogram;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
 import top.arctain.snowTerritory.stocks.model.*;
 import top.arctain.snowTerritory.stocks.price.PriceService;
+import top.arctain.snowTerritory.stocks.storage.PositionKey;
 import top.arctain.snowTerritory.stocks.storage.StockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
 import top.arctain.snowTerritory.utils.MessageUtils;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 风控引擎
- * 定时检查所有仓位，执行强平
+ * 在异步线程中定时检查仓位并执行强平（包括离线玩家），玩家通知由回调分发器在主线程发送
+ * 逐仓仓位按爆仓价索引检查；全仓账户按净值跟踪标记的待检查账户整体检查
+ * 交易对价格过期时暂停该交易对的强平，避免按失效价格平仓
+ * 一轮检查选出的全部仓位作为一个批次提交给交易引擎，经优先通道按交易对成组平仓，不排在玩家订单之后
  */
 public class RiskEngine {
     
+    private static final long DEFAULT_MMR_FIXED = 500_000L; // 默认0.5%
+    
     private final JavaPlugin plugin;
     private final StockStorage storage;
     private final PriceService priceService;
     private final TradeEngine tradeEngine;
     private final StocksConfigManager configManager;
+    private final List<UUID> crossed = new ArrayList<>(); // 复用的穿越列表（仅检查线程使用）
+    private final List<UUID> crossAccounts = new ArrayList<>(); // 复用的全仓待检查列表（仅检查线程使用）
+    private final List<Liquidation> batch = new ArrayList<>(); // 本轮选出的强平（仅检查线程使用）
+    private final Set<PositionKey> pendingLiquidations = ConcurrentHashMap.newKeySet(); // 已提交、尚未执行的强平
+    private final Set<String> stalePaused = ConcurrentHashMap.newKeySet(); // 因价格过期暂停检查的交易对
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private PriceHistory priceHistory;
+    private CallbackDispatcher dispatcher;
+    private LatencyHistogram incrementalSweepTime;
+    private LatencyHistogram fullSweepTime;
+    private LongAdder positionsEvaluated;
+    private LongAdder liquidationsFired;
+    private LongAdder positionsDeleveraged;
     private BukkitRunnable checkTask;
     private long checkInterval; // 检查间隔（tick）
+    private final long fullScanInterval; // 全量检查间隔（tick），0 表示不做全量检查
+    private long ticksSinceFullScan;
     
     public RiskEngine(JavaPlugin plugin, StockStorage storage, PriceService priceService, 
                      TradeEngine tradeEngine, StocksConfigManager configManager, long checkInterval) {
+        this(plugin, storage, priceService, tradeEngine, configManager, checkInterval, 0);
+    }
+    
+    public RiskEngine(JavaPlugin plugin, StockStorage storage, PriceService priceService, 
+                     TradeEngine tradeEngine, StocksConfigManager configManager,
+                     long checkInterval, long fullScanInterval) {
         this.plugin = plugin;
         this.storage = storage;
         this.priceService = priceService;
         this.tradeEngine = tradeEngine;
         this.configManager = configManager;
         this.checkInterval = checkInterval;
+        this.fullScanInterval = fullScanInterval;
     }
     
     /**
@@ -49,11 +86,11 @@ public class RiskEngine {
         checkTask = new BukkitRunnable() {
             @Override
             public void run() {
-                checkAllPositions();
+                runSweep();
             }
         };
         
-        checkTask.runTaskTimer(plugin, checkInterval, checkInterval);
+        checkTask.runTaskTimerAsynchronously(plugin, checkInterval, checkInterval);
         MessageUtils.logInfo("风控引擎已启动，检查间隔: " + (checkInterval * 50) + "ms");
     }
     
@@ -68,28 +105,165 @@ public class RiskEngine {
     }
     
     /**
-     * 检查所有仓位
+     * 执行一轮检查（定时任务在异步线程调用，离线回放工具可直接调用），上一轮未结束时跳过
+     */
+    public void runSweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            ticksSinceFullScan += checkInterval;
+            if (fullScanInterval > 0 && ticksSinceFullScan >= fullScanInterval) {
+                ticksSinceFullScan = 0;
+                checkAllPositions();
+                if (fullSweepTime != null) {
+                    fullSweepTime.record(System.nanoTime() - start);
+                }
+            } else {
+                checkCrossedPositions();
+                checkCrossAccounts();
+                if (incrementalSweepTime != null) {
+                    incrementalSweepTime.record(System.nanoTime() - start);
+                }
+            }
+        } catch (Exception e) {
+            MessageUtils.logError("风控检查异常: " + e.getMessage());
+        } finally {
+            submitBatch();
+            sweeping.set(false);
+        }
+    }
+    
+    /**
+     * 全量检查所有玩家（包括离线玩家）的全部仓位，兜底爆仓价索引
      */
     private void checkAllPositions() {
-        // 这里需要获取所有玩家的所有仓位
-        // 由于是内存存储，我们需要遍历所有仓位
-        // 实际实现中，可以从存储层获取所有仓位列表
-        
-        // 简化实现：遍历所有在线玩家的仓位
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            UUID playerId = player.getUniqueId();
-            List<Position> positions = storage.getAllPositions(playerId);
-            
-            for (Position position : positions) {
-                checkLiquidation(player, position);
+        storage.forEachPosition(position -> {
+            if (!storage.getAccount(position.getPlayerId()).isCrossMargin()) {
+                checkLiquidation(position);
+            }
+        });
+        tradeEngine.getEquityTracker().forEachCrossAccount(this::checkCrossAccount);
+    }
+    
+    /**
+     * 检查净值跟踪标记的全仓账户（标记后价格可能已回升，逐个复核）
+     */
+    private void checkCrossAccounts() {
+        crossAccounts.clear();
+        if (tradeEngine.getEquityTracker().drainAtRisk(crossAccounts) == 0) {
+            return;
+        }
+        for (UUID playerId : crossAccounts) {
+            checkCrossAccount(playerId);
+        }
+    }
+    
+    /**
+     * 全仓账户净值跌破维持保证金合计时，强平该账户的全部仓位
+     */
+    private void checkCrossAccount(UUID playerId) {
+        if (positionsEvaluated != null) {
+            positionsEvaluated.increment();
+        }
+        if (!tradeEngine.getEquityTracker().isBelowMaintenance(playerId)) {
+            return;
+        }
+        List<Position> positions = storage.getAllPositions(playerId);
+        for (Position position : positions) {
+            if (isPaused(position.getSymbol())) {
+                return; // 任一持仓价格过期时整个账户暂不处理，价格恢复后重新标记
+            }
+        }
+        for (Position position : positions) {
+            BigDecimal markPrice = priceService.getMarkPrice(position.getSymbol());
+            if (markPrice.compareTo(BigDecimal.ZERO) <= 0 || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            position.setUnrealizedPnl(MarginModel.calculateUnrealizedPnl(position, markPrice));
+            liquidate(position);
+        }
+    }
+    
+    /**
+     * 检查已穿越爆仓价的仓位
+     * 只遍历爆仓价索引中被当前标记价格穿越的条目，再逐个精确校验
+     */
+    private void checkCrossedPositions() {
+        TriggerIndex liquidationIndex = tradeEngine.getLiquidationIndex();
+        for (String symbolName : liquidationIndex.getSymbols()) {
+            long markPrice = priceService.getMarkPriceFixed(symbolName);
+            if (markPrice <= 0 || isPaused(symbolName)) {
+                continue;
+            }
+            crossed.clear();
+            if (liquidationIndex.collectCrossed(symbolName, markPrice, crossed) == 0) {
+                continue;
+            }
+            for (UUID playerId : crossed) {
+                Position position = storage.getPosition(playerId, symbolName);
+                if (position != null) {
+                    checkLiquidation(position);
+                }
             }
         }
     }
     
     /**
      * 检查单个仓位是否需要强平
+     * 使用定点数计算，仓位数值超出定点数范围时回退到 BigDecimal
      */
-    private void checkLiquidation(Player player, Position position) {
+    private void checkLiquidation(Position position) {
+        if (positionsEvaluated != null) {
+            positionsEvaluated.increment();
+        }
+        if (!position.hasFixedValues()) {
+            checkLiquidationDecimal(position);
+            return;
+        }
+        if (position.getQtyFixed() <= 0) {
+            return;
+        }
+        
+        String symbolName = position.getSymbol();
+        long markPrice = priceService.getMarkPriceFixed(symbolName);
+        if (markPrice <= 0 || isPaused(symbolName)) {
+            return;
+        }
+        
+        Symbol symbol = configManager.getSymbol(symbolName);
+        long mmr = symbol != null ? symbol.getMaintenanceMarginRateFixed() : DEFAULT_MMR_FIXED;
+        if (mmr == FixedPoint.INVALID) {
+            checkLiquidationDecimal(position);
+            return;
+        }
+        
+        long unrealizedPnl;
+        long availableMargin;
+        long maintenanceMargin;
+        try {
+            unrealizedPnl = MarginModel.unrealizedPnlFixed(position, markPrice);
+            availableMargin = FixedPoint.add(position.getIsolatedMarginFixed(), unrealizedPnl);
+            maintenanceMargin = MarginModel.maintenanceMarginFixed(markPrice, position.getQtyFixed(), mmr);
+        } catch (ArithmeticException e) {
+            checkLiquidationDecimal(position);
+            return;
+        }
+        
+        // 更新未实现盈亏
+        position.setUnrealizedPnl(FixedPoint.toDecimal(unrealizedPnl));
+        
+        // 检查是否触发强平
+        if (availableMargin <= maintenanceMargin) {
+            liquidate(position);
+        }
+    }
+    
+    /**
+     * 检查单个仓位是否需要强平（BigDecimal）
+     */
+    private void checkLiquidationDecimal(Position position) {
         if (position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
             return;
         }
@@ -97,7 +271,7 @@ public class RiskEngine {
         String symbolName = position.getSymbol();
         BigDecimal markPrice = priceService.getMarkPrice(symbolName);
         
-        if (markPrice.compareTo(BigDecimal.ZERO) <= 0) {
+        if (markPrice.compareTo(BigDecimal.ZERO) <= 0 || isPaused(symbolName)) {
             return;
         }
         
@@ -121,54 +295,138 @@ public class RiskEngine {
         
         // 检查是否触发强平
         if (availableMargin.compareTo(maintenanceMargin) <= 0) {
-            liquidate(player, position, markPrice);
+            liquidate(position);
         }
     }
     
     /**
-     * 执行强平
+     * 交易对价格是否已过期，状态变化时记录日志
      */
-    private void liquidate(Player player, Position position, BigDecimal liquidationPrice) {
-        UUID playerId = player.getUniqueId();
-        
-        // 记录强平事件
-        BigDecimal loss = position.getIsolatedMargin().add(position.getUnrealizedPnl());
-        if (loss.compareTo(BigDecimal.ZERO) < 0) {
-            loss = BigDecimal.ZERO;
-        }
-        final BigDecimal finalLoss = loss; // 用于内部类
-        // 记录强平事件（可以保存到存储中，这里简化处理）
-        @SuppressWarnings("unused")
-        LiquidationEvent event = new LiquidationEvent(playerId, position.getSymbol(), 
-                                                      liquidationPrice, position.getQty(), finalLoss);
-        
-        // 执行强平：以markPrice强制平仓
-        // 需要获取Symbol对象
+    private boolean isPaused(String symbolName) {
+        if (!tradeEngine.isPriceStale(symbolName)) {
+            if (stalePaused.remove(symbolName)) {
+                MessageUtils.logInfo("交易对 " + symbolName + " 价格已恢复，继续强平检查");
+            }
+            return false;
+        }
+        if (stalePaused.add(symbolName)) {
+            MessageUtils.logWarning("交易对 " + symbolName + " 价格已过期，暂停强平检查");
+        }
+        return true;
+    }
+    
+    /**
+     * 把仓位加入本轮强平批次（已提交、尚未执行完的仓位不重复加入）
+     */
+    private void liquidate(Position position) {
+        UUID playerId = position.getPlayerId();
+        if (!pendingLiquidations.add(new PositionKey(playerId, position.getSymbol()))) {
+            return; // 上一次强平尚未执行完
+        }
         Symbol symbol = configManager.getSymbol(position.getSymbol());
         if (symbol == null) {
+            pendingLiquidations.remove(new PositionKey(playerId, position.getSymbol()));
             MessageUtils.logWarning("无法获取交易对配置: " + position.getSymbol());
             return;
         }
-        tradeEngine.closePosition(player, symbol, position.getQty(), new TradeEngine.TradeCallback() {
-            @Override
-            public void onSuccess(String message) {
-                // 强平成功
-                MessageUtils.sendError(player, "stocks.liquidation", 
-                    "&c✗ &f您的仓位已被强平！损失: " + finalLoss + " USDT");
+        batch.add(new Liquidation(playerId, symbol));
+    }
+    
+    /**
+     * 提交本轮强平批次，执行完成后（在交易线程中）通知被强平和被自动减仓的玩家
+     * 执行时已恢复的仓位会被跳过，不出现在结果中，其去重标记同样在这里清除
+     */
+    private void submitBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Liquidation> submitted = new ArrayList<>(batch);
+        batch.clear();
+        tradeEngine.liquidate(submitted).whenComplete((report, error) -> {
+            for (Liquidation liquidation : submitted) {
+                pendingLiquidations.remove(new PositionKey(liquidation.playerId(), liquidation.symbol().getName()));
             }
-            
-            @Override
-            public void onError(String error) {
-                MessageUtils.logWarning("强平失败: " + error);
+            if (error != null) {
+                MessageUtils.logWarning("强平失败: " + error.getMessage());
+                return;
+            }
+            for (LiquidationEvent event : report.liquidated()) {
+                onLiquidated(event.getPlayerId(), event.getSymbol(), event.getLoss());
+            }
+            for (LiquidationEvent event : report.deleveraged()) {
+                onDeleveraged(event);
+            }
+            if (liquidationsFired != null) {
+                liquidationsFired.add(report.liquidated().size());
+            }
+            if (positionsDeleveraged != null) {
+                positionsDeleveraged.add(report.deleveraged().size());
             }
         });
-        
-        // 清空保证金
-        position.setIsolatedMargin(BigDecimal.ZERO);
-        storage.savePosition(position);
-        
-        MessageUtils.logWarning("玩家 " + player.getName() + " 的 " + position.getSymbol() + 
-                               " 仓位被强平，损失: " + finalLoss + " USDT");
+    }
+    
+    /**
+     * 强平完成（在交易线程中调用），交给回调分发器在主线程记录日志并通知在线玩家
+     * 未设置分发器时只记录日志
+     */
+    protected void onLiquidated(UUID playerId, String symbolName, BigDecimal loss) {
+        if (dispatcher == null) {
+            MessageUtils.logWarning("玩家 " + playerId + " 的 " + symbolName + " 仓位被强平，损失: " + loss + " USDT");
+            return;
+        }
+        dispatcher.runOnMain(() -> MessageUtils.logWarning("玩家 " + Bukkit.getOfflinePlayer(playerId).getName() +
+            " 的 " + symbolName + " 仓位被强平，损失: " + loss + " USDT"));
+        dispatcher.send(playerId, "stocks.liquidation", "&c✗ &f您的" + symbolName + "仓位已被强平！损失: " + loss + " USDT");
+    }
+    
+    /**
+     * 仓位被自动减仓（在交易线程中调用），通知在线玩家；未设置分发器时只记录日志
+     */
+    protected void onDeleveraged(LiquidationEvent event) {
+        String detail = event.getSymbol() + "仓位被自动减仓 " + event.getQty() + " @ "
+            + event.getLiquidationPrice() + "，让利: " + event.getLoss() + " USDT";
+        if (dispatcher == null) {
+            MessageUtils.logWarning("玩家 " + event.getPlayerId() + " 的 " + detail);
+            return;
+        }
+        dispatcher.send(event.getPlayerId(), "stocks.adl", "&e⚠ &f您的" + detail);
+    }
+    
+    /**
+     * 设置回调分发器（玩家通知在主线程批量发送）
+     */
+    public void setCallbackDispatcher(CallbackDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+    
+    /**
+     * 设置运行指标（为空则不统计）
+     */
+    public void setMetrics(StocksMetrics metrics) {
+        this.incrementalSweepTime = metrics.histogram("risk.sweep.incremental");
+        this.fullSweepTime = metrics.histogram("risk.sweep.full");
+        this.positionsEvaluated = metrics.counter("risk.positionsEvaluated");
+        this.liquidationsFired = metrics.counter("risk.liquidations");
+        this.positionsDeleveraged = metrics.counter("risk.adl");
+        InsuranceFund insuranceFund = tradeEngine.getInsuranceFund();
+        metrics.gauge("risk.insuranceFund", () -> insuranceFund.getBalance().longValue());
+    }
+    
+    /**
+     * 设置价格历史（用于波动率）
+     */
+    public void setPriceHistory(PriceHistory priceHistory) {
+        this.priceHistory = priceHistory;
+    }
+    
+    /**
+     * 交易对近期波动率：最近 risk.volatilityWindow 根1分钟K线的对数收益率标准差，数据不足时返回 NaN
+     */
+    public double getVolatility(String symbol) {
+        if (priceHistory == null) {
+            return Double.NaN;
+        }
+        return priceHistory.getVolatility(symbol, Timeframe.M1, configManager.getRiskVolatilityWindow());
     }
     
     /**
@@ -0,0 +1,97 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.config.StocksConfigManager;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.price.PriceListener;
+import top.arctain.snowTerritory.stocks.storage.PositionKey;
+import top.arctain.snowTerritory.stocks.storage.StockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 止盈止损引擎
+ * 每次标记价格更新时从止盈止损索引中取出被穿越的条目，同一批次提交平仓，
+ * 开销只与触发数量相关；玩家通知交给回调分发器在主线程发送
+ */
+public class StopOrderEngine implements PriceListener {
+
+    private final CallbackDispatcher dispatcher;
+    private final StockStorage storage;
+    private final TradeEngine tradeEngine;
+    private final StocksConfigManager configManager;
+    private final List<UUID> crossed = new ArrayList<>(); // 复用的穿越列表（持有对象锁时使用）
+    private final Set<PositionKey> pendingCloses = ConcurrentHashMap.newKeySet(); // 已提交、尚未执行的平仓
+
+    public StopOrderEngine(CallbackDispatcher dispatcher, StockStorage storage, TradeEngine tradeEngine,
+                           StocksConfigManager configManager) {
+        this.dispatcher = dispatcher;
+        this.storage = storage;
+        this.tradeEngine = tradeEngine;
+        this.configManager = configManager;
+    }
+
+    @Override
+    public void onLastPrice(String symbol, long timeMs, long price) {
+        // 止盈止损按标记价格触发
+    }
+
+    @Override
+    public synchronized void onMarkPrice(String symbolName, long timeMs, long markPrice) {
+        crossed.clear();
+        if (tradeEngine.getStopOrderIndex().collectCrossed(symbolName, markPrice, crossed) == 0) {
+            return;
+        }
+        Symbol symbol = configManager.getSymbol(symbolName);
+        if (symbol == null) {
+            return;
+        }
+        for (UUID playerId : crossed) {
+            trigger(playerId, symbol, markPrice);
+        }
+    }
+
+    /**
+     * 提交全平（同一仓位在平仓执行前只提交一次）
+     */
+    private void trigger(UUID playerId, Symbol symbol, long markPrice) {
+        PositionKey key = new PositionKey(playerId, symbol.getName());
+        if (!pendingCloses.add(key)) {
+            return;
+        }
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null) {
+            pendingCloses.remove(key);
+            return;
+        }
+        // 多仓价格下穿止损价、空仓价格上穿止损价为止损，其余为止盈
+        BigDecimal stopLoss = position.getStopLossPrice();
+        boolean stopLossHit = stopLoss != null && (position.getSide() == OrderSide.LONG
+            ? markPrice <= FixedPoint.fromDecimalOrInvalid(stopLoss)
+            : markPrice >= FixedPoint.fromDecimalOrInvalid(stopLoss));
+        String kind = stopLossHit ? "止损" : "止盈";
+        String symbolName = symbol.getName();
+        tradeEngine.closePosition(playerId, symbol, null, new TradeEngine.TradeCallback() {
+            @Override
+            public void onSuccess(String message) {
+                pendingCloses.remove(key);
+                dispatcher.send(playerId, "stocks.stop-order-triggered",
+                    "&a✓ &f" + symbolName + " 已触发" + kind + "，" + message);
+            }
+
+            @Override
+            public void onError(String error) {
+                pendingCloses.remove(key);
+                MessageUtils.logWarning(symbolName + " " + kind + "平仓失败: " + error);
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * 交易命令槽位
+ * 预分配在环形缓冲区中并反复复用，入队时只填写字段，不产生新对象
+ */
+final class TradeCommand {
+
+    enum Type {
+        OPEN,
+        CLOSE,
+        ADD_MARGIN,
+        LIMIT,      // 限价单
+        CANCEL,     // 撤单
+        TASK        // 任意任务（独占执行等）
+    }
+
+    /** 槽位序号：等于写入位置时可被生产者占用，等于写入位置+1时可被消费 */
+    volatile long sequence;
+
+    long publishNanos;      // 发布时间（System.nanoTime），用于统计排队延迟
+
+    Type type;
+    UUID playerId;
+    Symbol symbol;
+    OrderSide side;
+    BigDecimal qty;         // 数量（OPEN/CLOSE，CLOSE为null表示全平）
+    int leverage;
+    BigDecimal amount;      // 追加金额（ADD_MARGIN）
+    BigDecimal price;       // 委托价（LIMIT）
+    long orderId;           // 订单ID（CANCEL）
+    TradeEngine.TradeCallback callback;
+    Runnable task;
+
+    TradeCommand(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * 释放引用，避免槽位长期持有已处理命令的对象
+     */
+    void clear() {
+        type = null;
+        playerId = null;
+        symbol = null;
+        side = null;
+        qty = null;
+        leverage = 0;
+        amount = null;
+        price = null;
+        orderId = 0;
+        callback = null;
+        task = null;
+        publishNanos = 0;
+    }
+}
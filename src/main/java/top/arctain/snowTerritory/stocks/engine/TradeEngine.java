@@ -1,97 +1,346 @@
 package top.arctain.snowTerritory.stocks.engine;
 
 import org.bukkit.entity.Player;
+import top.arctain.snowTerritory.stocks.history.PriceHistory;
+import top.arctain.snowTerritory.stocks.journal.TradeEvent;
+import top.arctain.snowTerritory.stocks.journal.TradeJournal;
+import top.arctain.snowTerritory.stocks.metrics.LatencyHistogram;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
 import top.arctain.snowTerritory.stocks.model.*;
+import top.arctain.snowTerritory.stocks.price.PriceListener;
 import top.arctain.snowTerritory.stocks.price.PriceService;
-import top.arctain.snowTerritory.stocks.storage.MemoryStockStorage;
 import top.arctain.snowTerritory.stocks.storage.StockStorage;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+import top.arctain.snowTerritory.utils.MessageUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * 交易引擎
  * 处理开仓、平仓、追加保证金等操作
- * 使用单线程队列避免并发问题
+ * 按玩家UUID哈希分片，每个分片单线程执行，保证同一账户的操作顺序，不同账户可并行
+ * 命令写入各分片预分配的环形缓冲区，缓冲区满时直接拒绝新订单
+ * 每次变更在执行前先写入交易日志，回放时以日志中的成交价重新执行
+ * 限价单挂入按交易对划分的订单簿，撮合出的成交交给各自玩家所属的分片结算
+ * 强平由风控按批次提交，经优先通道独占执行，盈亏结算到保险基金，基金不足时自动减仓
  */
-public class TradeEngine {
-    
+public class TradeEngine implements PriceListener {
+
+    public static final int DEFAULT_RING_SIZE = 4096;
+    private static final String BUSY_MESSAGE = "交易繁忙，请稍后重试";
+    private static final String STALE_PRICE_MESSAGE = "行情数据已过期，暂停交易，请稍后重试";
+
     private final StockStorage storage;
     private final PriceService priceService;
-    private final BlockingQueue<Runnable> tradeQueue;
-    private Thread tradeThread;
-    private volatile boolean running = false;
-    
+    private final TradeShard[] shards;
+    private final TriggerIndex liquidationIndex = new TriggerIndex();
+    private final TriggerIndex stopOrderIndex = new TriggerIndex();
+    private final TriggerIndex entryIndex = new TriggerIndex(); // 开仓均价：多仓 RISING、空仓 FALLING，供自动减仓查找盈利仓位
+    private final EquityTracker equityTracker;
+    private final InsuranceFund insuranceFund;
+    private final Map<String, OrderBook> orderBooks = new ConcurrentHashMap<>();
+    // 同一时刻只允许一个独占任务发布屏障：两个任务的屏障若在不同分片上排成相反顺序，所有分片会互相等待
+    private final Semaphore exclusivePermit = new Semaphore(1);
+    private TradeJournal journal;
+    private PriceHistory priceHistory;
+    private LatencyHistogram[] queueLatency;   // 按命令类型：发布到开始执行
+    private LatencyHistogram[] executionTime;  // 按命令类型：执行耗时
+    private LongAdder rejectedCount;
+    private volatile long maxPriceAgeMs; // 价格超过该时长未更新时拒绝交易，0 表示不检查
+
     public TradeEngine(StockStorage storage, PriceService priceService) {
+        this(storage, priceService, 1);
+    }
+
+    public TradeEngine(StockStorage storage, PriceService priceService, int shardCount) {
+        this(storage, priceService, shardCount, DEFAULT_RING_SIZE, WaitStrategy.PARK);
+    }
+
+    public TradeEngine(StockStorage storage, PriceService priceService, int shardCount,
+                       int ringSize, WaitStrategy waitStrategy) {
         this.storage = storage;
         this.priceService = priceService;
-        this.tradeQueue = new LinkedBlockingQueue<>();
+        this.equityTracker = new EquityTracker(storage, priceService);
+        this.insuranceFund = new InsuranceFund(storage);
+        this.shards = new TradeShard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new TradeShard(i, ringSize, waitStrategy, this::dispatch);
+        }
     }
-    
+
+    /**
+     * 设置交易日志（为空则不记录）
+     */
+    public void setJournal(TradeJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 设置价格历史（成交量计入K线，为空则不记录）
+     */
+    public void setPriceHistory(PriceHistory priceHistory) {
+        this.priceHistory = priceHistory;
+    }
+
+    /**
+     * 设置运行指标（需在 start 之前调用，为空则不统计）
+     */
+    public void setMetrics(StocksMetrics metrics) {
+        TradeCommand.Type[] types = TradeCommand.Type.values();
+        LatencyHistogram[] queue = new LatencyHistogram[types.length];
+        LatencyHistogram[] execution = new LatencyHistogram[types.length];
+        for (TradeCommand.Type type : types) {
+            String name = type.name().toLowerCase();
+            queue[type.ordinal()] = metrics.histogram("trade.queue." + name);
+            execution[type.ordinal()] = metrics.histogram("trade.exec." + name);
+        }
+        for (TradeShard shard : shards) {
+            metrics.gauge("trade.shard" + shard.getIndex() + ".depth", shard::getQueueDepth);
+            metrics.gauge("trade.shard" + shard.getIndex() + ".peakDepth", shard::getPeakQueueDepth);
+        }
+        this.rejectedCount = metrics.counter("trade.rejected");
+        this.queueLatency = queue;
+        this.executionTime = execution;
+    }
+
+    /**
+     * 设置价格最大有效时长（毫秒），超过后拒绝开平仓和挂单，风控同时暂停，0 表示不检查
+     */
+    public void setMaxPriceAge(long maxPriceAgeMs) {
+        this.maxPriceAgeMs = maxPriceAgeMs;
+    }
+
+    /**
+     * 交易对价格是否已过期（未启用检查时总是返回 false）
+     */
+    public boolean isPriceStale(String symbol) {
+        return maxPriceAgeMs > 0
+            && System.currentTimeMillis() - priceService.getLastUpdateTime(symbol) > maxPriceAgeMs;
+    }
+
     /**
      * 启动交易引擎
      */
     public void start() {
-        if (running) {
-            return;
+        for (TradeShard shard : shards) {
+            shard.start();
         }
-        running = true;
-        tradeThread = new Thread(() -> {
-            while (running) {
-                try {
-                    Runnable task = tradeQueue.take();
-                    task.run();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        }, "StockTradeEngine");
-        tradeThread.start();
     }
-    
+
     /**
      * 停止交易引擎
      */
     public void stop() {
-        running = false;
-        if (tradeThread != null) {
-            tradeThread.interrupt();
-            try {
-                tradeThread.join(5000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        for (TradeShard shard : shards) {
+            shard.stop();
         }
     }
-    
+
     /**
-     * 开仓（异步执行）
+     * 分片数量
      */
-    public void openPosition(Player player, Symbol symbol, OrderSide side, 
-                            BigDecimal qty, int leverage, TradeCallback callback) {
-        tradeQueue.offer(() -> {
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 指定分片的排队任务数
+     */
+    public int getQueueDepth(int shard) {
+        return shards[shard].getQueueDepth();
+    }
+
+    /**
+     * 按爆仓价排序的仓位索引（多仓 FALLING，空仓 RISING），随仓位变更同步维护
+     */
+    public TriggerIndex getLiquidationIndex() {
+        return liquidationIndex;
+    }
+
+    /**
+     * 按触发价排序的止盈止损索引（价格下穿触发 FALLING，上穿触发 RISING），随仓位变更同步维护
+     */
+    public TriggerIndex getStopOrderIndex() {
+        return stopOrderIndex;
+    }
+
+    /**
+     * 账户净值跟踪（全仓强平依据），随仓位变更同步维护，需注册为价格监听器
+     */
+    public EquityTracker getEquityTracker() {
+        return equityTracker;
+    }
+
+    /**
+     * 保险基金（强平结余与穿仓亏损）
+     */
+    public InsuranceFund getInsuranceFund() {
+        return insuranceFund;
+    }
+
+    /**
+     * 单个分片的缓冲区容量
+     */
+    public int getRingSize() {
+        return shards[0].getCapacity();
+    }
+
+    /**
+     * 玩家所属分片
+     */
+    public int shardOf(UUID playerId) {
+        // 混合高低位，避免UUID哈希分布不均
+        int h = playerId.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, shards.length);
+    }
+
+    /**
+     * 独占执行任务：等待所有分片处理完已排队的操作并暂停，再在分片0上执行
+     * 执行期间不会有其他交易变更，用于生成快照等
+     */
+    public CompletableFuture<Void> runExclusive(Runnable task) {
+        return runExclusive(task, false);
+    }
+
+    /**
+     * 独占执行任务；urgent 为 true 时经优先通道发布，不等待分片中已排队的普通命令
+     * 多个独占任务依次执行：调用线程等到上一个任务结束才发布屏障，因此不能在分片线程中调用
+     */
+    private CompletableFuture<Void> runExclusive(Runnable task, boolean urgent) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!acquireExclusive()) {
+            future.completeExceptionally(new IllegalStateException("交易引擎未运行"));
+            return future;
+        }
+        CountDownLatch arrived = new CountDownLatch(shards.length - 1);
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 1; i < shards.length; i++) {
+            if (!publishInternal(shards[i], urgent, () -> {
+                arrived.countDown();
+                awaitQuietly(done);
+            })) {
+                done.countDown();
+                exclusivePermit.release();
+                future.completeExceptionally(new IllegalStateException("交易引擎未运行"));
+                return future;
+            }
+        }
+        boolean published = publishInternal(shards[0], urgent, () -> {
             try {
-                openPositionSync(player, symbol, side, qty, leverage, callback);
+                awaitQuietly(arrived);
+                task.run();
+                future.complete(null);
             } catch (Exception e) {
-                if (callback != null) {
-                    callback.onError(e.getMessage());
+                future.completeExceptionally(e);
+            } finally {
+                done.countDown();
+                exclusivePermit.release();
+            }
+        });
+        if (!published) {
+            done.countDown();
+            exclusivePermit.release();
+            future.completeExceptionally(new IllegalStateException("交易引擎未运行"));
+        }
+        return future;
+    }
+
+    /**
+     * 等待上一个独占任务结束；引擎停止（排队中的独占任务不会再执行、许可不会归还）或线程被中断时返回 false
+     */
+    private boolean acquireExclusive() {
+        try {
+            while (!exclusivePermit.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                if (!shards[0].isRunning()) {
+                    return false;
                 }
             }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean publishInternal(TradeShard shard, boolean urgent, Runnable task) {
+        return urgent ? publishUrgent(shard, task) : publishTaskBlocking(shard, task);
+    }
+
+    /**
+     * 经优先通道发布任务，任务内的保存与普通命令一样组成一个写入批次
+     */
+    private boolean publishUrgent(TradeShard shard, Runnable task) {
+        return shard.publishUrgent(() -> {
+            storage.beginBatch();
+            try {
+                task.run();
+            } finally {
+                storage.endBatch();
+            }
         });
     }
-    
+
+    /**
+     * 发布内部任务：缓冲区满时等待空位（内部任务不能被拒绝），分片已停止时返回 false
+     */
+    private static boolean publishTaskBlocking(TradeShard shard, Runnable task) {
+        while (!shard.publishTask(task)) {
+            if (!shard.isRunning()) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 开仓（异步执行）
+     */
+    public void openPosition(Player player, Symbol symbol, OrderSide side,
+                            BigDecimal qty, int leverage, TradeCallback callback) {
+        openPosition(player.getUniqueId(), symbol, side, qty, leverage, callback);
+    }
+
+    /**
+     * 开仓（异步执行，按玩家ID，玩家可以不在线）
+     */
+    public void openPosition(UUID playerId, Symbol symbol, OrderSide side,
+                             BigDecimal qty, int leverage, TradeCallback callback) {
+        if (!shards[shardOf(playerId)].publishOpen(playerId, symbol, side, qty, leverage, callback)) {
+            reject(callback);
+        }
+    }
+
     /**
      * 开仓（同步执行，在交易线程中）
      */
-    private void openPositionSync(Player player, Symbol symbol, OrderSide side,
+    private void openPositionSync(UUID playerId, Symbol symbol, OrderSide side,
                                   BigDecimal qty, int leverage, TradeCallback callback) {
-        UUID playerId = player.getUniqueId();
-        
         // 1. 验证杠杆
         if (!symbol.isValidLeverage(leverage)) {
             if (callback != null) {
@@ -99,7 +348,7 @@ public class TradeEngine {
             }
             return;
         }
-        
+
         // 2. 格式化数量
         qty = symbol.formatQuantity(qty);
         if (!symbol.isValidQuantity(qty)) {
@@ -108,7 +357,7 @@ public class TradeEngine {
             }
             return;
         }
-        
+
         // 3. 获取当前价格
         BigDecimal currentPrice = priceService.getLastPrice(symbol.getName());
         if (currentPrice.compareTo(BigDecimal.ZERO) <= 0) {
@@ -117,34 +366,78 @@ public class TradeEngine {
             }
             return;
         }
-        
+        if (isPriceStale(symbol.getName())) {
+            if (callback != null) {
+                callback.onError(STALE_PRICE_MESSAGE);
+            }
+            return;
+        }
+
         // 4. 计算初始保证金和手续费
         BigDecimal initialMargin = MarginModel.calculateInitialMargin(currentPrice, qty, leverage);
         BigDecimal fee = FeeModel.calculateTakerFee(symbol, qty, currentPrice);
         BigDecimal totalRequired = initialMargin.add(fee);
-        
+
         // 5. 检查余额
-        Account account = storage.getAccount(playerId);
-        if (account.getAvailableBalance().compareTo(totalRequired) < 0) {
+        BigDecimal available = getAvailableBalance(storage.getAccount(playerId));
+        if (available.compareTo(totalRequired) < 0) {
             if (callback != null) {
-                callback.onError("余额不足，需要: " + totalRequired + " USDT，可用: " + account.getAvailableBalance() + " USDT");
+                callback.onError("余额不足，需要: " + totalRequired + " USDT，可用: " + available + " USDT");
             }
             return;
         }
-        
-        // 6. 扣除保证金和手续费
+
+        // 6. 写入交易日志后执行
+        if (!writeJournal(TradeEvent.open(playerId, symbol.getName(), side, qty, leverage, currentPrice), callback)) {
+            return;
+        }
+        applyOpen(playerId, symbol, side, qty, leverage, currentPrice, true);
+        recordVolume(symbol.getName(), qty);
+
+        if (callback != null) {
+            callback.onSuccess("开仓成功: " + side + " " + qty + " " + symbol.getName() + " @ " + currentPrice);
+        }
+    }
+
+    /**
+     * 可用于开仓的余额：全仓账户还需扣除未实现亏损（亏损由钱包余额共同承担）
+     */
+    public BigDecimal getAvailableBalance(Account account) {
+        BigDecimal available = account.getAvailableBalance();
+        if (!account.isCrossMargin()) {
+            return available;
+        }
+        BigDecimal unrealizedPnl = equityTracker.getUnrealizedPnl(account.getPlayerId());
+        if (unrealizedPnl.signum() < 0) {
+            available = available.add(unrealizedPnl).max(BigDecimal.ZERO);
+        }
+        return available;
+    }
+
+    /**
+     * 执行开仓变更（校验已通过，回放时直接调用）
+     */
+    private void applyOpen(UUID playerId, Symbol symbol, OrderSide side,
+                           BigDecimal qty, int leverage, BigDecimal currentPrice, boolean recordOrder) {
+        BigDecimal initialMargin = MarginModel.calculateInitialMargin(currentPrice, qty, leverage);
+        BigDecimal fee = FeeModel.calculateTakerFee(symbol, qty, currentPrice);
+
+        // 扣除保证金和手续费
+        Account account = storage.getAccount(playerId);
         account.deductWalletBalance(fee);
         account.setWalletBalance(account.getWalletBalance().subtract(initialMargin));
         account.updateAvailableBalance(BigDecimal.ZERO);
         storage.saveAccount(account);
-        
-        // 7. 创建订单
-        long orderId = ((MemoryStockStorage) storage).getNextOrderId();
-        Order order = new Order(orderId, playerId, symbol.getName(), side, OrderType.MARKET, qty);
-        order.fill(currentPrice, fee);
-        storage.saveOrder(order);
-        
-        // 8. 处理仓位
+
+        // 创建订单（限价单成交时由调用方更新原订单）
+        if (recordOrder) {
+            long orderId = storage.nextOrderId();
+            Order order = new Order(orderId, playerId, symbol.getName(), side, OrderType.MARKET, qty);
+            order.fill(currentPrice, fee);
+            storage.saveOrder(order);
+        }
+
+        // 处理仓位
         Position existingPosition = storage.getPosition(playerId, symbol.getName());
         if (existingPosition != null && existingPosition.getSide() == side) {
             // 同向加仓：更新加权均价
@@ -154,46 +447,42 @@ public class TradeEngine {
             // 反向开仓：先平掉反向仓位
             if (existingPosition.getQty().compareTo(qty) <= 0) {
                 // 全平反向仓位
-                closePositionSync(player, symbol, existingPosition.getQty(), null);
+                applyClose(playerId, symbol, existingPosition.getQty(), currentPrice);
                 // 然后开新仓
                 Position newPosition = new Position(playerId, symbol.getName(), side, qty, currentPrice, leverage, initialMargin);
                 storage.savePosition(newPosition);
             } else {
                 // 部分平仓
-                closePositionSync(player, symbol, qty, null);
+                applyClose(playerId, symbol, qty, currentPrice);
             }
         } else {
             // 新开仓
             Position newPosition = new Position(playerId, symbol.getName(), side, qty, currentPrice, leverage, initialMargin);
             storage.savePosition(newPosition);
         }
-        
-        if (callback != null) {
-            callback.onSuccess("开仓成功: " + side + " " + qty + " " + symbol.getName() + " @ " + currentPrice);
-        }
+        updateTriggerIndexes(playerId, symbol);
     }
-    
+
     /**
      * 平仓（异步执行）
      */
     public void closePosition(Player player, Symbol symbol, BigDecimal qty, TradeCallback callback) {
-        tradeQueue.offer(() -> {
-            try {
-                closePositionSync(player, symbol, qty, callback);
-            } catch (Exception e) {
-                if (callback != null) {
-                    callback.onError(e.getMessage());
-                }
-            }
-        });
+        closePosition(player.getUniqueId(), symbol, qty, callback);
     }
     
+    /**
+     * 平仓（按玩家UUID路由到所属分片，玩家可不在线）
+     */
+    public void closePosition(UUID playerId, Symbol symbol, BigDecimal qty, TradeCallback callback) {
+        if (!shards[shardOf(playerId)].publishClose(playerId, symbol, qty, callback)) {
+            reject(callback);
+        }
+    }
+
     /**
      * 平仓（同步执行）
      */
-    private void closePositionSync(Player player, Symbol symbol, BigDecimal qty, TradeCallback callback) {
-        UUID playerId = player.getUniqueId();
-        
+    private void closePositionSync(UUID playerId, Symbol symbol, BigDecimal qty, TradeCallback callback) {
         Position position = storage.getPosition(playerId, symbol.getName());
         if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
             if (callback != null) {
@@ -201,12 +490,12 @@ public class TradeEngine {
             }
             return;
         }
-        
+
         // 如果qty为null或大于持仓量，则全平
         if (qty == null || qty.compareTo(position.getQty()) > 0) {
             qty = position.getQty();
         }
-        
+
         // 格式化数量
         qty = symbol.formatQuantity(qty);
         if (qty.compareTo(BigDecimal.ZERO) <= 0) {
@@ -215,7 +504,7 @@ public class TradeEngine {
             }
             return;
         }
-        
+
         // 获取当前价格
         BigDecimal currentPrice = priceService.getLastPrice(symbol.getName());
         if (currentPrice.compareTo(BigDecimal.ZERO) <= 0) {
@@ -224,38 +513,78 @@ public class TradeEngine {
             }
             return;
         }
-        
+        if (isPriceStale(symbol.getName())) {
+            if (callback != null) {
+                callback.onError(STALE_PRICE_MESSAGE);
+            }
+            return;
+        }
+
+        if (!writeJournal(TradeEvent.close(playerId, symbol.getName(), qty, currentPrice), callback)) {
+            return;
+        }
+        BigDecimal realizedPnl = applyClose(playerId, symbol, qty, currentPrice);
+        recordVolume(symbol.getName(), qty);
+
+        if (callback != null) {
+            callback.onSuccess("平仓成功: " + qty + " " + symbol.getName() + " @ " + currentPrice +
+                             ", 盈亏: " + realizedPnl + " USDT");
+        }
+    }
+
+    /**
+     * 执行平仓变更，返回已实现盈亏；仓位不存在时返回 null
+     */
+    private BigDecimal applyClose(UUID playerId, Symbol symbol, BigDecimal qty, BigDecimal currentPrice) {
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+            return null;
+        }
+        Settlement settlement = settleReduction(position, symbol, qty, currentPrice, true);
+
+        // 更新账户
+        Account account = storage.getAccount(playerId);
+        account.addWalletBalance(settlement.netReturn());
+        account.addRealizedPnl(settlement.realizedPnl());
+        account.updateAvailableBalance(BigDecimal.ZERO);
+        storage.saveAccount(account);
+        updateTriggerIndexes(playerId, symbol);
+        return settlement.realizedPnl();
+    }
+
+    /**
+     * 按成交价减少仓位：计算已实现盈亏、手续费与按比例返还的保证金，记录订单并更新仓位
+     * 账户余额由调用方结算
+     */
+    private Settlement settleReduction(Position position, Symbol symbol, BigDecimal qty, BigDecimal price,
+                                       boolean chargeFee) {
+        UUID playerId = position.getPlayerId();
+
         // 计算已实现盈亏
         BigDecimal entryPrice = position.getEntryPrice();
         BigDecimal realizedPnl;
         if (position.getSide() == OrderSide.LONG) {
-            realizedPnl = currentPrice.subtract(entryPrice).multiply(qty);
+            realizedPnl = price.subtract(entryPrice).multiply(qty);
         } else {
-            realizedPnl = entryPrice.subtract(currentPrice).multiply(qty);
+            realizedPnl = entryPrice.subtract(price).multiply(qty);
         }
-        
+
         // 计算手续费
-        BigDecimal fee = FeeModel.calculateTakerFee(symbol, qty, currentPrice);
-        
+        BigDecimal fee = chargeFee ? FeeModel.calculateTakerFee(symbol, qty, price) : BigDecimal.ZERO;
+
         // 计算返还的保证金（按比例）
         BigDecimal marginRatio = qty.divide(position.getQty(), 8, java.math.RoundingMode.HALF_UP);
-        BigDecimal returnedMargin = position.getIsolatedMargin().multiply(marginRatio);
-        
-        // 更新账户
-        Account account = storage.getAccount(playerId);
-        BigDecimal netReturn = returnedMargin.add(realizedPnl).subtract(fee);
-        account.addWalletBalance(netReturn);
-        account.updateAvailableBalance(BigDecimal.ZERO);
-        storage.saveAccount(account);
-        
+        BigDecimal returnedMargin = position.getIsolatedMargin().multiply(marginRatio)
+                                            .setScale(8, java.math.RoundingMode.HALF_UP);
+
         // 创建订单记录
-        long orderId = ((MemoryStockStorage) storage).getNextOrderId();
-        Order order = new Order(orderId, playerId, symbol.getName(), 
+        long orderId = storage.nextOrderId();
+        Order order = new Order(orderId, playerId, symbol.getName(),
                                position.getSide() == OrderSide.LONG ? OrderSide.SHORT : OrderSide.LONG,
                                OrderType.MARKET, qty);
-        order.fill(currentPrice, fee);
+        order.fill(price, fee);
         storage.saveOrder(order);
-        
+
         // 更新仓位
         position.reducePosition(qty);
         position.reduceMargin(returnedMargin);
@@ -264,34 +593,32 @@ public class TradeEngine {
         } else {
             storage.savePosition(position);
         }
-        
-        if (callback != null) {
-            callback.onSuccess("平仓成功: " + qty + " " + symbol.getName() + " @ " + currentPrice + 
-                             ", 盈亏: " + realizedPnl + " USDT");
+        return new Settlement(realizedPnl, returnedMargin, fee);
+    }
+
+    /**
+     * 一次减仓的结算结果
+     */
+    private record Settlement(BigDecimal realizedPnl, BigDecimal returnedMargin, BigDecimal fee) {
+        BigDecimal netReturn() {
+            return returnedMargin.add(realizedPnl).subtract(fee);
         }
     }
-    
+
     /**
      * 追加保证金（异步执行）
      */
     public void addMargin(Player player, Symbol symbol, BigDecimal amount, TradeCallback callback) {
-        tradeQueue.offer(() -> {
-            try {
-                addMarginSync(player, symbol, amount, callback);
-            } catch (Exception e) {
-                if (callback != null) {
-                    callback.onError(e.getMessage());
-                }
-            }
-        });
+        UUID playerId = player.getUniqueId();
+        if (!shards[shardOf(playerId)].publishAddMargin(playerId, symbol, amount, callback)) {
+            reject(callback);
+        }
     }
-    
+
     /**
      * 追加保证金（同步执行）
      */
-    private void addMarginSync(Player player, Symbol symbol, BigDecimal amount, TradeCallback callback) {
-        UUID playerId = player.getUniqueId();
-        
+    private void addMarginSync(UUID playerId, Symbol symbol, BigDecimal amount, TradeCallback callback) {
         Position position = storage.getPosition(playerId, symbol.getName());
         if (position == null) {
             if (callback != null) {
@@ -299,35 +626,1046 @@ public class TradeEngine {
             }
             return;
         }
-        
+
         Account account = storage.getAccount(playerId);
+        if (account.isCrossMargin()) {
+            if (callback != null) {
+                callback.onError("全仓模式下仓位共享钱包余额，无需追加保证金");
+            }
+            return;
+        }
         if (account.getAvailableBalance().compareTo(amount) < 0) {
             if (callback != null) {
                 callback.onError("余额不足");
             }
             return;
         }
-        
-        // 扣除钱包余额
-        account.setWalletBalance(account.getWalletBalance().subtract(amount));
-        account.updateAvailableBalance(BigDecimal.ZERO);
-        storage.saveAccount(account);
-        
-        // 追加到逐仓保证金
-        position.addMargin(amount);
-        storage.savePosition(position);
-        
+
+        if (!writeJournal(TradeEvent.addMargin(playerId, symbol.getName(), amount), callback)) {
+            return;
+        }
+        applyAddMargin(playerId, symbol, amount);
+
         if (callback != null) {
             callback.onSuccess("追加保证金成功: " + amount + " USDT");
         }
     }
-    
+
     /**
-     * 交易回调接口
+     * 执行追加保证金变更
      */
-    public interface TradeCallback {
+    private void applyAddMargin(UUID playerId, Symbol symbol, BigDecimal amount) {
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null) {
+            return;
+        }
+
+        // 扣除钱包余额
+        Account account = storage.getAccount(playerId);
+        account.setWalletBalance(account.getWalletBalance().subtract(amount));
+        account.updateAvailableBalance(BigDecimal.ZERO);
+        storage.saveAccount(account);
+
+        // 追加到逐仓保证金
+        position.addMargin(amount);
+        storage.savePosition(position);
+        updateTriggerIndexes(playerId, symbol);
+    }
+
+    /**
+     * 根据存储中的全部仓位重建爆仓价索引、止盈止损索引和账户净值（启动时、交易线程运行前调用）
+     */
+    public void rebuildTriggerIndexes(Function<String, Symbol> symbolResolver) {
+        liquidationIndex.clear();
+        stopOrderIndex.clear();
+        entryIndex.clear();
+        equityTracker.clear();
+        storage.forEachPosition(position -> {
+            if (position.getQty().compareTo(BigDecimal.ZERO) > 0) {
+                Symbol symbol = symbolResolver.apply(position.getSymbol());
+                indexPosition(position, symbol);
+                indexStopOrders(position);
+                indexEntryPrice(position);
+                if (symbol != null) {
+                    equityTracker.update(position.getPlayerId(), symbol);
+                }
+            }
+        });
+        equityTracker.rebuildLeaderboard();
+    }
+
+    /**
+     * 根据存储中仍在挂单的限价单重建订单簿和账户冻结资金（启动时、交易线程运行前调用）
+     * 同价挂单按订单ID（即下单先后）排队；交易对已下架或数据无效的挂单直接撤销
+     */
+    public void rebuildOrderBooks(Function<String, Symbol> symbolResolver) {
+        orderBooks.clear();
+        // 冻结资金不单独持久化，以挂单记录的冻结金额为准
+        storage.forEachAccount(account -> account.unfreeze(account.getFrozenBalance()));
+        List<Order> open = new ArrayList<>();
+        storage.forEachOpenOrder(open::add);
+        open.sort(Comparator.comparingLong(Order::getId));
+        int restored = 0;
+        int cancelled = 0;
+        for (Order order : open) {
+            Symbol symbol = symbolResolver.apply(order.getSymbol());
+            BigDecimal remaining = order.getQty().subtract(order.getSettledQty());
+            long price = order.getPrice() != null ? FixedPoint.fromDecimalExact(order.getPrice()) : FixedPoint.INVALID;
+            long qty = FixedPoint.fromDecimalExact(remaining);
+            if (symbol == null || price == FixedPoint.INVALID || price <= 0 || qty == FixedPoint.INVALID || qty <= 0) {
+                order.setSettledQty(order.getQty());
+                order.setReservedBalance(BigDecimal.ZERO);
+                order.cancel();
+                storage.saveOrder(order);
+                cancelled++;
+                continue;
+            }
+            storage.getAccount(order.getPlayerId()).freeze(order.getReservedBalance());
+            orderBooks.computeIfAbsent(symbol.getName(), OrderBook::new)
+                      .restore(new OrderBook.Entry(order, symbol, price, qty, null));
+            restored++;
+        }
+        if (restored > 0 || cancelled > 0) {
+            MessageUtils.logInfo("已恢复挂单: " + restored + (cancelled > 0 ? "，无法恢复已撤销: " + cancelled : ""));
+        }
+    }
+
+    /**
+     * 仓位变更后同步爆仓价索引、止盈止损索引和账户净值
+     */
+    private void updateTriggerIndexes(UUID playerId, Symbol symbol) {
+        equityTracker.update(playerId, symbol);
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+            liquidationIndex.remove(symbol.getName(), playerId);
+            stopOrderIndex.remove(symbol.getName(), playerId);
+            entryIndex.remove(symbol.getName(), playerId);
+            return;
+        }
+        indexPosition(position, symbol);
+        indexStopOrders(position);
+        indexEntryPrice(position);
+    }
+
+    /**
+     * 按开仓均价索引仓位：标记价格穿越均价（多仓向上、空仓向下）即为盈利
+     */
+    private void indexEntryPrice(Position position) {
+        boolean isLong = position.getSide() == OrderSide.LONG;
+        long entryPrice = FixedPoint.fromDecimalOrInvalid(position.getEntryPrice());
+        if (entryPrice == FixedPoint.INVALID) {
+            entryPrice = isLong ? 0 : Long.MAX_VALUE; // 无法表示时总是作为候选，由精确盈亏筛选
+        }
+        entryIndex.remove(position.getSymbol(), position.getPlayerId(),
+                          isLong ? TriggerIndex.Direction.FALLING : TriggerIndex.Direction.RISING);
+        entryIndex.put(position.getSymbol(), position.getPlayerId(),
+                       isLong ? TriggerIndex.Direction.RISING : TriggerIndex.Direction.FALLING, entryPrice);
+    }
+
+    /**
+     * 多仓：止损向下触发、止盈向上触发；空仓相反
+     */
+    private void indexStopOrders(Position position) {
+        boolean isLong = position.getSide() == OrderSide.LONG;
+        indexStopOrder(position, isLong ? TriggerIndex.Direction.FALLING : TriggerIndex.Direction.RISING,
+                       position.getStopLossPrice());
+        indexStopOrder(position, isLong ? TriggerIndex.Direction.RISING : TriggerIndex.Direction.FALLING,
+                       position.getTakeProfitPrice());
+    }
+
+    private void indexStopOrder(Position position, TriggerIndex.Direction direction, BigDecimal triggerPrice) {
+        long price = triggerPrice != null ? FixedPoint.fromDecimalOrInvalid(triggerPrice) : FixedPoint.INVALID;
+        if (price == FixedPoint.INVALID || price <= 0) {
+            stopOrderIndex.remove(position.getSymbol(), position.getPlayerId(), direction);
+        } else {
+            stopOrderIndex.put(position.getSymbol(), position.getPlayerId(), direction, price);
+        }
+    }
+
+    private void indexPosition(Position position, Symbol symbol) {
+        if (storage.getAccount(position.getPlayerId()).isCrossMargin()) {
+            // 全仓仓位没有单仓爆仓价，由账户净值跟踪判断强平
+            liquidationIndex.remove(position.getSymbol(), position.getPlayerId());
+            position.setLiquidationPrice(BigDecimal.ZERO);
+            return;
+        }
+        boolean isLong = position.getSide() == OrderSide.LONG;
+        TriggerIndex.Direction direction = isLong ? TriggerIndex.Direction.FALLING : TriggerIndex.Direction.RISING;
+        long liquidationPrice;
+        try {
+            if (symbol == null) {
+                throw new ArithmeticException("交易对不存在");
+            }
+            long mmr = symbol.getMaintenanceMarginRateFixed();
+            if (position.hasFixedValues() && mmr != FixedPoint.INVALID) {
+                liquidationPrice = MarginModel.liquidationPriceFixed(position, mmr);
+            } else {
+                liquidationPrice = FixedPoint.fromDecimal(MarginModel.calculateLiquidationPrice(position, symbol));
+            }
+            position.setLiquidationPrice(FixedPoint.toDecimal(Math.max(0, liquidationPrice)));
+        } catch (ArithmeticException e) {
+            // 无法计算爆仓价时让该仓位每轮都参与检查
+            liquidationPrice = isLong ? Long.MAX_VALUE : 0;
+        }
+        liquidationIndex.remove(position.getSymbol(), position.getPlayerId(),
+                                isLong ? TriggerIndex.Direction.RISING : TriggerIndex.Direction.FALLING);
+        liquidationIndex.put(position.getSymbol(), position.getPlayerId(), direction, liquidationPrice);
+    }
+
+    /**
+     * 执行一条命令（在分片线程中调用）
+     */
+    private void dispatch(TradeCommand command) {
+        LatencyHistogram[] queue = queueLatency;
+        long start = queue != null ? System.nanoTime() : 0;
+        storage.beginBatch(); // 一条命令内的全部保存一起落盘
+        try {
+            switch (command.type) {
+                case OPEN:
+                    openPositionSync(command.playerId, command.symbol, command.side,
+                                     command.qty, command.leverage, command.callback);
+                    break;
+                case CLOSE:
+                    closePositionSync(command.playerId, command.symbol, command.qty, command.callback);
+                    break;
+                case ADD_MARGIN:
+                    addMarginSync(command.playerId, command.symbol, command.amount, command.callback);
+                    break;
+                case LIMIT:
+                    placeLimitOrderSync(command.playerId, command.symbol, command.side, command.qty,
+                                        command.price, command.leverage, command.callback);
+                    break;
+                case CANCEL:
+                    cancelOrderSync(command.playerId, command.orderId, command.callback);
+                    break;
+                case TASK:
+                    command.task.run();
+                    break;
+            }
+        } catch (Exception e) {
+            if (command.callback != null) {
+                command.callback.onError(e.getMessage());
+            } else {
+                MessageUtils.logError("交易命令 " + command.type + " 执行异常: " + e.getMessage());
+            }
+        } finally {
+            storage.endBatch();
+        }
+        if (queue != null) {
+            int type = command.type.ordinal();
+            queue[type].record(start - command.publishNanos);
+            executionTime[type].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 缓冲区已满，拒绝本次操作
+     */
+    private void reject(TradeCallback callback) {
+        if (rejectedCount != null) {
+            rejectedCount.increment();
+        }
+        if (callback != null) {
+            callback.onError(BUSY_MESSAGE);
+        }
+    }
+
+    /**
+     * 回放一条交易日志事件（启动恢复时调用，分片线程尚未启动）
+     */
+    public void replay(TradeEvent event, Symbol symbol) {
+        switch (event.getType()) {
+            case OPEN:
+                applyOpen(event.getPlayerId(), symbol, event.getSide(), event.getQty(),
+                          event.getLeverage(), event.getPrice(), true);
+                break;
+            case CLOSE:
+                applyClose(event.getPlayerId(), symbol, event.getQty(), event.getPrice());
+                break;
+            case ADD_MARGIN:
+                applyAddMargin(event.getPlayerId(), symbol, event.getAmount());
+                break;
+            case STOP_ORDERS:
+                applyStopOrders(event.getPlayerId(), symbol, event.getPrice(), event.getAmount());
+                break;
+            case MARGIN_MODE:
+                applyMarginMode(event.getPlayerId(), event.getSymbol());
+                break;
+            case FUNDING:
+                applyFunding(List.of(new FundingRate(symbol, event.getPrice(), event.getAmount())), false);
+                break;
+            case LIQUIDATION:
+                applyLiquidation(event.getPlayerId(), symbol, event.getQty(), event.getPrice());
+                break;
+            case ADL:
+                applyDeleverage(event.getPlayerId(), symbol, event.getQty(), event.getPrice(), event.getAmount());
+                break;
+            case LIMIT_PLACE:
+                applyLimitPlace(event.getOrderId(), event.getPlayerId(), symbol.getName(), event.getSide(),
+                                event.getQty(), event.getPrice(), event.getLeverage(), event.getAmount(),
+                                event.getTimestamp());
+                break;
+            case LIMIT_FILL:
+                applyLimitFill(event.getPlayerId(), symbol, storage.getOrder(event.getOrderId()), event.getSide(),
+                               event.getQty(), event.getLeverage(), event.getPrice());
+                break;
+            case LIMIT_CANCEL:
+                Order cancelled = storage.getOrder(event.getOrderId());
+                if (cancelled != null && cancelled.isActive()) {
+                    settleCancel(cancelled, event.getQty());
+                }
+                break;
+        }
+    }
+
+    /**
+     * 批量强平（经优先通道独占执行：不排在分片中已有的普通命令之后，所有分片暂停期间完成）
+     * 按交易对分组，每组以当前标记价格平掉全部仓位；穿仓亏损先由保险基金承担，
+     * 不足部分在该组结束后按自动减仓队列由对手方盈利仓位承担
+     */
+    public CompletableFuture<LiquidationReport> liquidate(List<Liquidation> batch) {
+        CompletableFuture<LiquidationReport> result = new CompletableFuture<>();
+        runExclusive(() -> result.complete(applyLiquidationBatch(batch)), true).whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    private LiquidationReport applyLiquidationBatch(List<Liquidation> batch) {
+        Map<String, List<Liquidation>> bySymbol = new LinkedHashMap<>();
+        for (Liquidation liquidation : batch) {
+            bySymbol.computeIfAbsent(liquidation.symbol().getName(), k -> new ArrayList<>()).add(liquidation);
+        }
+        List<LiquidationEvent> liquidated = new ArrayList<>();
+        List<LiquidationEvent> deleveraged = new ArrayList<>();
+        Map<UUID, Boolean> crossBreached = new HashMap<>();
+        OrderSide[] sides = OrderSide.values();
+        for (List<Liquidation> group : bySymbol.values()) {
+            Symbol symbol = group.get(0).symbol();
+            BigDecimal markPrice = priceService.getMarkPrice(symbol.getName());
+            if (markPrice.compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            BigDecimal[] shortfall = new BigDecimal[sides.length]; // 按被强平仓位的方向累计未覆盖的穿仓亏损
+            BigDecimal[] closedQty = new BigDecimal[sides.length];
+            for (Liquidation liquidation : group) {
+                UUID playerId = liquidation.playerId();
+                Position position = storage.getPosition(playerId, symbol.getName());
+                if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0
+                    || !isStillBreached(position, symbol, markPrice, crossBreached)) {
+                    continue;
+                }
+                BigDecimal qty = position.getQty();
+                int side = position.getSide().ordinal();
+                if (!writeJournal(TradeEvent.liquidation(playerId, symbol.getName(), qty, markPrice), null)) {
+                    continue;
+                }
+                LiquidationResult result = applyLiquidation(playerId, symbol, qty, markPrice);
+                recordVolume(symbol.getName(), qty);
+                liquidated.add(new LiquidationEvent(playerId, symbol.getName(), markPrice, qty, result.loss()));
+                shortfall[side] = shortfall[side] == null ? result.shortfall() : shortfall[side].add(result.shortfall());
+                closedQty[side] = closedQty[side] == null ? qty : closedQty[side].add(qty);
+            }
+            // 同组后续强平的结余可能已补回部分穿仓，只对基金仍然欠缺的部分自动减仓
+            BigDecimal deficit = insuranceFund.getBalance().negate();
+            for (OrderSide side : sides) {
+                BigDecimal uncovered = shortfall[side.ordinal()];
+                if (uncovered == null || deficit.signum() <= 0) {
+                    continue;
+                }
+                uncovered = uncovered.min(deficit);
+                if (uncovered.signum() > 0) {
+                    OrderSide opposite = side == OrderSide.LONG ? OrderSide.SHORT : OrderSide.LONG;
+                    deleverage(symbol, opposite, closedQty[side.ordinal()], uncovered, markPrice, deleveraged);
+                    deficit = deficit.subtract(uncovered);
+                }
+            }
+        }
+        return new LiquidationReport(liquidated, deleveraged, insuranceFund.getBalance());
+    }
+
+    /**
+     * 执行前按当前标记价格复核仓位是否仍跌破维持保证金（与风控检查的判定相同）
+     * 批次来自异步扫描，其间追加保证金、部分平仓或价格回升的仓位不再强平；
+     * 全仓账户在批次内只判定一次，判定成立时账户的全部仓位一起强平
+     */
+    private boolean isStillBreached(Position position, Symbol symbol, BigDecimal markPrice,
+                                    Map<UUID, Boolean> crossBreached) {
+        UUID playerId = position.getPlayerId();
+        if (storage.getAccount(playerId).isCrossMargin()) {
+            return crossBreached.computeIfAbsent(playerId, equityTracker::isBelowMaintenance);
+        }
+        BigDecimal availableMargin = MarginModel.calculateAvailableMargin(position, markPrice);
+        BigDecimal maintenanceMargin = MarginModel.calculateMaintenanceMargin(
+            markPrice, position.getQty(), symbol.getMaintenanceMarginRate());
+        return availableMargin.compareTo(maintenanceMargin) <= 0;
+    }
+
+    /**
+     * 执行强平平仓
+     * 逐仓：保证金全部损失，结余（保证金 + 盈亏 - 手续费）计入保险基金，为负时由基金垫付；
+     * 全仓：盈亏计入钱包，账户已无持仓且钱包为负时由基金补足
+     */
+    private LiquidationResult applyLiquidation(UUID playerId, Symbol symbol, BigDecimal qty, BigDecimal price) {
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+            return new LiquidationResult(BigDecimal.ZERO, BigDecimal.ZERO);
+        }
+        Settlement settlement = settleReduction(position, symbol, qty, price, true);
+        Account account = storage.getAccount(playerId);
+        BigDecimal booked; // 计入保险基金的金额，负数为基金垫付
+        BigDecimal loss;
+        if (!account.isCrossMargin()) {
+            booked = settlement.netReturn();
+            loss = settlement.returnedMargin();
+        } else {
+            account.addWalletBalance(settlement.netReturn());
+            booked = BigDecimal.ZERO;
+            loss = settlement.fee().subtract(settlement.realizedPnl()).max(BigDecimal.ZERO);
+            if (account.getWalletBalance().signum() < 0 && storage.getAllPositions(playerId).isEmpty()) {
+                booked = account.getWalletBalance();
+                account.setWalletBalance(BigDecimal.ZERO);
+            }
+        }
+        account.addRealizedPnl(settlement.realizedPnl());
+        account.updateAvailableBalance(BigDecimal.ZERO);
+        storage.saveAccount(account);
+        BigDecimal shortfall = insuranceFund.book(booked);
+        updateTriggerIndexes(playerId, symbol);
+        return new LiquidationResult(loss, shortfall);
+    }
+
+    /**
+     * 强平结果：玩家损失，以及保险基金无力承担、需要自动减仓弥补的穿仓亏损
+     */
+    private record LiquidationResult(BigDecimal loss, BigDecimal shortfall) {
+    }
+
+    /**
+     * 自动减仓：按排名依次以让利后的价格减少对手方盈利仓位，让利部分计入保险基金
+     * 减仓总量不超过被强平的数量，单个仓位的让利不超过其浮盈
+     */
+    private void deleverage(Symbol symbol, OrderSide side, BigDecimal maxQty, BigDecimal shortfall,
+                            BigDecimal markPrice, List<LiquidationEvent> deleveraged) {
+        AdlQueue queue = AdlQueue.build(storage, entryIndex, symbol.getName(), side, markPrice);
+        BigDecimal remaining = shortfall;
+        BigDecimal qtyLeft = maxQty;
+        AdlQueue.Candidate candidate;
+        while (remaining.signum() > 0 && qtyLeft.signum() > 0 && (candidate = queue.poll()) != null) {
+            Position position = candidate.position();
+            if (position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            BigDecimal qty = position.getQty().min(qtyLeft);
+            BigDecimal profit = candidate.pnl().multiply(qty).divide(position.getQty(), 8, RoundingMode.DOWN);
+            BigDecimal discount = remaining.min(profit).divide(qty, 8, RoundingMode.DOWN); // 每单位让利
+            if (discount.signum() <= 0) {
+                continue;
+            }
+            BigDecimal contribution = discount.multiply(qty);
+            BigDecimal price = side == OrderSide.LONG ? markPrice.subtract(discount) : markPrice.add(discount);
+            UUID playerId = position.getPlayerId();
+            if (!writeJournal(TradeEvent.deleverage(playerId, symbol.getName(), qty, price, contribution), null)) {
+                continue;
+            }
+            applyDeleverage(playerId, symbol, qty, price, contribution);
+            recordVolume(symbol.getName(), qty);
+            deleveraged.add(new LiquidationEvent(playerId, symbol.getName(), price, qty, contribution));
+            remaining = remaining.subtract(contribution);
+            qtyLeft = qtyLeft.subtract(qty);
+        }
+        if (remaining.signum() > 0) {
+            MessageUtils.logWarning("保险基金与自动减仓不足以弥补 " + symbol.getName() + " 穿仓亏损，未覆盖: "
+                + remaining + " USDT，保险基金余额: " + insuranceFund.getBalance());
+        }
+    }
+
+    /**
+     * 执行自动减仓（不收手续费）
+     */
+    private void applyDeleverage(UUID playerId, Symbol symbol, BigDecimal qty, BigDecimal price,
+                                 BigDecimal contribution) {
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+            return;
+        }
+        Settlement settlement = settleReduction(position, symbol, qty.min(position.getQty()), price, false);
+        Account account = storage.getAccount(playerId);
+        account.addWalletBalance(settlement.netReturn());
+        account.addRealizedPnl(settlement.realizedPnl());
+        account.updateAvailableBalance(BigDecimal.ZERO);
+        storage.saveAccount(account);
+        insuranceFund.book(contribution);
+        updateTriggerIndexes(playerId, symbol);
+    }
+
+    /**
+     * 结算资金费（独占执行：所有分片暂停期间完成，结果为每个账户的资金费合计，正数为收入）
+     * 先遍历一次全部仓位按交易对分组，再逐个交易对批量计算，最后一次性批量保存账户
+     * 与强平批次、快照共用独占许可，调用线程会等到正在进行的独占任务结束，不能在分片线程中调用
+     */
+    public CompletableFuture<Map<UUID, BigDecimal>> settleFunding(List<FundingRate> rates) {
+        CompletableFuture<Map<UUID, BigDecimal>> result = new CompletableFuture<>();
+        runExclusive(() -> result.complete(applyFunding(rates, true))).whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 执行资金费结算（记录日志时每个有持仓的交易对写入一条事件，写入失败的交易对本期不结算）
+     */
+    private Map<UUID, BigDecimal> applyFunding(List<FundingRate> rates, boolean record) {
+        Map<String, List<Position>> bySymbol = new HashMap<>();
+        for (FundingRate rate : rates) {
+            bySymbol.put(rate.symbol().getName(), new ArrayList<>());
+        }
+        storage.forEachPosition(position -> {
+            List<Position> positions = bySymbol.get(position.getSymbol());
+            if (positions != null && position.getQty().compareTo(BigDecimal.ZERO) > 0) {
+                positions.add(position);
+            }
+        });
+        Map<UUID, BigDecimal> payments = new HashMap<>();
+        for (FundingRate rate : rates) {
+            String symbolName = rate.symbol().getName();
+            List<Position> positions = bySymbol.get(symbolName);
+            if (positions.isEmpty()) {
+                continue;
+            }
+            if (record && !writeJournal(TradeEvent.funding(symbolName, rate.markPrice(), rate.rate()), null)) {
+                continue;
+            }
+            collectFunding(rate.symbol(), positions, accrueFunding(positions, rate.markPrice(), rate.rate()), payments);
+        }
+        List<Account> accounts = new ArrayList<>(payments.size());
+        for (UUID playerId : payments.keySet()) {
+            accounts.add(storage.getAccount(playerId));
+        }
+        storage.saveAccounts(accounts);
+        for (UUID playerId : payments.keySet()) {
+            equityTracker.updateAccount(playerId);
+        }
+        return payments;
+    }
+
+    /**
+     * 计算同一交易对每个仓位的资金费，顺序与 positions 一致（定点数计算，溢出时回退到 BigDecimal）
+     */
+    private static BigDecimal[] accrueFunding(List<Position> positions, BigDecimal markPrice, BigDecimal rate) {
+        long markFixed = FixedPoint.fromDecimalExact(markPrice);
+        long rateFixed = FixedPoint.fromDecimalExact(rate);
+        boolean exact = markFixed != FixedPoint.INVALID && rateFixed != FixedPoint.INVALID;
+        BigDecimal[] due = new BigDecimal[positions.size()];
+        for (int i = 0; i < due.length; i++) {
+            Position position = positions.get(i);
+            if (exact && position.hasFixedValues()) {
+                try {
+                    due[i] = FixedPoint.toDecimal(FundingModel.paymentFixed(
+                        position.getSide(), position.getQtyFixed(), markFixed, rateFixed));
+                } catch (ArithmeticException e) {
+                    // 溢出，回退到 BigDecimal
+                }
+            }
+            if (due[i] == null) {
+                due[i] = FundingModel.calculatePayment(position.getSide(), position.getQty(), markPrice, rate);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * 结算同一交易对的资金费，按账户累加实际收支（正数为收入）
+     * 收入方足额入账；支付方先从钱包扣除，逐仓不足部分再从该仓位的保证金扣除，全仓钱包可以为负、由账户净值承担。
+     * 仍无法收取的部分以及多空持仓不等造成的差额（平台为对手方）由保险基金承担或收入，
+     * 因此每个交易对的收支（含保险基金）合计为零
+     */
+    private void collectFunding(Symbol symbol, List<Position> positions, BigDecimal[] due,
+                                Map<UUID, BigDecimal> payments) {
+        BigDecimal net = BigDecimal.ZERO;
+        for (int i = 0; i < due.length; i++) {
+            Position position = positions.get(i);
+            Account account = storage.getAccount(position.getPlayerId());
+            BigDecimal payment = due[i];
+            if (payment.signum() >= 0) {
+                account.addWalletBalance(payment);
+            } else {
+                payment = chargeFunding(account, position, symbol, payment.negate()).negate();
+            }
+            net = net.add(payment);
+            payments.merge(position.getPlayerId(), payment, BigDecimal::add);
+        }
+        insuranceFund.book(net.negate());
+    }
+
+    /**
+     * 向支付方收取资金费，返回实际收取的金额
+     */
+    private BigDecimal chargeFunding(Account account, Position position, Symbol symbol, BigDecimal amount) {
+        BigDecimal wallet = account.getWalletBalance();
+        if (account.isCrossMargin()) {
+            account.setWalletBalance(wallet.subtract(amount));
+            account.updateAvailableBalance(BigDecimal.ZERO);
+            return amount;
+        }
+        BigDecimal fromWallet = amount.min(wallet.max(BigDecimal.ZERO));
+        account.setWalletBalance(wallet.subtract(fromWallet));
+        account.updateAvailableBalance(BigDecimal.ZERO);
+        BigDecimal fromMargin = amount.subtract(fromWallet).min(position.getIsolatedMargin());
+        if (fromMargin.signum() > 0) {
+            // 保证金减少后爆仓价随之靠近标记价格
+            position.reduceMargin(fromMargin);
+            storage.savePosition(position);
+            updateTriggerIndexes(position.getPlayerId(), symbol);
+        }
+        return fromWallet.add(fromMargin);
+    }
+
+    /**
+     * 切换保证金模式（异步执行），有持仓或挂单时不能切换
+     */
+    public void setMarginMode(Player player, String marginMode, TradeCallback callback) {
+        UUID playerId = player.getUniqueId();
+        if (!shards[shardOf(playerId)].publishTask(() -> setMarginModeSync(playerId, marginMode, callback))) {
+            reject(callback);
+        }
+    }
+
+    /**
+     * 切换保证金模式（同步执行，在交易线程中）
+     */
+    private void setMarginModeSync(UUID playerId, String marginMode, TradeCallback callback) {
+        Account account = storage.getAccount(playerId);
+        if (marginMode.equals(account.getMarginMode())) {
+            if (callback != null) {
+                callback.onError("当前已是" + marginModeName(marginMode) + "模式");
+            }
+            return;
+        }
+        if (!storage.getAllPositions(playerId).isEmpty() || !getOpenOrders(playerId).isEmpty()) {
+            if (callback != null) {
+                callback.onError("有持仓或挂单时不能切换保证金模式");
+            }
+            return;
+        }
+
+        if (!writeJournal(TradeEvent.marginMode(playerId, marginMode), callback)) {
+            return;
+        }
+        applyMarginMode(playerId, marginMode);
+
+        if (callback != null) {
+            callback.onSuccess("保证金模式已切换为: " + marginModeName(marginMode));
+        }
+    }
+
+    /**
+     * 执行保证金模式变更
+     */
+    private void applyMarginMode(UUID playerId, String marginMode) {
+        Account account = storage.getAccount(playerId);
+        account.setMarginMode(marginMode);
+        storage.saveAccount(account);
+        equityTracker.updateAccount(playerId);
+    }
+
+    public static String marginModeName(String marginMode) {
+        return Account.CROSS.equals(marginMode) ? "全仓" : "逐仓";
+    }
+
+    /**
+     * 设置止盈止损（异步执行），为空表示取消对应的触发
+     */
+    public void setStopOrders(Player player, Symbol symbol, BigDecimal stopLoss, BigDecimal takeProfit,
+                              TradeCallback callback) {
+        UUID playerId = player.getUniqueId();
+        if (!shards[shardOf(playerId)].publishTask(
+                () -> setStopOrdersSync(playerId, symbol, stopLoss, takeProfit, callback))) {
+            reject(callback);
+        }
+    }
+
+    /**
+     * 设置止盈止损（同步执行，在交易线程中）
+     */
+    private void setStopOrdersSync(UUID playerId, Symbol symbol, BigDecimal stopLoss, BigDecimal takeProfit,
+                                   TradeCallback callback) {
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null || position.getQty().compareTo(BigDecimal.ZERO) <= 0) {
+            if (callback != null) {
+                callback.onError("没有持仓");
+            }
+            return;
+        }
+
+        stopLoss = stopLoss != null ? symbol.formatPrice(stopLoss) : null;
+        takeProfit = takeProfit != null ? symbol.formatPrice(takeProfit) : null;
+        // 触发价必须在当前标记价格的正确一侧，否则会立即触发
+        BigDecimal markPrice = priceService.getMarkPrice(symbol.getName());
+        boolean isLong = position.getSide() == OrderSide.LONG;
+        if (markPrice.compareTo(BigDecimal.ZERO) > 0) {
+            if (stopLoss != null && (isLong ? stopLoss.compareTo(markPrice) >= 0 : stopLoss.compareTo(markPrice) <= 0)) {
+                if (callback != null) {
+                    callback.onError("止损价必须" + (isLong ? "低于" : "高于") + "当前标记价格: " + markPrice);
+                }
+                return;
+            }
+            if (takeProfit != null && (isLong ? takeProfit.compareTo(markPrice) <= 0 : takeProfit.compareTo(markPrice) >= 0)) {
+                if (callback != null) {
+                    callback.onError("止盈价必须" + (isLong ? "高于" : "低于") + "当前标记价格: " + markPrice);
+                }
+                return;
+            }
+        }
+
+        if (!writeJournal(TradeEvent.stopOrders(playerId, symbol.getName(), stopLoss, takeProfit), callback)) {
+            return;
+        }
+        applyStopOrders(playerId, symbol, stopLoss, takeProfit);
+
+        if (callback != null) {
+            callback.onSuccess("止盈止损已设置: " + symbol.getName() +
+                             " 止损 " + (stopLoss != null ? stopLoss : "无") +
+                             "，止盈 " + (takeProfit != null ? takeProfit : "无"));
+        }
+    }
+
+    /**
+     * 执行止盈止损变更
+     */
+    private void applyStopOrders(UUID playerId, Symbol symbol, BigDecimal stopLoss, BigDecimal takeProfit) {
+        Position position = storage.getPosition(playerId, symbol.getName());
+        if (position == null) {
+            return;
+        }
+        position.setStopLossPrice(stopLoss);
+        position.setTakeProfitPrice(takeProfit);
+        storage.savePosition(position);
+        updateTriggerIndexes(playerId, symbol);
+    }
+
+    /**
+     * 下限价单（异步执行）
+     */
+    public void placeLimitOrder(Player player, Symbol symbol, OrderSide side, BigDecimal qty,
+                                BigDecimal price, int leverage, TradeCallback callback) {
+        UUID playerId = player.getUniqueId();
+        if (!shards[shardOf(playerId)].publishLimit(playerId, symbol, side, qty, price, leverage, callback)) {
+            reject(callback);
+        }
+    }
+
+    /**
+     * 撤销限价单（异步执行）
+     */
+    public void cancelOrder(Player player, long orderId, TradeCallback callback) {
+        UUID playerId = player.getUniqueId();
+        if (!shards[shardOf(playerId)].publishCancel(playerId, orderId, callback)) {
+            reject(callback);
+        }
+    }
+
+    /**
+     * 交易对的订单簿，尚无挂单时返回 null
+     */
+    public OrderBook getOrderBook(String symbol) {
+        return orderBooks.get(symbol);
+    }
+
+    /**
+     * 玩家仍在挂单中的限价单
+     */
+    public List<Order> getOpenOrders(UUID playerId) {
+        List<Order> result = new ArrayList<>();
+        for (Order order : storage.getOrders(playerId, null)) {
+            if (order.getType() == OrderType.LIMIT && order.isActive()) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 下限价单（同步执行，在交易线程中）
+     * 按委托价冻结保证金和手续费，先与订单簿撮合，剩余部分挂单
+     */
+    private void placeLimitOrderSync(UUID playerId, Symbol symbol, OrderSide side, BigDecimal qty,
+                                     BigDecimal price, int leverage, TradeCallback callback) {
+        if (!symbol.isValidLeverage(leverage)) {
+            if (callback != null) {
+                callback.onError("杠杆倍数无效，范围: 1-" + symbol.getMaxLeverage());
+            }
+            return;
+        }
+
+        qty = symbol.formatQuantity(qty);
+        if (!symbol.isValidQuantity(qty)) {
+            if (callback != null) {
+                callback.onError("数量无效，范围: " + symbol.getMinQty() + "-" + symbol.getMaxQty());
+            }
+            return;
+        }
+
+        if (isPriceStale(symbol.getName())) {
+            if (callback != null) {
+                callback.onError(STALE_PRICE_MESSAGE);
+            }
+            return;
+        }
+
+        price = symbol.formatPrice(price);
+        long priceFixed = FixedPoint.fromDecimalExact(price);
+        long qtyFixed = FixedPoint.fromDecimalExact(qty);
+        if (price.compareTo(BigDecimal.ZERO) <= 0 || priceFixed == FixedPoint.INVALID || qtyFixed == FixedPoint.INVALID) {
+            if (callback != null) {
+                callback.onError("委托价格无效");
+            }
+            return;
+        }
+
+        // 按委托价冻结保证金和手续费
+        BigDecimal reserve = MarginModel.calculateInitialMargin(price, qty, leverage)
+                                        .add(FeeModel.calculateTakerFee(symbol, qty, price));
+        Account account = storage.getAccount(playerId);
+        BigDecimal available = getAvailableBalance(account);
+        if (available.compareTo(reserve) < 0) {
+            if (callback != null) {
+                callback.onError("余额不足，需要: " + reserve + " USDT，可用: " + available + " USDT");
+            }
+            return;
+        }
+        long orderId = storage.nextOrderId();
+        if (!writeJournal(TradeEvent.limitPlace(playerId, symbol.getName(), side, qty, leverage, price, reserve, orderId),
+                          callback)) {
+            return;
+        }
+        Order order = applyLimitPlace(orderId, playerId, symbol.getName(), side, qty, price, leverage, reserve,
+                                      System.currentTimeMillis());
+        if (callback != null) {
+            callback.onSuccess("限价单已提交 #" + orderId + ": " + side + " " + qty + " " + symbol.getName() + " @ " + price);
+        }
+
+        OrderBook book = orderBooks.computeIfAbsent(symbol.getName(), OrderBook::new);
+        OrderBook.Entry entry = new OrderBook.Entry(order, symbol, priceFixed, qtyFixed, callback);
+        long marketPrice = FixedPoint.fromDecimalOrInvalid(priceService.getLastPrice(symbol.getName()));
+        List<OrderBook.Fill> fills = new ArrayList<>();
+        book.submit(entry, marketPrice == FixedPoint.INVALID ? 0 : marketPrice, fills);
+        int currentShard = shardOf(playerId);
+        for (OrderBook.Fill fill : fills) {
+            if (shardOf(fill.entry().playerId) == currentShard) {
+                settleFill(fill);
+            } else {
+                dispatchFill(fill);
+            }
+        }
+    }
+
+    /**
+     * 撤单（同步执行，在交易线程中）
+     */
+    private void cancelOrderSync(UUID playerId, long orderId, TradeCallback callback) {
+        Order order = storage.getOrder(orderId);
+        if (order == null || !order.getPlayerId().equals(playerId) || order.getType() != OrderType.LIMIT) {
+            if (callback != null) {
+                callback.onError("订单不存在: #" + orderId);
+            }
+            return;
+        }
+        OrderBook book = orderBooks.get(order.getSymbol());
+        OrderBook.Entry entry = book != null ? book.cancel(orderId) : null;
+        if (entry == null) {
+            if (callback != null) {
+                callback.onError("订单已成交或已撤销: #" + orderId);
+            }
+            return;
+        }
+        BigDecimal cancelled = FixedPoint.toDecimal(entry.remaining);
+        cancelResting(order, cancelled);
+        if (callback != null) {
+            callback.onSuccess("撤单成功 #" + orderId + "，撤销数量: " + cancelled);
+        }
+    }
+
+    /**
+     * 最新成交价更新：撮合被穿越的挂单（价格源线程调用）
+     */
+    @Override
+    public void onLastPrice(String symbol, long timeMs, long price) {
+        OrderBook book = orderBooks.get(symbol);
+        if (book == null) {
+            return;
+        }
+        List<OrderBook.Fill> fills = new ArrayList<>();
+        book.matchMarket(price, fills);
+        for (OrderBook.Fill fill : fills) {
+            dispatchFill(fill);
+        }
+    }
+
+    /**
+     * 将成交交给所属玩家的分片结算
+     * 经无界的优先通道发布，调用方（可能是另一个分片线程）从不等待目标分片的缓冲区空位，
+     * 目标分片暂停在独占屏障中时成交也只是排队，不会互相等待
+     */
+    private void dispatchFill(OrderBook.Fill fill) {
+        if (!publishUrgent(shards[shardOf(fill.entry().playerId)], () -> settleFill(fill))) {
+            MessageUtils.logWarning("交易引擎已停止，限价单 #" + fill.entry().orderId + " 的成交未结算");
+        }
+    }
+
+    /**
+     * 冻结挂单资金并保存限价单（实时下单与回放共用）
+     */
+    private Order applyLimitPlace(long orderId, UUID playerId, String symbol, OrderSide side, BigDecimal qty,
+                                  BigDecimal price, int leverage, BigDecimal reserve, long createTime) {
+        Account account = storage.getAccount(playerId);
+        account.freeze(reserve);
+        storage.saveAccount(account);
+
+        Order order = storage.getOrder(orderId);
+        if (order == null) {
+            order = Order.limit(orderId, playerId, symbol, side, qty, price, leverage, createTime);
+        } else {
+            // 回放时持久化的订单可能已领先于日志，重置为下单时的状态，之后的成交与撤销由日志补上
+            order.setStatus(OrderStatus.OPEN);
+            order.setFilledQty(BigDecimal.ZERO);
+            order.setSettledQty(BigDecimal.ZERO);
+            order.setFillPrice(BigDecimal.ZERO);
+            order.setFee(BigDecimal.ZERO);
+        }
+        order.setReservedBalance(reserve);
+        storage.saveOrder(order);
+        return order;
+    }
+
+    /**
+     * 结算一笔限价单成交（在订单所属玩家的分片中执行）
+     * 按成交比例解冻资金后以成交价开仓，成交写入交易日志以便回放
+     */
+    private void settleFill(OrderBook.Fill fill) {
+        OrderBook.Entry entry = fill.entry();
+        Order order = entry.order;
+        BigDecimal qty = FixedPoint.toDecimal(fill.qty());
+        if (fill.kind() == OrderBook.Fill.Kind.SELF_TRADE_CANCEL) {
+            cancelResting(order, qty);
+            if (entry.callback != null) {
+                entry.callback.onError("限价单 #" + entry.orderId + " 与您的新订单价格交叉，已自动撤销");
+            }
+            return;
+        }
+
+        BigDecimal price = FixedPoint.toDecimal(fill.price());
+        UUID playerId = entry.playerId;
+        // 已撮合的成交无法拒绝，日志写入失败只记录错误
+        writeJournal(TradeEvent.limitFill(playerId, entry.symbol.getName(), entry.side, qty, order.getLeverage(),
+                                          price, entry.orderId), null);
+        applyLimitFill(playerId, entry.symbol, order, entry.side, qty, order.getLeverage(), price);
+        if (fill.kind() != OrderBook.Fill.Kind.MAKER) {
+            // 玩家之间的成交只在吃单方计一次成交量
+            recordVolume(entry.symbol.getName(), qty);
+        }
+        if (entry.callback != null) {
+            entry.callback.onSuccess("限价单成交 #" + entry.orderId + ": " + entry.side + " " + qty + " " +
+                                     entry.symbol.getName() + " @ " + price);
+        }
+    }
+
+    /**
+     * 限价单成交：释放对应冻结资金后以成交价开仓（实时成交与回放共用）
+     * 订单不在内存中时（回放时已归档）只更新仓位
+     */
+    private void applyLimitFill(UUID playerId, Symbol symbol, Order order, OrderSide side, BigDecimal qty,
+                                int leverage, BigDecimal price) {
+        if (order != null) {
+            Account account = storage.getAccount(playerId);
+            account.unfreeze(releaseReserve(order, qty));
+            storage.saveAccount(account);
+        }
+        applyOpen(playerId, symbol, side, qty, leverage, price, false);
+        if (order != null) {
+            order.fillPartial(qty, price, FeeModel.calculateTakerFee(symbol, qty, price));
+            storage.saveOrder(order);
+        }
+    }
+
+    /**
+     * 撤销已移出订单簿的剩余部分并写入日志
+     * 条目已从订单簿移除，日志写入失败只记录错误
+     */
+    private void cancelResting(Order order, BigDecimal qty) {
+        writeJournal(TradeEvent.limitCancel(order.getPlayerId(), order.getSymbol(), qty, order.getId()), null);
+        settleCancel(order, qty);
+    }
+
+    /**
+     * 结算撤销部分：解冻对应资金，订单标记为已撤销
+     */
+    private void settleCancel(Order order, BigDecimal qty) {
+        Account account = storage.getAccount(order.getPlayerId());
+        account.unfreeze(releaseReserve(order, qty));
+        storage.saveAccount(account);
+        order.cancel();
+        storage.saveOrder(order);
+    }
+
+    /**
+     * 按结算数量占未结算数量的比例释放冻结资金，最后一笔释放全部剩余，避免舍入残留
+     */
+    private static BigDecimal releaseReserve(Order order, BigDecimal qty) {
+        BigDecimal unsettled = order.getQty().subtract(order.getSettledQty());
+        BigDecimal reserved = order.getReservedBalance();
+        BigDecimal release;
+        if (qty.compareTo(unsettled) >= 0) {
+            release = reserved;
+        } else {
+            release = reserved.multiply(qty).divide(unsettled, 8, RoundingMode.DOWN);
+        }
+        order.setSettledQty(order.getSettledQty().add(qty));
+        order.setReservedBalance(reserved.subtract(release));
+        return release;
+    }
+
+    /**
+     * 成交量计入价格历史（回放时不计入）
+     */
+    private void recordVolume(String symbol, BigDecimal qty) {
+        if (priceHistory == null) {
+            return;
+        }
+        long fixed = FixedPoint.fromDecimalOrInvalid(qty);
+        if (fixed != FixedPoint.INVALID) {
+            priceHistory.recordVolume(symbol, System.currentTimeMillis(), fixed);
+        }
+    }
+
+    /**
+     * 写入交易日志，失败时拒绝本次操作
+     */
+    private boolean writeJournal(TradeEvent event, TradeCallback callback) {
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.append(event);
+            return true;
+        } catch (IOException e) {
+            MessageUtils.logError("写入交易日志失败: " + e.getMessage());
+            if (callback != null) {
+                callback.onError("交易系统繁忙，请稍后重试");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 交易回调接口
+     */
+    public interface TradeCallback {
         void onSuccess(String message);
         void onError(String error);
     }
 }
-
@@ -0,0 +1,347 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.math.BigDecimal;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 交易分片
+ * 单线程消费自己的命令环形缓冲区，同一玩家的操作始终路由到同一分片，保证账户内顺序。
+ * 缓冲区为多生产者单消费者：生产者CAS占用槽位后填写字段并发布，消费者按批次顺序处理；
+ * 缓冲区满时直接拒绝，不阻塞调用线程。
+ * 另有一条无界的优先通道（强平、跨分片的限价单成交），消费者在处理每条命令前先执行其中的任务，不必排在已有命令之后；
+ * 发布从不阻塞，分片线程之间互相投递只能使用该通道
+ */
+class TradeShard {
+
+    private static final int MAX_BATCH = 256;          // 单批最多处理的命令数
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 100_000L;    // 0.1毫秒
+
+    private final int index;
+    private final TradeCommand[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final Handler handler;
+
+    private final AtomicLong tail = new AtomicLong(); // 下一个写入位置（生产者共享）
+    private volatile long head;                       // 下一个读取位置（仅消费者写）
+    private volatile long peakDepth;                  // 批次开始时观察到的最大排队数（仅消费者写）
+    private final Queue<Runnable> urgent = new ConcurrentLinkedQueue<>(); // 优先任务
+    private final AtomicInteger urgentPending = new AtomicInteger();      // 已发布、尚未执行完的优先任务数
+    private volatile Thread thread;
+    private volatile boolean running = false;
+
+    TradeShard(int index, int capacity, WaitStrategy waitStrategy, Handler handler) {
+        this.index = index;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // 向上取2的幂
+        this.slots = new TradeCommand[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new TradeCommand(i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.handler = handler;
+    }
+
+    void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::runLoop, "StockTradeEngine-" + index);
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    // ========== 生产者 ==========
+
+    boolean publishOpen(UUID playerId, Symbol symbol, OrderSide side, BigDecimal qty,
+                        int leverage, TradeEngine.TradeCallback callback) {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        TradeCommand command = slotAt(pos);
+        command.type = TradeCommand.Type.OPEN;
+        command.playerId = playerId;
+        command.symbol = symbol;
+        command.side = side;
+        command.qty = qty;
+        command.leverage = leverage;
+        command.callback = callback;
+        command.sequence = pos + 1;
+        return true;
+    }
+
+    boolean publishClose(UUID playerId, Symbol symbol, BigDecimal qty, TradeEngine.TradeCallback callback) {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        TradeCommand command = slotAt(pos);
+        command.type = TradeCommand.Type.CLOSE;
+        command.playerId = playerId;
+        command.symbol = symbol;
+        command.qty = qty;
+        command.callback = callback;
+        command.sequence = pos + 1;
+        return true;
+    }
+
+    boolean publishAddMargin(UUID playerId, Symbol symbol, BigDecimal amount, TradeEngine.TradeCallback callback) {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        TradeCommand command = slotAt(pos);
+        command.type = TradeCommand.Type.ADD_MARGIN;
+        command.playerId = playerId;
+        command.symbol = symbol;
+        command.amount = amount;
+        command.callback = callback;
+        command.sequence = pos + 1;
+        return true;
+    }
+
+    boolean publishLimit(UUID playerId, Symbol symbol, OrderSide side, BigDecimal qty, BigDecimal price,
+                         int leverage, TradeEngine.TradeCallback callback) {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        TradeCommand command = slotAt(pos);
+        command.type = TradeCommand.Type.LIMIT;
+        command.playerId = playerId;
+        command.symbol = symbol;
+        command.side = side;
+        command.qty = qty;
+        command.price = price;
+        command.leverage = leverage;
+        command.callback = callback;
+        command.sequence = pos + 1;
+        return true;
+    }
+
+    boolean publishCancel(UUID playerId, long orderId, TradeEngine.TradeCallback callback) {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        TradeCommand command = slotAt(pos);
+        command.type = TradeCommand.Type.CANCEL;
+        command.playerId = playerId;
+        command.orderId = orderId;
+        command.callback = callback;
+        command.sequence = pos + 1;
+        return true;
+    }
+
+    boolean publishTask(Runnable task) {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        TradeCommand command = slotAt(pos);
+        command.type = TradeCommand.Type.TASK;
+        command.task = task;
+        command.sequence = pos + 1;
+        return true;
+    }
+
+    /**
+     * 发布优先任务：在缓冲区中已排队的命令之前执行，不受缓冲区容量限制；分片未运行时返回 false
+     */
+    boolean publishUrgent(Runnable task) {
+        if (!running) {
+            return false;
+        }
+        urgentPending.incrementAndGet();
+        urgent.add(task);
+        Thread consumer = thread;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * 已占用位置对应的槽位，记录发布时间
+     */
+    private TradeCommand slotAt(long pos) {
+        TradeCommand command = slots[(int) (pos & mask)];
+        command.publishNanos = System.nanoTime();
+        return command;
+    }
+
+    /**
+     * 占用一个写入位置，缓冲区已满时返回 -1
+     */
+    private long claim() {
+        long pos = tail.get();
+        while (true) {
+            long diff = slots[(int) (pos & mask)].sequence - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 槽位仍未被消费者释放：缓冲区已满
+                return -1;
+            } else {
+                // 其他生产者已抢先占用
+                pos = tail.get();
+            }
+        }
+    }
+
+    // ========== 消费者 ==========
+
+    private void runLoop() {
+        int idle = 0;
+        while (running) {
+            if (drain() > 0) {
+                idle = 0;
+            } else {
+                idle = waitIdle(idle);
+            }
+        }
+        // 停止前处理完已发布的命令
+        while (drain() > 0) {
+            // 继续处理
+        }
+    }
+
+    /**
+     * 处理一批已发布的命令，返回处理数量
+     */
+    private int drain() {
+        long current = head;
+        int count = runUrgent();
+        while (count < MAX_BATCH) {
+            if (urgentPending.get() > 0) {
+                count += runUrgent();
+            }
+            TradeCommand command = slots[(int) (current & mask)];
+            if (command.sequence != current + 1) {
+                break;
+            }
+            try {
+                handler.handle(command);
+            } catch (Exception e) {
+                MessageUtils.logError("交易分片 " + index + " 处理命令 " + command.type + " 异常: " + e.getMessage());
+            }
+            command.clear();
+            command.sequence = current + slots.length; // 释放槽位给下一轮生产者
+            current++;
+            count++;
+        }
+        if (count > 0) {
+            long depth = tail.get() - head;
+            if (depth > peakDepth) {
+                peakDepth = depth;
+            }
+            head = current;
+        }
+        return count;
+    }
+
+    /**
+     * 执行全部已发布的优先任务，返回执行数量
+     */
+    private int runUrgent() {
+        int count = 0;
+        Runnable task;
+        while ((task = urgent.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                MessageUtils.logError("交易分片 " + index + " 执行优先任务异常: " + e.getMessage());
+            }
+            urgentPending.decrementAndGet();
+            count++;
+        }
+        return count;
+    }
+
+    private int waitIdle(int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                return idle;
+            case YIELD:
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                return idle + 1;
+            case PARK:
+            default:
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                    return idle;
+                }
+                return idle + 1;
+        }
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * 当前排队中的命令数（含未执行完的优先任务）
+     */
+    int getQueueDepth() {
+        return (int) Math.max(0, tail.get() - head) + urgentPending.get();
+    }
+
+    /**
+     * 启动以来的最大排队数
+     */
+    long getPeakQueueDepth() {
+        return peakDepth;
+    }
+
+    /**
+     * 命令处理器（在分片线程中调用）
+     */
+    interface Handler {
+        void handle(TradeCommand command);
+    }
+}
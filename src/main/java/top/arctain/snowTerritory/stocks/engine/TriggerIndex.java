@@ -0,0 +1,147 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 按触发价排序的索引（按交易对分组）
+ * 每个玩家在每个交易对、每个方向上最多一个触发价。价格更新时只遍历已被穿越的条目，
+ * 开销与触发数量相关，而与持仓总数无关
+ */
+public class TriggerIndex {
+
+    /**
+     * 触发方向
+     */
+    public enum Direction {
+        FALLING,    // 价格 <= 触发价时触发（如多仓强平价）
+        RISING      // 价格 >= 触发价时触发（如空仓强平价）
+    }
+
+    private static final UUID MIN_UUID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final UUID MAX_UUID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+
+    /**
+     * 设置（或替换）玩家在该交易对、该方向上的触发价（定点数）
+     */
+    public void put(String symbol, UUID playerId, Direction direction, long triggerPrice) {
+        Book book = books.computeIfAbsent(symbol, k -> new Book());
+        Entry entry = new Entry(triggerPrice, playerId);
+        Entry old = book.current(direction).put(playerId, entry);
+        if (old != null) {
+            book.sorted(direction).remove(old);
+        }
+        book.sorted(direction).add(entry);
+    }
+
+    /**
+     * 移除玩家在该交易对、该方向上的触发价
+     */
+    public void remove(String symbol, UUID playerId, Direction direction) {
+        Book book = books.get(symbol);
+        if (book == null) {
+            return;
+        }
+        Entry old = book.current(direction).remove(playerId);
+        if (old != null) {
+            book.sorted(direction).remove(old);
+        }
+    }
+
+    /**
+     * 移除玩家在该交易对上的全部触发价
+     */
+    public void remove(String symbol, UUID playerId) {
+        remove(symbol, playerId, Direction.FALLING);
+        remove(symbol, playerId, Direction.RISING);
+    }
+
+    /**
+     * 收集当前价格已穿越的条目（定点数价格），返回收集数量
+     */
+    public int collectCrossed(String symbol, long price, Collection<UUID> out) {
+        return collectCrossed(symbol, price, Direction.FALLING, out)
+             + collectCrossed(symbol, price, Direction.RISING, out);
+    }
+
+    /**
+     * 收集单个方向上当前价格已穿越的条目，返回收集数量
+     */
+    public int collectCrossed(String symbol, long price, Direction direction, Collection<UUID> out) {
+        Book book = books.get(symbol);
+        if (book == null) {
+            return 0;
+        }
+        int count = 0;
+        // FALLING：触发价 >= 当前价；RISING：触发价 <= 当前价
+        Set<Entry> crossed = direction == Direction.FALLING
+                             ? book.falling.tailSet(new Entry(price, MIN_UUID), true)
+                             : book.rising.headSet(new Entry(price, MAX_UUID), true);
+        for (Entry entry : crossed) {
+            out.add(entry.playerId());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 查询玩家在该交易对、该方向上的触发价，不存在时返回 null
+     */
+    public Long get(String symbol, UUID playerId, Direction direction) {
+        Book book = books.get(symbol);
+        if (book == null) {
+            return null;
+        }
+        Entry entry = book.current(direction).get(playerId);
+        return entry == null ? null : entry.price();
+    }
+
+    /**
+     * 有条目的交易对
+     */
+    public Set<String> getSymbols() {
+        return books.keySet();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Book book : books.values()) {
+            size += book.fallingByPlayer.size() + book.risingByPlayer.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        books.clear();
+    }
+
+    private static final class Book {
+        final NavigableSet<Entry> falling = new ConcurrentSkipListSet<>();
+        final NavigableSet<Entry> rising = new ConcurrentSkipListSet<>();
+        final Map<UUID, Entry> fallingByPlayer = new ConcurrentHashMap<>();
+        final Map<UUID, Entry> risingByPlayer = new ConcurrentHashMap<>();
+
+        NavigableSet<Entry> sorted(Direction direction) {
+            return direction == Direction.FALLING ? falling : rising;
+        }
+
+        Map<UUID, Entry> current(Direction direction) {
+            return direction == Direction.FALLING ? fallingByPlayer : risingByPlayer;
+        }
+    }
+
+    private record Entry(long price, UUID playerId) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            int result = Long.compare(price, other.price);
+            return result != 0 ? result : playerId.compareTo(other.playerId);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package top.arctain.snowTerritory.stocks.engine;
+
+/**
+ * 交易分片空闲时的等待策略
+ */
+public enum WaitStrategy {
+    BUSY_SPIN,  // 忙等，延迟最低，空闲时独占一个CPU核心
+    YIELD,      // 短暂自旋后让出CPU
+    PARK;       // 自旋、让出后短暂休眠，空闲时几乎不占CPU
+
+    /**
+     * 按名称解析（不区分大小写），无法识别时返回 null
+     */
+    public static WaitStrategy fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        switch (name.trim().toLowerCase()) {
+            case "busy_spin":
+            case "busyspin":
+            case "spin":
+                return BUSY_SPIN;
+            case "yield":
+                return YIELD;
+            case "park":
+                return PARK;
+            default:
+                return null;
+        }
+    }
+}
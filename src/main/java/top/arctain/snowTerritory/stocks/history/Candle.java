@@ -0,0 +1,35 @@
+package top.arctain.snowTerritory.stocks.history;
+
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+
+/**
+ * 一根K线（查询结果，价格与成交量均为定点数，8位小数）
+ */
+public record Candle(long openTime, long open, long high, long low, long close, long volume) {
+
+    public BigDecimal getOpen() {
+        return FixedPoint.toDecimal(open);
+    }
+
+    public BigDecimal getHigh() {
+        return FixedPoint.toDecimal(high);
+    }
+
+    public BigDecimal getLow() {
+        return FixedPoint.toDecimal(low);
+    }
+
+    public BigDecimal getClose() {
+        return FixedPoint.toDecimal(close);
+    }
+
+    public BigDecimal getVolume() {
+        return FixedPoint.toDecimal(volume);
+    }
+
+    public boolean isBullish() {
+        return close >= open;
+    }
+}
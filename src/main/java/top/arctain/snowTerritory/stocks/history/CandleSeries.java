@@ -0,0 +1,121 @@
+package top.arctain.snowTerritory.stocks.history;
+
+import java.util.List;
+
+/**
+ * 单个周期的K线环形缓冲区
+ * 各字段保存在预分配的 long 数组中，更新时不创建对象；写满后覆盖最旧的K线
+ */
+final class CandleSeries {
+
+    private final Timeframe timeframe;
+    private final int mask;
+    private final long[] openTime;
+    private final long[] open;
+    private final long[] high;
+    private final long[] low;
+    private final long[] close;
+    private final long[] volume;
+    private long count; // 累计写入的K线数量，当前K线位于 (count - 1) & mask
+
+    CandleSeries(Timeframe timeframe, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.timeframe = timeframe;
+        this.mask = size - 1;
+        this.openTime = new long[size];
+        this.open = new long[size];
+        this.high = new long[size];
+        this.low = new long[size];
+        this.close = new long[size];
+        this.volume = new long[size];
+    }
+
+    /**
+     * 计入一笔价格
+     */
+    void onPrice(long timeMs, long price) {
+        int slot = slotFor(timeMs, price);
+        if (price > high[slot]) {
+            high[slot] = price;
+        }
+        if (price < low[slot]) {
+            low[slot] = price;
+        }
+        close[slot] = price;
+    }
+
+    /**
+     * 计入一笔成交量；当前周期还没有价格时沿用上一根K线的收盘价开新K线
+     */
+    void onVolume(long timeMs, long qty) {
+        if (count == 0) {
+            return; // 没有任何价格，无法开K线
+        }
+        int slot = slotFor(timeMs, close[(int) ((count - 1) & mask)]);
+        volume[slot] += qty;
+    }
+
+    /**
+     * 返回时间所在K线的槽位，进入新周期时开新K线（早于当前K线的时间计入当前K线）
+     */
+    private int slotFor(long timeMs, long price) {
+        long aligned = timeframe.align(timeMs);
+        if (count > 0) {
+            int current = (int) ((count - 1) & mask);
+            if (aligned <= openTime[current]) {
+                return current;
+            }
+        }
+        int slot = (int) (count & mask);
+        openTime[slot] = aligned;
+        open[slot] = price;
+        high[slot] = price;
+        low[slot] = price;
+        close[slot] = price;
+        volume[slot] = 0;
+        count++;
+        return slot;
+    }
+
+    int size() {
+        return (int) Math.min(count, mask + 1);
+    }
+
+    /**
+     * 取最近的 limit 根K线（从旧到新）
+     */
+    void copyTo(List<Candle> out, int limit) {
+        int n = Math.min(limit, size());
+        for (long i = count - n; i < count; i++) {
+            int slot = (int) (i & mask);
+            out.add(new Candle(openTime[slot], open[slot], high[slot], low[slot], close[slot], volume[slot]));
+        }
+    }
+
+    /**
+     * 最近 periods 根已收盘K线收盘价的对数收益率标准差，数据不足时返回 NaN
+     */
+    double volatility(int periods) {
+        // 最后一根K线尚未收盘，不参与计算
+        int closed = size() - 1;
+        int n = Math.min(periods, closed - 1);
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        double sumSquares = 0;
+        long end = count - 1;
+        for (long i = end - n; i < end; i++) {
+            long previous = close[(int) ((i - 1) & mask)];
+            long current = close[(int) (i & mask)];
+            if (previous <= 0 || current <= 0) {
+                return Double.NaN;
+            }
+            double logReturn = Math.log((double) current / previous);
+            sum += logReturn;
+            sumSquares += logReturn * logReturn;
+        }
+        double mean = sum / n;
+        return Math.sqrt(Math.max(0, (sumSquares - n * mean * mean) / (n - 1)));
+    }
+}
@@ -0,0 +1,106 @@
+package top.arctain.snowTerritory.stocks.history;
+
+import top.arctain.snowTerritory.stocks.price.PriceListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 价格历史
+ * 按交易对保存最近的原始价格，并增量聚合为 1m/5m/1h K线（成交量来自本服成交）。
+ * 每个交易对的缓冲区大小固定，写入路径不分配对象
+ */
+public class PriceHistory implements PriceListener {
+
+    private final int tickCapacity;
+    private final int candleCapacity;
+    private final Map<String, SymbolHistory> histories = new ConcurrentHashMap<>();
+
+    /**
+     * @param tickCapacity   每个交易对保留的原始价格数量
+     * @param candleCapacity 每个交易对、每个周期保留的K线数量
+     */
+    public PriceHistory(int tickCapacity, int candleCapacity) {
+        this.tickCapacity = Math.max(2, tickCapacity);
+        this.candleCapacity = Math.max(2, candleCapacity);
+    }
+
+    /**
+     * 预先为交易对分配缓冲区
+     */
+    public void addSymbol(String symbol) {
+        histories.computeIfAbsent(symbol, k -> new SymbolHistory(tickCapacity, candleCapacity));
+    }
+
+    /**
+     * 记录一笔价格（定点数）
+     */
+    public void recordPrice(String symbol, long timeMs, long price) {
+        if (price <= 0) {
+            return;
+        }
+        SymbolHistory history = histories.get(symbol);
+        if (history == null) {
+            history = histories.computeIfAbsent(symbol, k -> new SymbolHistory(tickCapacity, candleCapacity));
+        }
+        history.onPrice(timeMs, price);
+    }
+
+    @Override
+    public void onLastPrice(String symbol, long timeMs, long price) {
+        recordPrice(symbol, timeMs, price);
+    }
+    
+    /**
+     * 记录一笔成交量（定点数），计入当前K线
+     */
+    public void recordVolume(String symbol, long timeMs, long qty) {
+        if (qty <= 0) {
+            return;
+        }
+        SymbolHistory history = histories.get(symbol);
+        if (history != null) {
+            history.onVolume(timeMs, qty);
+        }
+    }
+
+    /**
+     * 最近 limit 根K线（从旧到新，最后一根可能尚未收盘）
+     */
+    public List<Candle> getCandles(String symbol, Timeframe timeframe, int limit) {
+        SymbolHistory history = histories.get(symbol);
+        if (history == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<Candle> candles = new ArrayList<>(Math.min(limit, candleCapacity));
+        history.copyCandles(timeframe, limit, candles);
+        return candles;
+    }
+
+    /**
+     * 波动率：最近 periods 根已收盘K线的对数收益率标准差（未年化），数据不足时返回 NaN
+     */
+    public double getVolatility(String symbol, Timeframe timeframe, int periods) {
+        SymbolHistory history = histories.get(symbol);
+        return history != null ? history.volatility(timeframe, periods) : Double.NaN;
+    }
+
+    /**
+     * 复制最近的原始价格（从旧到新），返回复制数量
+     */
+    public int copyTicks(String symbol, long[] times, long[] prices) {
+        SymbolHistory history = histories.get(symbol);
+        return history != null ? history.copyTicks(times, prices) : 0;
+    }
+
+    /**
+     * 累计记录的原始价格数量
+     */
+    public long getTickCount(String symbol) {
+        SymbolHistory history = histories.get(symbol);
+        return history != null ? history.getTickCount() : 0;
+    }
+}
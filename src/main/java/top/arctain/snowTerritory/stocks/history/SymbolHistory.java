@@ -0,0 +1,68 @@
+package top.arctain.snowTerritory.stocks.history;
+
+import java.util.List;
+
+/**
+ * 单个交易对的价格历史：最近的原始价格（环形缓冲区）+ 各周期K线
+ * 写入来自价格源线程和交易分片线程，读取来自指令和风控，统一用对象锁保护
+ */
+final class SymbolHistory {
+
+    private final int tickMask;
+    private final long[] tickTimes;
+    private final long[] tickPrices;
+    private final CandleSeries[] series = new CandleSeries[Timeframe.values().length];
+    private long tickCount;
+
+    SymbolHistory(int tickCapacity, int candleCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, tickCapacity - 1)) << 1;
+        this.tickMask = size - 1;
+        this.tickTimes = new long[size];
+        this.tickPrices = new long[size];
+        for (Timeframe timeframe : Timeframe.values()) {
+            series[timeframe.ordinal()] = new CandleSeries(timeframe, candleCapacity);
+        }
+    }
+
+    synchronized void onPrice(long timeMs, long price) {
+        int slot = (int) (tickCount & tickMask);
+        tickTimes[slot] = timeMs;
+        tickPrices[slot] = price;
+        tickCount++;
+        for (CandleSeries candles : series) {
+            candles.onPrice(timeMs, price);
+        }
+    }
+
+    synchronized void onVolume(long timeMs, long qty) {
+        for (CandleSeries candles : series) {
+            candles.onVolume(timeMs, qty);
+        }
+    }
+
+    synchronized void copyCandles(Timeframe timeframe, int limit, List<Candle> out) {
+        series[timeframe.ordinal()].copyTo(out, limit);
+    }
+
+    synchronized double volatility(Timeframe timeframe, int periods) {
+        return series[timeframe.ordinal()].volatility(periods);
+    }
+
+    /**
+     * 复制最近的原始价格（从旧到新）到给定数组，返回复制数量
+     */
+    synchronized int copyTicks(long[] times, long[] prices) {
+        int n = (int) Math.min(Math.min(tickCount, tickMask + 1), Math.min(times.length, prices.length));
+        int i = 0;
+        for (long seq = tickCount - n; seq < tickCount; seq++, i++) {
+            int slot = (int) (seq & tickMask);
+            times[i] = tickTimes[slot];
+            prices[i] = tickPrices[slot];
+        }
+        return n;
+    }
+
+    synchronized long getTickCount() {
+        return tickCount;
+    }
+}
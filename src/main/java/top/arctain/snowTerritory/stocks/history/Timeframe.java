@@ -0,0 +1,48 @@
+package top.arctain.snowTerritory.stocks.history;
+
+/**
+ * K线周期
+ */
+public enum Timeframe {
+    M1("1m", 60_000L),
+    M5("5m", 300_000L),
+    H1("1h", 3_600_000L);
+
+    private final String name;
+    private final long millis;
+
+    Timeframe(String name, long millis) {
+        this.name = name;
+        this.millis = millis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * 时间所在周期的起始时间
+     */
+    public long align(long timeMs) {
+        return Math.floorDiv(timeMs, millis) * millis;
+    }
+
+    /**
+     * 按名称解析（如 1m、5m、1h），未知名称返回 null
+     */
+    public static Timeframe fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (Timeframe timeframe : values()) {
+            if (timeframe.name.equalsIgnoreCase(name)) {
+                return timeframe;
+            }
+        }
+        return null;
+    }
+}
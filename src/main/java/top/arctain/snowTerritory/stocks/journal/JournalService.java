@@ -0,0 +1,128 @@
+package top.arctain.snowTerritory.stocks.journal;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import top.arctain.snowTerritory.stocks.engine.TradeEngine;
+import top.arctain.snowTerritory.stocks.model.Symbol;
+import top.arctain.snowTerritory.stocks.storage.MemoryStockStorage;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 交易日志服务
+ * 负责打开日志、启动时从快照+日志尾部恢复状态，以及定期生成快照
+ */
+public class JournalService {
+
+    private final JavaPlugin plugin;
+    private final TradeJournal journal;
+    private final SnapshotStore snapshotStore;
+    private final long snapshotInterval; // 快照间隔（tick）
+    private BukkitRunnable snapshotTask;
+
+    public JournalService(JavaPlugin plugin, File dir, int segmentSize, boolean fsync,
+                          long snapshotInterval, int snapshotRetain) {
+        this.plugin = plugin;
+        this.journal = new TradeJournal(new File(dir, "segments"), segmentSize, fsync);
+        this.snapshotStore = new SnapshotStore(new File(dir, "snapshots"), snapshotRetain);
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public void open() throws IOException {
+        journal.open();
+    }
+
+    public TradeJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 从最新快照恢复内存状态，并回放其后的日志事件
+     * 需在交易引擎启动前调用
+     */
+    public void recover(TradeEngine tradeEngine, MemoryStockStorage storage, Function<String, Symbol> symbolResolver) {
+        long startTime = System.currentTimeMillis();
+        long fromSeq = 0;
+        SnapshotStore.Snapshot snapshot = snapshotStore.loadLatest();
+        if (snapshot != null) {
+            storage.restoreSnapshot(snapshot.accounts(), snapshot.positions(), snapshot.orders(),
+                                    snapshot.lastOrderId());
+            fromSeq = snapshot.seq();
+            MessageUtils.logInfo("已加载交易快照，序号: " + fromSeq + "，账户: " + snapshot.accounts().size()
+                                 + "，仓位: " + snapshot.positions().size() + "，挂单: " + snapshot.orders().size());
+        }
+
+        AtomicInteger skipped = new AtomicInteger();
+        int replayed;
+        try {
+            replayed = journal.replay(fromSeq, event -> {
+                if (event.getType() == TradeEventType.MARGIN_MODE) {
+                    tradeEngine.replay(event, null);
+                    return;
+                }
+                Symbol symbol = symbolResolver.apply(event.getSymbol());
+                if (symbol == null) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                tradeEngine.replay(event, symbol);
+            });
+        } catch (IOException e) {
+            MessageUtils.logError("回放交易日志失败: " + e.getMessage());
+            return;
+        }
+        if (skipped.get() > 0) {
+            MessageUtils.logWarning("回放时有 " + skipped.get() + " 条事件的交易对已不存在，已跳过");
+        }
+        MessageUtils.logInfo("交易日志回放完成，事件数: " + replayed + "，耗时: "
+                             + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * 启动定期快照
+     */
+    public void startSnapshots(TradeEngine tradeEngine, MemoryStockStorage storage) {
+        if (snapshotTask != null || snapshotInterval <= 0) {
+            return;
+        }
+        snapshotTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                takeSnapshot(tradeEngine, storage);
+            }
+        };
+        snapshotTask.runTaskTimerAsynchronously(plugin, snapshotInterval, snapshotInterval);
+    }
+
+    /**
+     * 生成快照：在交易线程中编码（保证与日志序号一致），在当前线程写文件
+     */
+    public void takeSnapshot(TradeEngine tradeEngine, MemoryStockStorage storage) {
+        long[] seq = new long[1];
+        byte[][] data = new byte[1][];
+        try {
+            tradeEngine.runExclusive(() -> {
+                seq[0] = journal.getLastSeq();
+                data[0] = snapshotStore.encode(seq[0], storage.getLastOrderId(), storage.getAccountsSnapshot(),
+                                               storage.getPositionsSnapshot(), storage.getOpenOrdersSnapshot());
+            }).get(30, TimeUnit.SECONDS);
+            snapshotStore.save(seq[0], data[0]);
+            journal.flush();
+        } catch (Exception e) {
+            MessageUtils.logError("生成交易快照失败: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        if (snapshotTask != null) {
+            snapshotTask.cancel();
+            snapshotTask = null;
+        }
+        journal.close();
+    }
+}
@@ -0,0 +1,249 @@
+package top.arctain.snowTerritory.stocks.journal;
+
+import top.arctain.snowTerritory.stocks.model.Account;
+import top.arctain.snowTerritory.stocks.model.Order;
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+import top.arctain.snowTerritory.stocks.model.OrderStatus;
+import top.arctain.snowTerritory.stocks.model.Position;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 内存状态快照
+ * 快照记录生成时的日志序号，恢复时只需回放其后的事件
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x53545353; // "STSS"
+    private static final int VERSION = 4; // 2: 仓位增加止盈止损价；3: 账户增加已实现盈亏；4: 增加挂单
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final File dir;
+    private final int retain;
+
+    public SnapshotStore(File dir, int retain) {
+        this.dir = dir;
+        this.retain = Math.max(1, retain);
+    }
+
+    /**
+     * 编码快照（需在交易线程中调用，保证状态与序号一致）
+     */
+    public byte[] encode(long seq, long lastOrderId, Collection<Account> accounts, Collection<Position> positions,
+                         Collection<Order> orders) {
+        int size = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+        for (Account account : accounts) {
+            size += 16 + TradeEvent.decimalSize(account.getWalletBalance()) + 2
+                  + account.getMarginMode().getBytes(StandardCharsets.UTF_8).length
+                  + TradeEvent.decimalSize(account.getRealizedPnl());
+        }
+        for (Position position : positions) {
+            size += 16 + 2 + position.getSymbol().getBytes(StandardCharsets.UTF_8).length + 1 + 4
+                  + TradeEvent.decimalSize(position.getQty())
+                  + TradeEvent.decimalSize(position.getEntryPrice())
+                  + TradeEvent.decimalSize(position.getIsolatedMargin())
+                  + TradeEvent.decimalSize(position.getStopLossPrice())
+                  + TradeEvent.decimalSize(position.getTakeProfitPrice());
+        }
+        for (Order order : orders) {
+            size += 8 + 16 + 2 + order.getSymbol().getBytes(StandardCharsets.UTF_8).length + 1 + 4 + 1 + 8
+                  + TradeEvent.decimalSize(order.getQty())
+                  + TradeEvent.decimalSize(order.getPrice())
+                  + TradeEvent.decimalSize(order.getFilledQty())
+                  + TradeEvent.decimalSize(order.getSettledQty())
+                  + TradeEvent.decimalSize(order.getReservedBalance())
+                  + TradeEvent.decimalSize(order.getFillPrice())
+                  + TradeEvent.decimalSize(order.getFee());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(seq);
+        buffer.putLong(lastOrderId);
+        buffer.putInt(accounts.size());
+        for (Account account : accounts) {
+            buffer.putLong(account.getPlayerId().getMostSignificantBits());
+            buffer.putLong(account.getPlayerId().getLeastSignificantBits());
+            TradeEvent.putDecimal(buffer, account.getWalletBalance());
+            byte[] mode = account.getMarginMode().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) mode.length);
+            buffer.put(mode);
+            TradeEvent.putDecimal(buffer, account.getRealizedPnl());
+        }
+        buffer.putInt(positions.size());
+        for (Position position : positions) {
+            buffer.putLong(position.getPlayerId().getMostSignificantBits());
+            buffer.putLong(position.getPlayerId().getLeastSignificantBits());
+            byte[] symbol = position.getSymbol().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) symbol.length);
+            buffer.put(symbol);
+            buffer.put((byte) position.getSide().ordinal());
+            buffer.putInt(position.getLeverage());
+            TradeEvent.putDecimal(buffer, position.getQty());
+            TradeEvent.putDecimal(buffer, position.getEntryPrice());
+            TradeEvent.putDecimal(buffer, position.getIsolatedMargin());
+            TradeEvent.putDecimal(buffer, position.getStopLossPrice());
+            TradeEvent.putDecimal(buffer, position.getTakeProfitPrice());
+        }
+        buffer.putInt(orders.size());
+        for (Order order : orders) {
+            buffer.putLong(order.getId());
+            buffer.putLong(order.getPlayerId().getMostSignificantBits());
+            buffer.putLong(order.getPlayerId().getLeastSignificantBits());
+            byte[] symbol = order.getSymbol().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) symbol.length);
+            buffer.put(symbol);
+            buffer.put((byte) order.getSide().ordinal());
+            buffer.putInt(order.getLeverage());
+            buffer.put((byte) order.getStatus().ordinal());
+            buffer.putLong(order.getCreateTime());
+            TradeEvent.putDecimal(buffer, order.getQty());
+            TradeEvent.putDecimal(buffer, order.getPrice());
+            TradeEvent.putDecimal(buffer, order.getFilledQty());
+            TradeEvent.putDecimal(buffer, order.getSettledQty());
+            TradeEvent.putDecimal(buffer, order.getReservedBalance());
+            TradeEvent.putDecimal(buffer, order.getFillPrice());
+            TradeEvent.putDecimal(buffer, order.getFee());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 写入快照文件（先写临时文件再原子替换），并清理旧快照
+     */
+    public void save(long seq, byte[] data) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("创建快照目录失败: " + dir.getAbsolutePath());
+        }
+        File target = new File(dir, String.format("%s%020d%s", PREFIX, seq, SUFFIX));
+        File tmp = new File(dir, target.getName() + ".tmp");
+        Files.write(tmp.toPath(), data);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        File[] snapshots = listSnapshots();
+        for (int i = 0; i < snapshots.length - retain; i++) {
+            if (!snapshots[i].delete()) {
+                MessageUtils.logWarning("删除旧快照失败: " + snapshots[i].getName());
+            }
+        }
+    }
+
+    /**
+     * 加载最新的可用快照，没有时返回 null
+     */
+    public Snapshot loadLatest() {
+        File[] snapshots = listSnapshots();
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            try {
+                return decode(Files.readAllBytes(snapshots[i].toPath()));
+            } catch (Exception e) {
+                MessageUtils.logWarning("快照损坏，尝试更早的快照: " + snapshots[i].getName() + " - " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private Snapshot decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("快照格式不匹配");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalStateException("不支持的快照版本: " + version);
+        }
+        long seq = buffer.getLong();
+        long lastOrderId = buffer.getLong(); // 旧版本为下一个订单ID，恢复时都只作为下界
+
+        int accountCount = buffer.getInt();
+        List<Account> accounts = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+            Account account = new Account(playerId, TradeEvent.getDecimal(buffer));
+            byte[] mode = new byte[buffer.getShort()];
+            buffer.get(mode);
+            account.setMarginMode(new String(mode, StandardCharsets.UTF_8));
+            if (version >= 3) {
+                account.setRealizedPnl(TradeEvent.getDecimal(buffer));
+            }
+            accounts.add(account);
+        }
+
+        int positionCount = buffer.getInt();
+        List<Position> positions = new ArrayList<>(positionCount);
+        for (int i = 0; i < positionCount; i++) {
+            UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+            byte[] symbol = new byte[buffer.getShort()];
+            buffer.get(symbol);
+            OrderSide side = OrderSide.values()[buffer.get()];
+            int leverage = buffer.getInt();
+            BigDecimal qty = TradeEvent.getDecimal(buffer);
+            BigDecimal entryPrice = TradeEvent.getDecimal(buffer);
+            BigDecimal isolatedMargin = TradeEvent.getDecimal(buffer);
+            Position position = new Position(playerId, new String(symbol, StandardCharsets.UTF_8), side,
+                                             qty, entryPrice, leverage, isolatedMargin);
+            if (version >= 2) {
+                position.setStopLossPrice(TradeEvent.getDecimal(buffer));
+                position.setTakeProfitPrice(TradeEvent.getDecimal(buffer));
+            }
+            positions.add(position);
+        }
+
+        List<Order> orders = new ArrayList<>();
+        if (version >= 4) {
+            int orderCount = buffer.getInt();
+            for (int i = 0; i < orderCount; i++) {
+                long id = buffer.getLong();
+                UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+                byte[] symbol = new byte[buffer.getShort()];
+                buffer.get(symbol);
+                OrderSide side = OrderSide.values()[buffer.get()];
+                int leverage = buffer.getInt();
+                OrderStatus status = OrderStatus.values()[buffer.get()];
+                long createTime = buffer.getLong();
+                BigDecimal qty = TradeEvent.getDecimal(buffer);
+                BigDecimal price = TradeEvent.getDecimal(buffer);
+                Order order = Order.limit(id, playerId, new String(symbol, StandardCharsets.UTF_8), side,
+                                          qty, price, leverage, createTime);
+                order.setStatus(status);
+                order.setFilledQty(TradeEvent.getDecimal(buffer));
+                order.setSettledQty(TradeEvent.getDecimal(buffer));
+                order.setReservedBalance(TradeEvent.getDecimal(buffer));
+                order.setFillPrice(TradeEvent.getDecimal(buffer));
+                order.setFee(TradeEvent.getDecimal(buffer));
+                orders.add(order);
+            }
+        }
+        return new Snapshot(seq, lastOrderId, accounts, positions, orders);
+    }
+
+    private File[] listSnapshots() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * 快照内容
+     */
+    public record Snapshot(long seq, long lastOrderId, List<Account> accounts, List<Position> positions,
+                           List<Order> orders) {
+    }
+}
@@ -0,0 +1,259 @@
+package top.arctain.snowTerritory.stocks.journal;
+
+import top.arctain.snowTerritory.stocks.model.OrderSide;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 交易事件
+ * 记录一次已通过校验、即将执行的变更，包括实际成交价，回放时无需再读取价格服务
+ */
+public class TradeEvent {
+
+    public static final UUID SYSTEM_PLAYER = new UUID(0, 0); // 不属于单个玩家的事件（FUNDING）
+
+    private final long seq;              // 日志序号（写入日志时分配，新建事件为0）
+    private final long timestamp;        // 事件时间（毫秒时间戳）
+    private final TradeEventType type;
+    private final UUID playerId;
+    private final String symbol;         // 交易对；保证金模式（MARGIN_MODE）
+    private final OrderSide side;        // 开仓方向（OPEN/LIMIT_PLACE/LIMIT_FILL）
+    private final BigDecimal qty;        // 数量（OPEN/CLOSE/LIQUIDATION/ADL/LIMIT_*）
+    private final int leverage;          // 杠杆（OPEN/LIMIT_PLACE/LIMIT_FILL）
+    private final BigDecimal price;      // 成交价（OPEN/CLOSE/LIQUIDATION/ADL/LIMIT_FILL）；挂单价（LIMIT_PLACE）；止损价（STOP_ORDERS）；标记价格（FUNDING）
+    private final BigDecimal amount;     // 追加金额（ADD_MARGIN）；止盈价（STOP_ORDERS）；费率（FUNDING）；计入保险基金的金额（ADL）；冻结金额（LIMIT_PLACE）
+    private final long orderId;          // 限价单号（仅LIMIT_*）
+
+    public TradeEvent(long seq, long timestamp, TradeEventType type, UUID playerId, String symbol,
+                      OrderSide side, BigDecimal qty, int leverage, BigDecimal price, BigDecimal amount) {
+        this(seq, timestamp, type, playerId, symbol, side, qty, leverage, price, amount, 0);
+    }
+
+    public TradeEvent(long seq, long timestamp, TradeEventType type, UUID playerId, String symbol,
+                      OrderSide side, BigDecimal qty, int leverage, BigDecimal price, BigDecimal amount,
+                      long orderId) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.playerId = playerId;
+        this.symbol = symbol;
+        this.side = side;
+        this.qty = qty;
+        this.leverage = leverage;
+        this.price = price;
+        this.amount = amount;
+        this.orderId = orderId;
+    }
+
+    public static TradeEvent open(UUID playerId, String symbol, OrderSide side,
+                                  BigDecimal qty, int leverage, BigDecimal price) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.OPEN,
+                              playerId, symbol, side, qty, leverage, price, null);
+    }
+
+    public static TradeEvent close(UUID playerId, String symbol, BigDecimal qty, BigDecimal price) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.CLOSE,
+                              playerId, symbol, null, qty, 0, price, null);
+    }
+
+    public static TradeEvent addMargin(UUID playerId, String symbol, BigDecimal amount) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.ADD_MARGIN,
+                              playerId, symbol, null, null, 0, null, amount);
+    }
+
+    public static TradeEvent stopOrders(UUID playerId, String symbol, BigDecimal stopLoss, BigDecimal takeProfit) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.STOP_ORDERS,
+                              playerId, symbol, null, null, 0, stopLoss, takeProfit);
+    }
+
+    public static TradeEvent marginMode(UUID playerId, String marginMode) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.MARGIN_MODE,
+                              playerId, marginMode, null, null, 0, null, null);
+    }
+
+    /**
+     * 资金费结算：作用于该交易对的全部仓位，玩家字段为空UUID
+     */
+    public static TradeEvent funding(String symbol, BigDecimal markPrice, BigDecimal rate) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.FUNDING,
+                              SYSTEM_PLAYER, symbol, null, null, 0, markPrice, rate);
+    }
+
+    public static TradeEvent liquidation(UUID playerId, String symbol, BigDecimal qty, BigDecimal price) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.LIQUIDATION,
+                              playerId, symbol, null, qty, 0, price, null);
+    }
+
+    /**
+     * 自动减仓：price 为让利后的平仓价，contribution 为让利总额（计入保险基金）
+     */
+    public static TradeEvent deleverage(UUID playerId, String symbol, BigDecimal qty, BigDecimal price,
+                                        BigDecimal contribution) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.ADL,
+                              playerId, symbol, null, qty, 0, price, contribution);
+    }
+
+    /**
+     * 限价挂单：price 为挂单价，reserve 为冻结的保证金与手续费
+     */
+    public static TradeEvent limitPlace(UUID playerId, String symbol, OrderSide side, BigDecimal qty,
+                                        int leverage, BigDecimal price, BigDecimal reserve, long orderId) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.LIMIT_PLACE,
+                              playerId, symbol, side, qty, leverage, price, reserve, orderId);
+    }
+
+    public static TradeEvent limitFill(UUID playerId, String symbol, OrderSide side, BigDecimal qty,
+                                       int leverage, BigDecimal price, long orderId) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.LIMIT_FILL,
+                              playerId, symbol, side, qty, leverage, price, null, orderId);
+    }
+
+    /**
+     * 限价单撤销：qty 为撤销时剩余的未成交数量
+     */
+    public static TradeEvent limitCancel(UUID playerId, String symbol, BigDecimal qty, long orderId) {
+        return new TradeEvent(0, System.currentTimeMillis(), TradeEventType.LIMIT_CANCEL,
+                              playerId, symbol, null, qty, 0, null, null, orderId);
+    }
+
+    /**
+     * 是否为携带限价单号的事件
+     */
+    public boolean isLimitOrderEvent() {
+        return carriesOrderId(type);
+    }
+
+    private static boolean carriesOrderId(TradeEventType type) {
+        return type == TradeEventType.LIMIT_PLACE || type == TradeEventType.LIMIT_FILL
+               || type == TradeEventType.LIMIT_CANCEL;
+    }
+
+    // ========== 二进制编解码 ==========
+
+    /**
+     * 编码后的字节数（不含日志记录头）
+     */
+    int encodedSize() {
+        return 8 + 1 + 16 + 2 + symbol.getBytes(StandardCharsets.UTF_8).length + 1 + 4
+             + decimalSize(qty) + decimalSize(price) + decimalSize(amount)
+             + (isLimitOrderEvent() ? 8 : 0);
+    }
+
+    void encode(ByteBuffer buffer) {
+        buffer.putLong(timestamp);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(playerId.getMostSignificantBits());
+        buffer.putLong(playerId.getLeastSignificantBits());
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) symbolBytes.length);
+        buffer.put(symbolBytes);
+        buffer.put((byte) (side == null ? -1 : side.ordinal()));
+        buffer.putInt(leverage);
+        putDecimal(buffer, qty);
+        putDecimal(buffer, price);
+        putDecimal(buffer, amount);
+        if (isLimitOrderEvent()) {
+            buffer.putLong(orderId);
+        }
+    }
+
+    static TradeEvent decode(long seq, ByteBuffer buffer) {
+        long timestamp = buffer.getLong();
+        TradeEventType type = TradeEventType.fromCode(buffer.get());
+        UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+        byte[] symbolBytes = new byte[buffer.getShort()];
+        buffer.get(symbolBytes);
+        byte sideCode = buffer.get();
+        OrderSide side = sideCode < 0 ? null : OrderSide.values()[sideCode];
+        int leverage = buffer.getInt();
+        BigDecimal qty = getDecimal(buffer);
+        BigDecimal price = getDecimal(buffer);
+        BigDecimal amount = getDecimal(buffer);
+        // 单号追加在末尾，旧版本日志中的事件类型不受影响
+        long orderId = carriesOrderId(type) ? buffer.getLong() : 0;
+        return new TradeEvent(seq, timestamp, type, playerId, new String(symbolBytes, StandardCharsets.UTF_8),
+                              side, qty, leverage, price, amount, orderId);
+    }
+
+    /**
+     * BigDecimal编码：是否存在(1) + scale(4) + 长度(4) + unscaledValue
+     */
+    static int decimalSize(BigDecimal value) {
+        if (value == null) {
+            return 1;
+        }
+        return 1 + 4 + 4 + value.unscaledValue().bitLength() / 8 + 1;
+    }
+
+    static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        if (value == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        buffer.put((byte) 1);
+        buffer.putInt(value.scale());
+        buffer.putInt(unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    static BigDecimal getDecimal(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.getInt()];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    // Getters
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public TradeEventType getType() {
+        return type;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public OrderSide getSide() {
+        return side;
+    }
+
+    public BigDecimal getQty() {
+        return qty;
+    }
+
+    public int getLeverage() {
+        return leverage;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+}
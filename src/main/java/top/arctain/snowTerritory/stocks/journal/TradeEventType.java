@@ -0,0 +1,27 @@
+package top.arctain.snowTerritory.stocks.journal;
+
+/**
+ * 交易事件类型枚举
+ */
+public enum TradeEventType {
+    OPEN,        // 开仓
+    CLOSE,       // 平仓
+    ADD_MARGIN,  // 追加保证金
+    STOP_ORDERS, // 设置止盈止损
+    MARGIN_MODE, // 切换保证金模式
+    FUNDING,     // 资金费结算（整个交易对）
+    LIQUIDATION, // 强平（盈亏结算到保险基金）
+    ADL,         // 自动减仓（对手方按让利后的价格减仓，让利部分计入保险基金）
+    LIMIT_PLACE, // 限价挂单（冻结保证金与手续费）
+    LIMIT_FILL,  // 限价单成交（释放对应冻结资金后开仓）
+    LIMIT_CANCEL; // 限价单撤销（释放剩余冻结资金）
+    
+    private static final TradeEventType[] VALUES = values();
+    
+    static TradeEventType fromCode(int code) {
+        if (code < 0 || code >= VALUES.length) {
+            throw new IllegalArgumentException("未知的交易事件类型: " + code);
+        }
+        return VALUES[code];
+    }
+}
@@ -0,0 +1,214 @@
+package top.arctain.snowTerritory.stocks.journal;
+
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 交易事件日志（只追加）
+ * 事件按序写入内存映射的分段文件，文件名为段内首条事件的序号。
+ * 记录格式：长度(4) + CRC32(4) + 序号(8) + 事件体，长度为0表示段内数据结束
+ */
+public class TradeJournal {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+
+    private final File dir;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long lastSeq;
+
+    public TradeJournal(File dir, int segmentSize, boolean fsync) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * 打开日志：定位到最后一个分段的写入位置
+     */
+    public synchronized void open() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("创建日志目录失败: " + dir.getAbsolutePath());
+        }
+        File[] segments = listSegments();
+        if (segments.length == 0) {
+            lastSeq = 0;
+            mapSegment(1);
+            return;
+        }
+        // 扫描最后一个分段，找到最后一条完整记录
+        File last = segments[segments.length - 1];
+        lastSeq = parseFirstSeq(last) - 1;
+        mapSegment(parseFirstSeq(last));
+        while (true) {
+            int position = segment.position();
+            long seq = readRecord(segment, null);
+            if (seq < 0) {
+                segment.position(position);
+                break;
+            }
+            lastSeq = seq;
+        }
+        MessageUtils.logInfo("交易日志已打开，最新序号: " + lastSeq);
+    }
+
+    /**
+     * 追加事件，返回分配的序号
+     */
+    public synchronized long append(TradeEvent event) throws IOException {
+        int bodySize = 8 + event.encodedSize();
+        if (scratch.capacity() < bodySize) {
+            scratch = ByteBuffer.allocate(Math.max(bodySize, scratch.capacity() * 2));
+        }
+        long seq = lastSeq + 1;
+        scratch.clear();
+        scratch.putLong(seq);
+        event.encode(scratch);
+        scratch.flip();
+        int length = scratch.remaining();
+
+        // 预留结束标记的4字节
+        if (segment.remaining() < 4 + 4 + length + 4) {
+            mapSegment(seq);
+        }
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        segment.putInt(length);
+        segment.putInt((int) crc.getValue());
+        segment.put(scratch);
+        if (fsync) {
+            segment.force();
+        }
+        lastSeq = seq;
+        return seq;
+    }
+
+    /**
+     * 回放序号大于 afterSeq 的全部事件
+     */
+    public synchronized int replay(long afterSeq, Consumer<TradeEvent> consumer) throws IOException {
+        int count = 0;
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length; i++) {
+            // 下一段的首序号不大于 afterSeq 时，本段可整段跳过
+            if (i + 1 < segments.length && parseFirstSeq(segments[i + 1]) <= afterSeq + 1) {
+                continue;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(segments[i], "r");
+                 FileChannel ch = raf.getChannel()) {
+                MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                List<TradeEvent> events = new ArrayList<>();
+                while (readRecord(buffer, events) >= 0) {
+                    // 继续读取
+                }
+                for (TradeEvent event : events) {
+                    if (event.getSeq() > afterSeq) {
+                        consumer.accept(event);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 将已写入的数据刷到磁盘
+     */
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    public synchronized void close() {
+        flush();
+        segment = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                MessageUtils.logWarning("关闭交易日志失败: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * 读取一条记录，返回其序号；到达数据末尾或记录损坏（未写完）时返回 -1
+     */
+    private long readRecord(ByteBuffer buffer, List<TradeEvent> out) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return -1;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+            buffer.position(start);
+            return -1;
+        }
+        ByteBuffer body = buffer.slice(buffer.position(), length);
+        crc.reset();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            MessageUtils.logWarning("交易日志记录校验失败，位置: " + start + "，后续数据将被忽略");
+            buffer.position(start);
+            return -1;
+        }
+        long seq = body.getLong();
+        if (out != null) {
+            out.add(TradeEvent.decode(seq, body));
+        }
+        buffer.position(buffer.position() + length);
+        return seq;
+    }
+
+    private void mapSegment(long firstSeq) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        File file = new File(dir, String.format("%020d%s", firstSeq, SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private File[] listSegments() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(parseFirstSeq(a), parseFirstSeq(b)));
+        return files;
+    }
+
+    private static long parseFirstSeq(File segmentFile) {
+        String name = segmentFile.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
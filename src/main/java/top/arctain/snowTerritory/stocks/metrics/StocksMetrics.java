@@ -0,0 +1,154 @@
+package top.arctain.snowTerritory.stocks.metrics;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Stocks 模块运行指标
+ * 直方图（纳秒）、计数器、即时读数三类指标按名称注册，各组件只在初始化时取得引用，记录时不查表；
+ * 可定期写出到文件，也可通过 /sn stock admin metrics 查看
+ */
+public class StocksMetrics {
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private volatile long resetTime = System.currentTimeMillis();
+    private BukkitRunnable dumpTask;
+
+    /**
+     * 获取（不存在时创建）直方图
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * 获取（不存在时创建）计数器
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * 注册即时读数（生成报告时读取）
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * 清空直方图与计数器（即时读数不受影响）
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+        resetTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 生成文本报告（每行一项，不含颜色代码）
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add("统计区间: " + ((System.currentTimeMillis() - resetTime) / 1000) + " 秒");
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            long value;
+            try {
+                value = entry.getValue().getAsLong();
+            } catch (RuntimeException e) {
+                continue;
+            }
+            lines.add(entry.getKey() + " = " + value);
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            lines.add(entry.getKey() + " = " + entry.getValue().sum());
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            lines.add(entry.getKey() + ": n=" + histogram.getCount()
+                + " avg=" + formatNanos((long) histogram.getMean())
+                + " p50=" + formatNanos(histogram.getValueAtPercentile(50))
+                + " p99=" + formatNanos(histogram.getValueAtPercentile(99))
+                + " p99.9=" + formatNanos(histogram.getValueAtPercentile(99.9))
+                + " max=" + formatNanos(histogram.getMax()));
+        }
+        return lines;
+    }
+
+    /**
+     * 写出报告（先写临时文件再替换，读取方不会看到写了一半的文件）
+     */
+    public void dump(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# " + Instant.now());
+        lines.addAll(report());
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 定期在异步线程写出报告
+     */
+    public void startDump(JavaPlugin plugin, File file, long intervalTicks) {
+        if (dumpTask != null || intervalTicks <= 0) {
+            return;
+        }
+        dumpTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    dump(file);
+                } catch (IOException e) {
+                    MessageUtils.logWarning("写出运行指标失败: " + e.getMessage());
+                }
+            }
+        };
+        dumpTask.runTaskTimerAsynchronously(plugin, intervalTicks, intervalTicks);
+    }
+
+    public void stopDump() {
+        if (dumpTask != null) {
+            dumpTask.cancel();
+            dumpTask = null;
+        }
+    }
+
+    /**
+     * 纳秒转为易读的时间
+     */
+    public static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1fµs", nanos / 1_000.0);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.2fms", nanos / 1_000_000.0);
+        }
+        return String.format("%.2fs", nanos / 1_000_000_000.0);
+    }
+}
@@ -9,18 +9,23 @@ import java.util.UUID;
  */
 public class Account {
     
+    public static final String ISOLATED = "ISOLATED"; // 逐仓：每个仓位只以自己的保证金承担亏损
+    public static final String CROSS = "CROSS";       // 全仓：全部仓位共享钱包余额，按账户整体强平
+    
     private final UUID playerId;
     private BigDecimal walletBalance;      // 钱包余额（USDT）
     private BigDecimal availableBalance;  // 可用余额（扣除冻结和逐仓占用）
     private BigDecimal equity;            // 净值（钱包 + 未实现盈亏）
-    private String marginMode;            // 保证金模式（ISOLATED/CROSS，先只做逐仓）
+    private String marginMode;            // 保证金模式（ISOLATED/CROSS）
+    private BigDecimal realizedPnl = BigDecimal.ZERO; // 累计已实现盈亏（平仓盈亏，不含手续费）
+    private BigDecimal frozenBalance = BigDecimal.ZERO; // 限价挂单冻结的资金（不单独持久化，启动时按挂单的冻结金额重建）
     
     public Account(UUID playerId) {
         this.playerId = playerId;
         this.walletBalance = BigDecimal.ZERO;
         this.availableBalance = BigDecimal.ZERO;
         this.equity = BigDecimal.ZERO;
-        this.marginMode = "ISOLATED";
+        this.marginMode = ISOLATED;
     }
     
     public Account(UUID playerId, BigDecimal walletBalance) {
@@ -28,14 +33,14 @@ public class Account {
         this.walletBalance = walletBalance;
         this.availableBalance = walletBalance;
         this.equity = walletBalance;
-        this.marginMode = "ISOLATED";
+        this.marginMode = ISOLATED;
     }
     
     /**
      * 更新可用余额（扣除冻结保证金）
      */
     public void updateAvailableBalance(BigDecimal isolatedMargin) {
-        this.availableBalance = walletBalance.subtract(isolatedMargin);
+        this.availableBalance = walletBalance.subtract(isolatedMargin).subtract(frozenBalance);
         if (this.availableBalance.compareTo(BigDecimal.ZERO) < 0) {
             this.availableBalance = BigDecimal.ZERO;
         }
@@ -67,6 +72,32 @@ public class Account {
         updateAvailableBalance(BigDecimal.ZERO);
     }
     
+    /**
+     * 冻结资金（限价挂单）
+     */
+    public void freeze(BigDecimal amount) {
+        this.frozenBalance = frozenBalance.add(amount);
+        updateAvailableBalance(BigDecimal.ZERO);
+    }
+    
+    /**
+     * 解冻资金
+     */
+    public void unfreeze(BigDecimal amount) {
+        this.frozenBalance = frozenBalance.subtract(amount);
+        if (this.frozenBalance.compareTo(BigDecimal.ZERO) < 0) {
+            this.frozenBalance = BigDecimal.ZERO;
+        }
+        updateAvailableBalance(BigDecimal.ZERO);
+    }
+    
+    /**
+     * 累加已实现盈亏
+     */
+    public void addRealizedPnl(BigDecimal amount) {
+        this.realizedPnl = realizedPnl.add(amount);
+    }
+    
     // Getters and Setters
     
     public UUID getPlayerId() {
@@ -98,6 +129,18 @@ public class Account {
         this.equity = equity;
     }
     
+    public BigDecimal getFrozenBalance() {
+        return frozenBalance;
+    }
+    
+    public BigDecimal getRealizedPnl() {
+        return realizedPnl;
+    }
+    
+    public void setRealizedPnl(BigDecimal realizedPnl) {
+        this.realizedPnl = realizedPnl;
+    }
+    
     public String getMarginMode() {
         return marginMode;
     }
@@ -105,5 +148,9 @@ public class Account {
     public void setMarginMode(String marginMode) {
         this.marginMode = marginMode;
     }
+    
+    public boolean isCrossMargin() {
+        return CROSS.equals(marginMode);
+    }
 }
 
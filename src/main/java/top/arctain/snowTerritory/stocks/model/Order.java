@@ -19,6 +19,11 @@ public class Order {
     private BigDecimal fillPrice;            // 成交价
     private BigDecimal fee;                  // 手续费
     private final long createTime;           // 创建时间（毫秒时间戳）
+    private BigDecimal price;                // 委托价（仅限价单）
+    private int leverage;                    // 杠杆（仅限价单）
+    private BigDecimal filledQty = BigDecimal.ZERO; // 已成交数量
+    private BigDecimal settledQty = BigDecimal.ZERO; // 已结算数量（成交 + 撤销），仅交易线程使用
+    private BigDecimal reservedBalance = BigDecimal.ZERO; // 尚未释放的冻结资金，仅交易线程使用
     
     public Order(long id, UUID playerId, String symbol, OrderSide side, 
                 OrderType type, BigDecimal qty) {
@@ -34,6 +39,43 @@ public class Order {
         this.createTime = System.currentTimeMillis();
     }
     
+    /**
+     * 从持久化数据恢复订单
+     */
+    public Order(long id, UUID playerId, String symbol, OrderSide side,
+                OrderType type, BigDecimal qty, long createTime) {
+        this.id = id;
+        this.playerId = playerId;
+        this.symbol = symbol;
+        this.side = side;
+        this.type = type;
+        this.qty = qty;
+        this.status = OrderStatus.PENDING;
+        this.fillPrice = BigDecimal.ZERO;
+        this.fee = BigDecimal.ZERO;
+        this.createTime = createTime;
+    }
+    
+    /**
+     * 创建限价单（挂单中）
+     */
+    public static Order limit(long id, UUID playerId, String symbol, OrderSide side,
+                              BigDecimal qty, BigDecimal price, int leverage) {
+        return limit(id, playerId, symbol, side, qty, price, leverage, System.currentTimeMillis());
+    }
+
+    /**
+     * 创建限价单（指定创建时间，日志回放使用）
+     */
+    public static Order limit(long id, UUID playerId, String symbol, OrderSide side,
+                              BigDecimal qty, BigDecimal price, int leverage, long createTime) {
+        Order order = new Order(id, playerId, symbol, side, OrderType.LIMIT, qty, createTime);
+        order.status = OrderStatus.OPEN;
+        order.price = price;
+        order.leverage = leverage;
+        return order;
+    }
+    
     /**
      * 订单成交
      */
@@ -41,6 +83,35 @@ public class Order {
         this.status = OrderStatus.FILLED;
         this.fillPrice = fillPrice;
         this.fee = fee;
+        this.filledQty = qty;
+    }
+    
+    /**
+     * 限价单部分成交：成交均价按数量加权，已撤销的订单保持撤销状态
+     */
+    public void fillPartial(BigDecimal qty, BigDecimal price, BigDecimal fee) {
+        BigDecimal newFilled = filledQty.add(qty);
+        this.fillPrice = fillPrice.multiply(filledQty).add(price.multiply(qty))
+                                  .divide(newFilled, 8, java.math.RoundingMode.HALF_UP);
+        this.filledQty = newFilled;
+        this.fee = this.fee.add(fee);
+        if (status != OrderStatus.CANCELLED) {
+            this.status = newFilled.compareTo(this.qty) >= 0 ? OrderStatus.FILLED : OrderStatus.PARTIALLY_FILLED;
+        }
+    }
+    
+    /**
+     * 是否仍在挂单（挂单中或部分成交）
+     */
+    public boolean isActive() {
+        return status == OrderStatus.OPEN || status == OrderStatus.PARTIALLY_FILLED;
+    }
+    
+    /**
+     * 未成交数量
+     */
+    public BigDecimal getRemainingQty() {
+        return qty.subtract(filledQty);
     }
     
     /**
@@ -114,5 +185,45 @@ public class Order {
     public long getCreateTime() {
         return createTime;
     }
+    
+    public BigDecimal getPrice() {
+        return price;
+    }
+    
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+    
+    public int getLeverage() {
+        return leverage;
+    }
+    
+    public void setLeverage(int leverage) {
+        this.leverage = leverage;
+    }
+    
+    public BigDecimal getFilledQty() {
+        return filledQty;
+    }
+    
+    public void setFilledQty(BigDecimal filledQty) {
+        this.filledQty = filledQty;
+    }
+    
+    public BigDecimal getSettledQty() {
+        return settledQty;
+    }
+    
+    public void setSettledQty(BigDecimal settledQty) {
+        this.settledQty = settledQty;
+    }
+    
+    public BigDecimal getReservedBalance() {
+        return reservedBalance;
+    }
+    
+    public void setReservedBalance(BigDecimal reservedBalance) {
+        this.reservedBalance = reservedBalance;
+    }
 }
 
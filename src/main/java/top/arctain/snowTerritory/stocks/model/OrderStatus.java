@@ -4,7 +4,9 @@ package top.arctain.snowTerritory.stocks.model;
  * 订单状态枚举
  */
 public enum OrderStatus {
-    PENDING,    // 待处理
+    PENDING,            // 待处理
+    OPEN,               // 挂单中（限价单）
+    PARTIALLY_FILLED,   // 部分成交（限价单）
     FILLED,     // 已成交
     CANCELLED,  // 已取消
     REJECTED    // 已拒绝
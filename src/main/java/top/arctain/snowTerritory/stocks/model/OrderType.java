@@ -4,6 +4,7 @@ package top.arctain.snowTerritory.stocks.model;
  * 订单类型枚举
  */
 public enum OrderType {
-    MARKET  // 市价单
+    MARKET, // 市价单
+    LIMIT   // 限价单
 }
 
@@ -1,11 +1,14 @@
 package top.arctain.snowTerritory.stocks.model;
 
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
 import java.math.BigDecimal;
 import java.util.UUID;
 
 /**
  * 仓位模型
- * 存储玩家的持仓信息（逐仓模式）
+ * 存储玩家的持仓信息
+ * 全仓模式下 isolatedMargin 为开仓占用的保证金，强平按账户整体计算，不使用单仓爆仓价
  */
 public class Position {
     
@@ -18,6 +21,13 @@ public class Position {
     private BigDecimal isolatedMargin;   // 逐仓保证金
     private BigDecimal unrealizedPnl;    // 未实现盈亏
     private BigDecimal liquidationPrice; // 爆仓价（可实时计算或缓存）
+    private BigDecimal stopLossPrice;    // 止损触发价（标记价格），null 表示未设置
+    private BigDecimal takeProfitPrice;  // 止盈触发价（标记价格），null 表示未设置
+    
+    // 定点数缓存（8位小数，风控热路径使用），超出范围时为 FixedPoint.INVALID
+    private long qtyFixed;
+    private long entryPriceFixed;
+    private long isolatedMarginFixed;
     
     public Position(UUID playerId, String symbol, OrderSide side, 
                    BigDecimal qty, BigDecimal entryPrice, int leverage, 
@@ -25,12 +35,12 @@ public class Position {
         this.playerId = playerId;
         this.symbol = symbol;
         this.side = side;
-        this.qty = qty;
-        this.entryPrice = entryPrice;
         this.leverage = leverage;
-        this.isolatedMargin = isolatedMargin;
         this.unrealizedPnl = BigDecimal.ZERO;
         this.liquidationPrice = BigDecimal.ZERO;
+        setQty(qty);
+        setEntryPrice(entryPrice);
+        setIsolatedMargin(isolatedMargin);
     }
     
     /**
@@ -50,17 +60,15 @@ public class Position {
      * 追加保证金
      */
     public void addMargin(BigDecimal amount) {
-        this.isolatedMargin = isolatedMargin.add(amount);
+        setIsolatedMargin(isolatedMargin.add(amount));
     }
     
     /**
      * 减少保证金（平仓时返还）
      */
     public void reduceMargin(BigDecimal amount) {
-        this.isolatedMargin = isolatedMargin.subtract(amount);
-        if (this.isolatedMargin.compareTo(BigDecimal.ZERO) < 0) {
-            this.isolatedMargin = BigDecimal.ZERO;
-        }
+        BigDecimal remaining = isolatedMargin.subtract(amount);
+        setIsolatedMargin(remaining.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : remaining);
     }
     
     /**
@@ -69,19 +77,17 @@ public class Position {
     public void addPosition(BigDecimal newQty, BigDecimal newPrice, BigDecimal newMargin) {
         // 加权均价：entryPrice = (oldQty * oldPrice + newQty * newPrice) / (oldQty + newQty)
         BigDecimal totalValue = qty.multiply(entryPrice).add(newQty.multiply(newPrice));
-        this.qty = qty.add(newQty);
-        this.entryPrice = totalValue.divide(qty, 8, java.math.RoundingMode.HALF_UP);
-        this.isolatedMargin = isolatedMargin.add(newMargin);
+        setQty(qty.add(newQty));
+        setEntryPrice(totalValue.divide(qty, 8, java.math.RoundingMode.HALF_UP));
+        setIsolatedMargin(isolatedMargin.add(newMargin));
     }
     
     /**
      * 减仓
      */
     public void reducePosition(BigDecimal reduceQty) {
-        this.qty = qty.subtract(reduceQty);
-        if (this.qty.compareTo(BigDecimal.ZERO) <= 0) {
-            this.qty = BigDecimal.ZERO;
-        }
+        BigDecimal remaining = qty.subtract(reduceQty);
+        setQty(remaining.compareTo(BigDecimal.ZERO) <= 0 ? BigDecimal.ZERO : remaining);
     }
     
     // Getters and Setters
@@ -108,6 +114,7 @@ public class Position {
     
     public void setQty(BigDecimal qty) {
         this.qty = qty;
+        this.qtyFixed = FixedPoint.fromDecimalOrInvalid(qty);
     }
     
     public BigDecimal getEntryPrice() {
@@ -116,6 +123,7 @@ public class Position {
     
     public void setEntryPrice(BigDecimal entryPrice) {
         this.entryPrice = entryPrice;
+        this.entryPriceFixed = FixedPoint.fromDecimalOrInvalid(entryPrice);
     }
     
     public int getLeverage() {
@@ -132,6 +140,7 @@ public class Position {
     
     public void setIsolatedMargin(BigDecimal isolatedMargin) {
         this.isolatedMargin = isolatedMargin;
+        this.isolatedMarginFixed = FixedPoint.fromDecimalOrInvalid(isolatedMargin);
     }
     
     public BigDecimal getUnrealizedPnl() {
@@ -149,5 +158,40 @@ public class Position {
     public void setLiquidationPrice(BigDecimal liquidationPrice) {
         this.liquidationPrice = liquidationPrice;
     }
+    
+    public BigDecimal getStopLossPrice() {
+        return stopLossPrice;
+    }
+    
+    public void setStopLossPrice(BigDecimal stopLossPrice) {
+        this.stopLossPrice = stopLossPrice;
+    }
+    
+    public BigDecimal getTakeProfitPrice() {
+        return takeProfitPrice;
+    }
+    
+    public void setTakeProfitPrice(BigDecimal takeProfitPrice) {
+        this.takeProfitPrice = takeProfitPrice;
+    }
+    
+    public long getQtyFixed() {
+        return qtyFixed;
+    }
+    
+    public long getEntryPriceFixed() {
+        return entryPriceFixed;
+    }
+    
+    public long getIsolatedMarginFixed() {
+        return isolatedMarginFixed;
+    }
+    
+    /**
+     * 定点数缓存是否全部有效
+     */
+    public boolean hasFixedValues() {
+        return qtyFixed != FixedPoint.INVALID && entryPriceFixed != FixedPoint.INVALID
+            && isolatedMarginFixed != FixedPoint.INVALID;
+    }
 }
-
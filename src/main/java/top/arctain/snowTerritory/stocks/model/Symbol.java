@@ -1,5 +1,7 @@
 package top.arctain.snowTerritory.stocks.model;
 
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
@@ -17,6 +19,8 @@ public class Symbol {
     private final int maxLeverage;                // 最大杠杆
     private final BigDecimal maintenanceMarginRate; // 维持保证金率（如 0.005 = 0.5%）
     private final BigDecimal takerFeeRate;        // 吃单手续费率（如 0.0006 = 0.06%）
+    private final long maintenanceMarginRateFixed; // 定点数形式（8位小数），无法精确表示时为 FixedPoint.INVALID
+    private final long takerFeeRateFixed;
     
     public Symbol(String name, BigDecimal priceTick, BigDecimal qtyStep, 
                   BigDecimal minQty, BigDecimal maxQty, int maxLeverage,
@@ -29,6 +33,8 @@ public class Symbol {
         this.maxLeverage = maxLeverage;
         this.maintenanceMarginRate = maintenanceMarginRate;
         this.takerFeeRate = takerFeeRate;
+        this.maintenanceMarginRateFixed = FixedPoint.fromDecimalExact(maintenanceMarginRate);
+        this.takerFeeRateFixed = FixedPoint.fromDecimalExact(takerFeeRate);
     }
     
     /**
@@ -120,5 +126,12 @@ public class Symbol {
     public BigDecimal getTakerFeeRate() {
         return takerFeeRate;
     }
+    
+    public long getMaintenanceMarginRateFixed() {
+        return maintenanceMarginRateFixed;
+    }
+    
+    public long getTakerFeeRateFixed() {
+        return takerFeeRateFixed;
+    }
 }
-
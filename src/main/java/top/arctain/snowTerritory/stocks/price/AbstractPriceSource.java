@@ -0,0 +1,128 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 价格源基类
+ * 维护监控的交易对以及最新的标记价格/成交价，子类只负责获取价格并调用 updatePrice
+ */
+public abstract class AbstractPriceSource implements PriceService {
+
+    protected final ConcurrentMap<String, BigDecimal> markPrices = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, BigDecimal> lastPrices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> markPricesFixed = new ConcurrentHashMap<>(); // 定点数缓存，供风控使用
+    protected final Set<String> symbolsToUpdate = ConcurrentHashMap.newKeySet(); // 需要更新的交易对列表
+    private final List<PriceListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, Long> lastUpdateTimes = new ConcurrentHashMap<>(); // 最近一次收到价格的时间
+    
+    /**
+     * 注册价格监听器（K线聚合、限价单撮合、止盈止损等）
+     */
+    public void addListener(PriceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 设置运行指标：为当前监控的每个交易对登记价格陈旧时间（毫秒，从未收到价格时为 -1）
+     */
+    public void setMetrics(StocksMetrics metrics) {
+        for (String symbol : symbolsToUpdate) {
+            metrics.gauge("price.staleness." + symbol + ".ms", () -> {
+                Long updated = lastUpdateTimes.get(symbol);
+                return updated != null ? System.currentTimeMillis() - updated : -1;
+            });
+        }
+    }
+
+    /**
+     * 最近一次收到该交易对价格的时间（毫秒时间戳），从未收到时返回0
+     */
+    @Override
+    public long getLastUpdateTime(String symbol) {
+        Long updated = lastUpdateTimes.get(symbol);
+        return updated != null ? updated : 0;
+    }
+
+    /**
+     * 添加需要监控的交易对
+     */
+    public void addSymbol(String symbol) {
+        symbolsToUpdate.add(symbol);
+    }
+
+    /**
+     * 移除监控的交易对
+     */
+    public void removeSymbol(String symbol) {
+        symbolsToUpdate.remove(symbol);
+    }
+
+    @Override
+    public BigDecimal getMarkPrice(String symbol) {
+        return markPrices.getOrDefault(symbol, BigDecimal.ZERO);
+    }
+
+    @Override
+    public BigDecimal getLastPrice(String symbol) {
+        BigDecimal lastPrice = lastPrices.get(symbol);
+        if (lastPrice == null) {
+            // 如果没有最新价，使用标记价格
+            return getMarkPrice(symbol);
+        }
+        return lastPrice;
+    }
+
+    @Override
+    public long getMarkPriceFixed(String symbol) {
+        Long price = markPricesFixed.get(symbol);
+        return price != null ? price : 0;
+    }
+
+    @Override
+    public boolean isSymbolSupported(String symbol) {
+        // 简单检查：如果已经获取过价格，说明支持
+        return markPrices.containsKey(symbol) || lastPrices.containsKey(symbol);
+    }
+
+    /**
+     * 更新指定交易对的价格（为空的一项保持不变）
+     */
+    public void updatePrice(String symbol, BigDecimal markPrice, BigDecimal lastPrice) {
+        lastUpdateTimes.put(symbol, System.currentTimeMillis());
+        if (markPrice != null && markPrice.compareTo(BigDecimal.ZERO) > 0) {
+            markPrices.put(symbol, markPrice);
+            long fixed = FixedPoint.fromDecimalOrInvalid(markPrice);
+            if (fixed != FixedPoint.INVALID) {
+                markPricesFixed.put(symbol, fixed);
+                if (!listeners.isEmpty()) {
+                    long now = System.currentTimeMillis();
+                    for (PriceListener listener : listeners) {
+                        listener.onMarkPrice(symbol, now, fixed);
+                    }
+                }
+            } else {
+                markPricesFixed.remove(symbol);
+            }
+        }
+        if (lastPrice != null && lastPrice.compareTo(BigDecimal.ZERO) > 0) {
+            lastPrices.put(symbol, lastPrice);
+            if (!listeners.isEmpty()) {
+                long fixed = FixedPoint.fromDecimalOrInvalid(lastPrice);
+                if (fixed != FixedPoint.INVALID) {
+                    long now = System.currentTimeMillis();
+                    for (PriceListener listener : listeners) {
+                        listener.onLastPrice(symbol, now, fixed);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多源聚合价格源
+ * 同时运行多个上游价格源（各自在自己的线程中拉取/接收），任一上游更新时取所有健康上游的
+ * 新鲜价格中位数作为指数价格发布；至少 3 个上游时剔除偏离中位数过大的报价。
+ * 每个上游由熔断器保护：长时间没有新鲜价格或报价异常即计一次失败，连续失败后停止该上游，
+ * 熔断时间结束后重新启动探测。没有足够的健康上游时不再发布，价格时间随之过期
+ */
+public class AggregatePriceSource extends AbstractPriceSource {
+
+    private final List<Upstream> upstreams = new ArrayList<>();
+    private final long checkIntervalMs;    // 健康检查间隔
+    private final long sourceStaleMs;      // 上游超过该时间没有价格视为失败
+    private final int minSources;          // 发布价格所需的最少健康上游数
+    private final BigDecimal maxDeviation; // 相对中位数的最大偏离比例
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running = false;
+
+    public AggregatePriceSource(long checkIntervalMs, long sourceStaleMs, int minSources, BigDecimal maxDeviation) {
+        this.checkIntervalMs = Math.max(100, checkIntervalMs);
+        this.sourceStaleMs = sourceStaleMs;
+        this.minSources = Math.max(1, minSources);
+        this.maxDeviation = maxDeviation;
+    }
+
+    /**
+     * 添加上游价格源（需在 start 之前调用）
+     */
+    public void addSource(String name, AbstractPriceSource source, CircuitBreaker breaker) {
+        Upstream upstream = new Upstream(name, source, breaker);
+        source.addListener(new PriceListener() {
+            @Override
+            public void onLastPrice(String symbol, long timeMs, long price) {
+                aggregate(symbol);
+            }
+
+            @Override
+            public void onMarkPrice(String symbol, long timeMs, long price) {
+                aggregate(symbol);
+            }
+        });
+        upstreams.add(upstream);
+    }
+
+    @Override
+    public void addSymbol(String symbol) {
+        super.addSymbol(symbol);
+        for (Upstream upstream : upstreams) {
+            upstream.source.addSymbol(symbol);
+        }
+    }
+
+    @Override
+    public void removeSymbol(String symbol) {
+        super.removeSymbol(symbol);
+        for (Upstream upstream : upstreams) {
+            upstream.source.removeSymbol(symbol);
+        }
+    }
+
+    @Override
+    public void setMetrics(StocksMetrics metrics) {
+        super.setMetrics(metrics);
+        for (Upstream upstream : upstreams) {
+            metrics.gauge("price.upstream." + upstream.name + ".breaker",
+                          () -> upstream.breaker.getState().ordinal()); // 0 正常，1 熔断，2 探测中
+        }
+    }
+
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        if (upstreams.isEmpty()) {
+            MessageUtils.logWarning("聚合价格服务没有可用的上游价格源");
+            return;
+        }
+        running = true;
+        long now = System.currentTimeMillis();
+        for (Upstream upstream : upstreams) {
+            upstream.started = true;
+            upstream.probeSince = now;
+            upstream.source.start();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StockPriceAggregate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkUpstreams, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        MessageUtils.logInfo("聚合价格服务已启动，上游: " + upstreamNames());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        for (Upstream upstream : upstreams) {
+            if (upstream.started) {
+                upstream.started = false;
+                upstream.source.stop();
+            }
+        }
+        MessageUtils.logInfo("聚合价格服务已停止");
+    }
+
+    /**
+     * 检查各上游健康状况并驱动熔断器（调度线程）
+     */
+    private void checkUpstreams() {
+        long now = System.currentTimeMillis();
+        for (Upstream upstream : upstreams) {
+            try {
+                checkUpstream(upstream, now);
+            } catch (Exception e) {
+                MessageUtils.logError("检查上游价格源 " + upstream.name + " 异常: " + e.getMessage());
+            }
+        }
+        // 上游全部停止推送时也要定期重算，使过期的报价退出聚合
+        for (String symbol : symbolsToUpdate) {
+            aggregate(symbol);
+        }
+    }
+
+    private void checkUpstream(Upstream upstream, long now) {
+        if (!upstream.breaker.allowRequest(now)) {
+            if (upstream.started) {
+                upstream.started = false;
+                upstream.source.stop();
+            }
+            return;
+        }
+        if (!upstream.started) {
+            // 熔断结束，重新启动上游探测
+            upstream.started = true;
+            upstream.probeSince = now;
+            upstream.source.start();
+            MessageUtils.logInfo("上游价格源 " + upstream.name + " 熔断结束，开始探测");
+            return;
+        }
+        if (hasFreshPrice(upstream, now)) {
+            if (upstream.breaker.recordSuccess()) {
+                MessageUtils.logSuccess("上游价格源 " + upstream.name + " 已恢复");
+            }
+            return;
+        }
+        if (now - upstream.probeSince < sourceStaleMs) {
+            return; // 刚启动，等待首个价格
+        }
+        recordFailure(upstream, now, "超过 " + (sourceStaleMs / 1000) + " 秒没有价格");
+    }
+
+    private boolean hasFreshPrice(Upstream upstream, long now) {
+        for (String symbol : symbolsToUpdate) {
+            if (now - upstream.source.getLastUpdateTime(symbol) <= sourceStaleMs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordFailure(Upstream upstream, long now, String reason) {
+        // 熔断后由下一次健康检查停止上游，避免在上游自己的线程中停止它
+        if (upstream.breaker.recordFailure(now)) {
+            MessageUtils.logWarning("上游价格源 " + upstream.name + " 已熔断（" + reason + "）");
+        }
+    }
+
+    /**
+     * 按健康上游的新鲜价格重算并发布指数价格（上游线程与调度线程均会调用）
+     */
+    private synchronized void aggregate(String symbol) {
+        if (!running) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Quote> quotes = new ArrayList<>(upstreams.size());
+        for (Upstream upstream : upstreams) {
+            if (upstream.breaker.getState() == CircuitBreaker.State.OPEN
+                || now - upstream.source.getLastUpdateTime(symbol) > sourceStaleMs) {
+                continue;
+            }
+            BigDecimal markPrice = upstream.source.getMarkPrice(symbol);
+            if (markPrice.compareTo(BigDecimal.ZERO) > 0) {
+                quotes.add(new Quote(upstream, markPrice, upstream.source.getLastPrice(symbol)));
+            }
+        }
+        if (quotes.size() >= 3 && maxDeviation.compareTo(BigDecimal.ZERO) > 0) {
+            removeOutliers(symbol, quotes, now);
+        }
+        if (quotes.size() < minSources) {
+            return;
+        }
+        List<BigDecimal> marks = new ArrayList<>(quotes.size());
+        List<BigDecimal> lasts = new ArrayList<>(quotes.size());
+        for (Quote quote : quotes) {
+            marks.add(quote.markPrice);
+            lasts.add(quote.lastPrice);
+        }
+        BigDecimal markPrice = median(marks);
+        BigDecimal lastPrice = median(lasts);
+        // 报价未变化时不重复发布，价格时间只在上游有新报价时前进
+        if (markPrice.equals(markPrices.get(symbol)) && lastPrice.equals(lastPrices.get(symbol))
+            && getLastUpdateTime(symbol) >= newestQuoteTime(quotes, symbol)) {
+            return;
+        }
+        updatePrice(symbol, markPrice, lastPrice);
+    }
+
+    /**
+     * 剔除偏离中位数超过阈值的报价，并计入对应上游的失败次数
+     */
+    private void removeOutliers(String symbol, List<Quote> quotes, long now) {
+        List<BigDecimal> marks = new ArrayList<>(quotes.size());
+        for (Quote quote : quotes) {
+            marks.add(quote.markPrice);
+        }
+        BigDecimal median = median(marks);
+        Iterator<Quote> iterator = quotes.iterator();
+        while (iterator.hasNext()) {
+            Quote quote = iterator.next();
+            BigDecimal deviation = quote.markPrice.subtract(median).abs()
+                .divide(median, 8, RoundingMode.HALF_UP);
+            if (deviation.compareTo(maxDeviation) > 0) {
+                iterator.remove();
+                recordFailure(quote.upstream, now, symbol + " 报价 " + quote.markPrice + " 偏离中位数 " + median);
+            }
+        }
+    }
+
+    private static long newestQuoteTime(List<Quote> quotes, String symbol) {
+        long newest = 0;
+        for (Quote quote : quotes) {
+            newest = Math.max(newest, quote.upstream.source.getLastUpdateTime(symbol));
+        }
+        return newest;
+    }
+
+    static BigDecimal median(List<BigDecimal> values) {
+        Collections.sort(values);
+        int size = values.size();
+        if (size % 2 == 1) {
+            return values.get(size / 2);
+        }
+        return values.get(size / 2 - 1).add(values.get(size / 2)).divide(BigDecimal.valueOf(2));
+    }
+
+    private String upstreamNames() {
+        StringBuilder names = new StringBuilder();
+        for (Upstream upstream : upstreams) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(upstream.name);
+        }
+        return names.toString();
+    }
+
+    private static final class Upstream {
+        final String name;
+        final AbstractPriceSource source;
+        final CircuitBreaker breaker;
+        volatile boolean started;
+        volatile long probeSince; // 最近一次启动上游的时间
+
+        Upstream(String name, AbstractPriceSource source, CircuitBreaker breaker) {
+            this.name = name;
+            this.source = source;
+            this.breaker = breaker;
+        }
+    }
+
+    private record Quote(Upstream upstream, BigDecimal markPrice, BigDecimal lastPrice) {
+    }
+}
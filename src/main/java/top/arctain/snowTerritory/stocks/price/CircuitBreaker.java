@@ -0,0 +1,68 @@
+package top.arctain.snowTerritory.stocks.price;
+
+/**
+ * 熔断器
+ * 连续失败达到阈值后熔断，熔断期间不再请求；熔断时间结束后进入半开状态放行探测，
+ * 探测成功恢复，失败则重新熔断
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,    // 正常
+        OPEN,      // 熔断
+        HALF_OPEN  // 探测中
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 是否允许请求；熔断时间已过时转为半开并放行
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (state == State.OPEN && now - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+        }
+        return state != State.OPEN;
+    }
+
+    /**
+     * 记录一次成功，返回是否由此从半开/熔断恢复
+     */
+    public synchronized boolean recordSuccess() {
+        failures = 0;
+        if (state == State.CLOSED) {
+            return false;
+        }
+        state = State.CLOSED;
+        return true;
+    }
+
+    /**
+     * 记录一次失败，返回是否由此进入熔断
+     */
+    public synchronized boolean recordFailure(long now) {
+        if (state == State.OPEN) {
+            return false;
+        }
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+            failures = 0;
+            return true;
+        }
+        return false;
+    }
+}
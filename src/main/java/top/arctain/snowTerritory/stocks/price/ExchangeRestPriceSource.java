@@ -2,43 +2,116 @@ package top.arctain.snowTerritory.stocks.price;
 
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
+import top.arctain.snowTerritory.stocks.metrics.LatencyHistogram;
+import top.arctain.snowTerritory.stocks.metrics.StocksMetrics;
 import top.arctain.snowTerritory.utils.MessageUtils;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import javax.net.ssl.HttpsURLConnection;
 import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.net.URL;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 从CoinGecko API拉取价格
  */
-public class ExchangeRestPriceSource implements PriceService {
+public class ExchangeRestPriceSource extends AbstractPriceSource {
     
     private final JavaPlugin plugin;
     private final String exchangeApiUrl;
     private final long updateInterval; // 更新间隔（tick，20tick=1秒）
-    private final ConcurrentMap<String, BigDecimal> markPrices = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, BigDecimal> lastPrices = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, String> symbolToCoinId = new ConcurrentHashMap<>(); // 交易对到CoinGecko币种ID的映射
-    private final ConcurrentMap<String, Boolean> symbolsToUpdate = new ConcurrentHashMap<>(); // 需要更新的交易对列表
     private final ConcurrentMap<String, Long> lastErrorTime = new ConcurrentHashMap<>(); // 记录错误时间，避免频繁日志
+    private final AtomicBoolean inFlight = new AtomicBoolean(false); // 是否有请求尚未返回
+    private final String proxyType;
+    private final String proxyHost;
+    private final int proxyPort;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private ExecutorService httpExecutor;
+    private HttpClient httpClient;
     private BukkitRunnable updateTask;
+    private LatencyHistogram fetchLatency;
+    private LongAdder apiErrors;
+    private LongAdder fetchErrors;
     private boolean running = false;
     
     public ExchangeRestPriceSource(JavaPlugin plugin, String exchangeApiUrl, String exchangeType, long updateInterval) {
+        this(plugin, exchangeApiUrl, exchangeType, updateInterval, "none", null, 0, 15000, 15000);
+    }
+    
+    public ExchangeRestPriceSource(JavaPlugin plugin, String exchangeApiUrl, String exchangeType, long updateInterval,
+                                   String proxyType, String proxyHost, int proxyPort,
+                                   long connectTimeoutMs, long requestTimeoutMs) {
         this.plugin = plugin;
         this.exchangeApiUrl = exchangeApiUrl != null ? exchangeApiUrl : "https://api.coingecko.com/api/v3";
         this.updateInterval = updateInterval;
+        this.proxyType = proxyType != null ? proxyType.toLowerCase() : "none";
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+        this.connectTimeout = Duration.ofMillis(connectTimeoutMs);
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
         initSymbolMapping();
     }
     
+    /**
+     * 创建共享的 HTTP 客户端（连接复用，异步请求在独立的守护线程池中处理）
+     */
+    private HttpClient createHttpClient() {
+        httpExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "StockPriceHttp");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(httpExecutor);
+        switch (proxyType) {
+            case "http":
+                builder.proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)));
+                MessageUtils.logInfo("价格服务使用 HTTP 代理: " + proxyHost + ":" + proxyPort);
+                break;
+            case "socks":
+                // java.net.http.HttpClient 只支持 HTTP 代理
+                MessageUtils.logWarning("HTTP 客户端不支持 SOCKS 代理，将直接连接；如代理同时提供 HTTP 端口，请将 proxy.type 改为 http");
+                break;
+            case "none":
+                break;
+            default:
+                MessageUtils.logWarning("未知的代理类型: " + proxyType + "，将直接连接");
+        }
+        return builder.build();
+    }
+    
+    @Override
+    public void setMetrics(StocksMetrics metrics) {
+        super.setMetrics(metrics);
+        this.fetchLatency = metrics.histogram("price.fetch");
+        this.apiErrors = metrics.counter("price.fetch.apiErrors");
+        this.fetchErrors = metrics.counter("price.fetch.failures");
+    }
+    
     /**
      * 初始化交易对到CoinGecko币种ID的映射
      */
@@ -52,41 +125,13 @@ public class ExchangeRestPriceSource implements PriceService {
         // 可以继续添加更多映射
     }
     
-    /**
-     * 添加需要监控的交易对
-     */
-    public void addSymbol(String symbol) {
-        symbolsToUpdate.put(symbol, true);
-    }
-    
-    /**
-     * 移除监控的交易对
-     */
-    public void removeSymbol(String symbol) {
-        symbolsToUpdate.remove(symbol);
-    }
-    
-    @Override
-    public BigDecimal getMarkPrice(String symbol) {
-        return markPrices.getOrDefault(symbol, BigDecimal.ZERO);
-    }
-    
-    @Override
-    public BigDecimal getLastPrice(String symbol) {
-        BigDecimal lastPrice = lastPrices.get(symbol);
-        if (lastPrice == null) {
-            // 如果没有最新价，使用标记价格
-            return getMarkPrice(symbol);
-        }
-        return lastPrice;
-    }
-    
     @Override
     public void start() {
         if (running) {
             return;
         }
         running = true;
+        httpClient = createHttpClient();
         
         updateTask = new BukkitRunnable() {
             @Override
@@ -109,18 +154,18 @@ public class ExchangeRestPriceSource implements PriceService {
             updateTask.cancel();
             updateTask = null;
         }
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+            httpExecutor = null;
+        }
+        httpClient = null;
+        inFlight.set(false);
         running = false;
         MessageUtils.logInfo("价格服务已停止");
     }
     
-    @Override
-    public boolean isSymbolSupported(String symbol) {
-        // 简单检查：如果已经获取过价格，说明支持
-        return markPrices.containsKey(symbol) || lastPrices.containsKey(symbol);
-    }
-    
     /**
-     * 更新价格（异步执行）
+     * 更新价格（发起异步请求后立即返回）
      * 批量获取所有币种价格，减少API调用次数
      */
     private void updatePrices() {
@@ -130,9 +175,9 @@ public class ExchangeRestPriceSource implements PriceService {
         
         // 收集所有需要获取的币种ID
         StringBuilder coinIds = new StringBuilder();
-        ConcurrentMap<String, String> coinIdToSymbol = new ConcurrentHashMap<>();
+        Map<String, String> coinIdToSymbol = new HashMap<>();
         
-        for (String symbol : symbolsToUpdate.keySet()) {
+        for (String symbol : symbolsToUpdate) {
             String coinId = symbolToCoinId.get(symbol);
             if (coinId != null) {
                 if (coinIds.length() > 0) {
@@ -147,31 +192,38 @@ public class ExchangeRestPriceSource implements PriceService {
             return;
         }
         
-        // 批量获取价格
-        Map<String, BigDecimal> prices = fetchPricesFromCoinGecko(coinIds.toString());
+        // 上一次请求尚未返回时跳过本轮，避免慢响应时请求堆积
+        if (!inFlight.compareAndSet(false, true)) {
+            return;
+        }
         
-        // 更新价格
-        for (Map.Entry<String, BigDecimal> entry : prices.entrySet()) {
-            String coinId = entry.getKey();
-            BigDecimal price = entry.getValue();
-            String symbol = coinIdToSymbol.get(coinId);
-            
-            if (symbol != null && price != null && price.compareTo(BigDecimal.ZERO) > 0) {
-                markPrices.put(symbol, price);
-                lastPrices.put(symbol, price);
-                // 清除错误记录
-                lastErrorTime.remove(symbol);
+        // 批量获取价格
+        fetchPricesFromCoinGecko(coinIds.toString()).whenComplete((prices, error) -> {
+            inFlight.set(false);
+            if (prices == null) {
+                return;
             }
-        }
+            // 更新价格
+            for (Map.Entry<String, BigDecimal> entry : prices.entrySet()) {
+                String coinId = entry.getKey();
+                BigDecimal price = entry.getValue();
+                String symbol = coinIdToSymbol.get(coinId);
+                
+                if (symbol != null && price != null && price.compareTo(BigDecimal.ZERO) > 0) {
+                    updatePrice(symbol, price, price);
+                    // 清除错误记录
+                    lastErrorTime.remove(symbol);
+                }
+            }
+        });
     }
     
     /**
-     * 从CoinGecko API批量获取价格
+     * 从CoinGecko API批量获取价格（异步，不阻塞调用线程）
      * API格式: https://api.coingecko.com/api/v3/simple/price?ids=bitcoin,ethereum&vs_currencies=usd
      * 返回格式: {"bitcoin":{"usd":88244},"ethereum":{"usd":2456}}
      */
-    private Map<String, BigDecimal> fetchPricesFromCoinGecko(String coinIds) {
-        Map<String, BigDecimal> result = new ConcurrentHashMap<>();
+    private CompletableFuture<Map<String, BigDecimal>> fetchPricesFromCoinGecko(String coinIds) {
         String urlStr = exchangeApiUrl + "/simple/price?ids=" + coinIds + "&vs_currencies=usd";
         
         // 添加调试日志
@@ -182,155 +234,134 @@ public class ExchangeRestPriceSource implements PriceService {
             lastErrorTime.put("_debug", now);
         }
         
-        HttpsURLConnection conn = null;
-        try {
-            URL url = new URL(urlStr);
-            // 使用 SOCKS 代理
-            Proxy proxy = new Proxy(Proxy.Type.SOCKS, new InetSocketAddress("127.0.0.1", 21881));
-            conn = (HttpsURLConnection) url.openConnection(proxy);
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(15000); // 增加到15秒
-            conn.setReadTimeout(15000); // 增加到15秒
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-            conn.setRequestProperty("Accept", "application/json");
-            conn.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-            conn.setDoInput(true);
-            conn.setDoOutput(false);
-            conn.setUseCaches(false);
-            conn.setInstanceFollowRedirects(true);
-            
-            int responseCode = conn.getResponseCode();
-            
-            if (responseCode == 200) {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    
-                    // 解析JSON: {"bitcoin":{"usd":88244},"ethereum":{"usd":2456}}
-                    String json = response.toString();
-                    String[] coinIdArray = coinIds.split(",");
-                    
-                    for (String coinId : coinIdArray) {
-                        coinId = coinId.trim();
-                        // 查找该币种的usd价格
-                        String coinKey = "\"" + coinId + "\":";
-                        int coinIndex = json.indexOf(coinKey);
-                        if (coinIndex > 0) {
-                            // 在该币种对象中查找usd价格
-                            int usdKeyIndex = json.indexOf("\"usd\":", coinIndex);
-                            if (usdKeyIndex > coinIndex) {
-                                int priceStart = usdKeyIndex + 6; // "usd": 的长度
-                                // 跳过可能的空格
-                                while (priceStart < json.length() && Character.isWhitespace(json.charAt(priceStart))) {
-                                    priceStart++;
-                                }
-                                // 找到数字结束位置（逗号或右大括号）
-                                int priceEnd = priceStart;
-                                while (priceEnd < json.length() && 
-                                       (Character.isDigit(json.charAt(priceEnd)) || json.charAt(priceEnd) == '.')) {
-                                    priceEnd++;
-                                }
-                                if (priceEnd > priceStart) {
-                                    String priceStr = json.substring(priceStart, priceEnd);
-                                    try {
-                                        BigDecimal price = new BigDecimal(priceStr);
-                                        result.put(coinId, price);
-                                    } catch (NumberFormatException e) {
-                                        // 忽略解析错误
-                                    }
-                                }
-                            }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(urlStr))
+            .timeout(requestTimeout)
+            .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
+            .header("Accept", "application/json")
+            .header("Accept-Language", "en-US,en;q=0.9")
+            .GET()
+            .build();
+        
+        // 响应体在 HTTP 客户端自己的线程上边读边解析
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+            .thenApply(response -> {
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() != 200) {
+                        if (apiErrors != null) {
+                            apiErrors.increment();
                         }
+                        logApiError(response.statusCode(), body);
+                        return Collections.<String, BigDecimal>emptyMap();
                     }
+                    Map<String, BigDecimal> prices = parsePrices(body);
+                    if (fetchLatency != null) {
+                        fetchLatency.record(System.nanoTime() - start);
+                    }
+                    return prices;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            })
+            .exceptionally(error -> {
+                if (fetchErrors != null) {
+                    fetchErrors.increment();
+                }
+                logFetchError(error instanceof CompletionException && error.getCause() != null
+                              ? error.getCause() : error, urlStr);
+                return Collections.emptyMap();
+            });
+    }
+    
+    /**
+     * 流式解析 {"bitcoin":{"usd":88244},...}，只取第二层的 usd 字段
+     */
+    static Map<String, BigDecimal> parsePrices(InputStream body) throws IOException {
+        Map<String, BigDecimal> result = new HashMap<>();
+        JsonTokenizer tokenizer = new JsonTokenizer(
+            new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        String coinId = null;
+        String field = null;
+        JsonTokenizer.Token token;
+        while ((token = tokenizer.next()) != JsonTokenizer.Token.END) {
+            if (token == JsonTokenizer.Token.NAME) {
+                if (tokenizer.depth() == 1) {
+                    coinId = tokenizer.text();
+                } else if (tokenizer.depth() == 2) {
+                    field = tokenizer.text();
                 }
-            } else {
-                // 读取错误响应
-                String errorResponse = "";
+            } else if (token == JsonTokenizer.Token.NUMBER && tokenizer.depth() == 2
+                       && "usd".equals(field) && coinId != null) {
                 try {
-                    if (conn.getErrorStream() != null) {
-                        try (BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8))) {
-                            StringBuilder error = new StringBuilder();
-                            String line;
-                            while ((line = reader.readLine()) != null) {
-                                error.append(line);
-                            }
-                            errorResponse = error.toString();
-                        }
-                    }
-                } catch (Exception ignored) {}
-                
-                // 只在第一次或间隔较长时间后记录错误
-                long errorNow = System.currentTimeMillis();
-                Long lastError = lastErrorTime.get("_api_error");
-                if (lastError == null || errorNow - lastError > 60000) { // 每分钟最多记录一次
-                    MessageUtils.logWarning("CoinGecko API 返回错误代码: " + responseCode);
-                    if (!errorResponse.isEmpty()) {
-                        MessageUtils.logWarning("错误响应: " + errorResponse);
-                    }
-                    lastErrorTime.put("_api_error", errorNow);
+                    result.put(coinId, new BigDecimal(tokenizer.text()));
+                } catch (NumberFormatException e) {
+                    // 忽略解析错误
                 }
             }
-        } catch (java.net.SocketTimeoutException e) {
-            // 连接超时
-            long timeoutNow = System.currentTimeMillis();
+        }
+        return result;
+    }
+    
+    /**
+     * 记录非200响应（只在第一次或间隔较长时间后记录）
+     */
+    private void logApiError(int responseCode, InputStream body) throws IOException {
+        long errorNow = System.currentTimeMillis();
+        Long lastError = lastErrorTime.get("_api_error");
+        if (lastError == null || errorNow - lastError > 60000) { // 每分钟最多记录一次
+            MessageUtils.logWarning("CoinGecko API 返回错误代码: " + responseCode);
+            // 错误响应只读取开头一段
+            String errorResponse = new String(body.readNBytes(512), StandardCharsets.UTF_8);
+            if (!errorResponse.isEmpty()) {
+                MessageUtils.logWarning("错误响应: " + errorResponse);
+            }
+            lastErrorTime.put("_api_error", errorNow);
+        }
+    }
+    
+    private void logFetchError(Throwable e, String urlStr) {
+        long now = System.currentTimeMillis();
+        if (e instanceof HttpTimeoutException) {
+            // 连接或请求超时
             Long lastError = lastErrorTime.get("_timeout");
-            if (lastError == null || timeoutNow - lastError > 300000) { // 每5分钟最多记录一次
+            if (lastError == null || now - lastError > 300000) { // 每5分钟最多记录一次
                 MessageUtils.logWarning("CoinGecko API 连接超时，URL: " + urlStr);
                 MessageUtils.logWarning("超时详情: " + e.getClass().getSimpleName() + " - " + e.getMessage());
-                lastErrorTime.put("_timeout", timeoutNow);
+                lastErrorTime.put("_timeout", now);
             }
-        } catch (java.net.ConnectException e) {
+        } else if (e instanceof java.net.ConnectException) {
             // 连接失败
-            long connectNow = System.currentTimeMillis();
             Long lastError = lastErrorTime.get("_connect");
-            if (lastError == null || connectNow - lastError > 300000) { // 每5分钟最多记录一次
+            if (lastError == null || now - lastError > 300000) { // 每5分钟最多记录一次
                 MessageUtils.logWarning("CoinGecko API 连接失败，URL: " + urlStr);
                 MessageUtils.logWarning("连接错误: " + e.getClass().getSimpleName() + " - " + e.getMessage());
                 MessageUtils.logWarning("请检查: 1) 网络连接 2) 防火墙设置 3) 代理配置");
-                lastErrorTime.put("_connect", connectNow);
+                lastErrorTime.put("_connect", now);
             }
-        } catch (java.net.UnknownHostException e) {
+        } else if (e instanceof java.net.UnknownHostException) {
             // DNS解析失败
-            long dnsNow = System.currentTimeMillis();
             Long lastError = lastErrorTime.get("_dns");
-            if (lastError == null || dnsNow - lastError > 300000) {
+            if (lastError == null || now - lastError > 300000) {
                 MessageUtils.logWarning("无法解析域名: " + e.getMessage());
                 MessageUtils.logWarning("请检查DNS设置或网络连接");
-                lastErrorTime.put("_dns", dnsNow);
+                lastErrorTime.put("_dns", now);
             }
-        } catch (javax.net.ssl.SSLException e) {
+        } else if (e instanceof javax.net.ssl.SSLException) {
             MessageUtils.logWarning("SSL/TLS 连接错误:");
             e.printStackTrace();
-        } catch (Exception e) {
+        } else {
             // 其他错误，输出详细信息用于调试
-            long exceptionNow = System.currentTimeMillis();
             Long lastError = lastErrorTime.get("_error");
-            if (lastError == null || exceptionNow - lastError > 60000) { // 每分钟最多记录一次
+            if (lastError == null || now - lastError > 60000) { // 每分钟最多记录一次
                 MessageUtils.logWarning("获取价格失败: " + e.getClass().getSimpleName());
                 MessageUtils.logWarning("错误信息: " + e.getMessage());
                 MessageUtils.logWarning("URL: " + urlStr);
                 if (e.getCause() != null) {
                     MessageUtils.logWarning("原因: " + e.getCause().getMessage());
                 }
-                // 打印堆栈跟踪的前几行用于调试
-                StackTraceElement[] stack = e.getStackTrace();
-                if (stack.length > 0) {
-                    MessageUtils.logWarning("位置: " + stack[0].toString());
-                }
-                lastErrorTime.put("_error", exceptionNow);
-            }
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
+                lastErrorTime.put("_error", now);
             }
         }
-        
-        return result;
     }
     
     /**
@@ -339,17 +370,5 @@ public class ExchangeRestPriceSource implements PriceService {
     public void addSymbolMapping(String symbol, String coinId) {
         symbolToCoinId.put(symbol, coinId);
     }
-    
-    /**
-     * 手动更新指定交易对的价格（用于测试或手动设置）
-     */
-    public void updatePrice(String symbol, BigDecimal markPrice, BigDecimal lastPrice) {
-        if (markPrice != null) {
-            markPrices.put(symbol, markPrice);
-        }
-        if (lastPrice != null) {
-            lastPrices.put(symbol, lastPrice);
-        }
-    }
 }
 
@@ -0,0 +1,110 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地文件价格源（测试与离线环境使用）
+ * 定时读取每行 "交易对=价格" 的文本文件（# 开头为注释），文件修改后重新解析；
+ * 文件存在时每次轮询都重新发布价格，文件缺失或无法读取时停止更新，价格随之过期
+ */
+public class FilePriceSource extends AbstractPriceSource {
+
+    private final File file;
+    private final long intervalMs;
+    private Map<String, BigDecimal> cached = new HashMap<>(); // 仅调度线程访问
+    private long cachedModified = -1;
+    private ScheduledExecutorService scheduler;
+    private long lastErrorTime;
+
+    public FilePriceSource(File file, long intervalMs) {
+        this.file = file;
+        this.intervalMs = Math.max(100, intervalMs);
+    }
+
+    @Override
+    public void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StockPriceFile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, 0, intervalMs, TimeUnit.MILLISECONDS);
+        MessageUtils.logInfo("文件价格服务已启动，文件: " + file.getPath());
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        cachedModified = -1;
+        MessageUtils.logInfo("文件价格服务已停止");
+    }
+
+    private void poll() {
+        try {
+            long modified = file.lastModified();
+            if (modified == 0) {
+                throw new IOException("文件不存在");
+            }
+            if (modified != cachedModified) {
+                cached = parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+                cachedModified = modified;
+            }
+        } catch (IOException e) {
+            long now = System.currentTimeMillis();
+            if (now - lastErrorTime > 60000) { // 每分钟最多记录一次
+                MessageUtils.logWarning("读取价格文件失败: " + file.getPath() + " - " + e.getMessage());
+                lastErrorTime = now;
+            }
+            return;
+        }
+        for (Map.Entry<String, BigDecimal> entry : cached.entrySet()) {
+            if (symbolsToUpdate.contains(entry.getKey())) {
+                updatePrice(entry.getKey(), entry.getValue(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 解析 "交易对=价格" 或 "交易对 价格"，跳过空行、注释和无效行
+     */
+    static Map<String, BigDecimal> parse(List<String> lines) {
+        Map<String, BigDecimal> prices = new HashMap<>();
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] parts = trimmed.split("\\s*=\\s*|\\s+", 2);
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                BigDecimal price = new BigDecimal(parts[1].trim());
+                if (price.compareTo(BigDecimal.ZERO) > 0) {
+                    prices.put(parts[0].toUpperCase(), price);
+                }
+            } catch (NumberFormatException e) {
+                // 忽略解析错误
+            }
+        }
+        return prices;
+    }
+}
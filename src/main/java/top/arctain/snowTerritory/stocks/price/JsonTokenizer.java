@@ -0,0 +1,173 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 流式 JSON 词法分析器
+ * 边读边解析，不需要先把响应体拼成完整字符串；只做词法切分，不构建对象树
+ */
+class JsonTokenizer {
+
+    enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,       // 对象字段名
+        STRING,
+        NUMBER,
+        TRUE,
+        FALSE,
+        NULL,
+        END         // 输入结束
+    }
+
+    private final Reader reader;
+    private final StringBuilder text = new StringBuilder();
+    private int peeked = -2; // -2 表示没有预读字符
+    private int depth;
+
+    JsonTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读取下一个词法单元
+     */
+    Token next() throws IOException {
+        while (true) {
+            int c = read();
+            switch (c) {
+                case -1:
+                    return Token.END;
+                case ' ': case '\t': case '\r': case '\n': case ',': case ':':
+                    continue;
+                case '{':
+                    depth++;
+                    return Token.BEGIN_OBJECT;
+                case '}':
+                    depth--;
+                    return Token.END_OBJECT;
+                case '[':
+                    depth++;
+                    return Token.BEGIN_ARRAY;
+                case ']':
+                    depth--;
+                    return Token.END_ARRAY;
+                case '"':
+                    readString();
+                    return isNameFollows() ? Token.NAME : Token.STRING;
+                case 't':
+                    expect("rue");
+                    return Token.TRUE;
+                case 'f':
+                    expect("alse");
+                    return Token.FALSE;
+                case 'n':
+                    expect("ull");
+                    return Token.NULL;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        readNumber(c);
+                        return Token.NUMBER;
+                    }
+                    throw new IOException("JSON 格式错误，意外字符: " + (char) c);
+            }
+        }
+    }
+
+    /**
+     * 最近一个 NAME/STRING/NUMBER 的文本
+     */
+    String text() {
+        return text.toString();
+    }
+
+    /**
+     * 当前嵌套深度（对象与数组）
+     */
+    int depth() {
+        return depth;
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw new IOException("JSON 字符串未结束");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                int escaped = read();
+                switch (escaped) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char) read();
+                        }
+                        text.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    default:
+                        text.append((char) escaped);
+                }
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private void readNumber(int first) throws IOException {
+        text.setLength(0);
+        text.append((char) first);
+        while (true) {
+            int c = read();
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                text.append((char) c);
+            } else {
+                peeked = c;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 字符串后面紧跟冒号时为字段名
+     */
+    private boolean isNameFollows() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+        if (c == ':') {
+            return true;
+        }
+        peeked = c;
+        return false;
+    }
+
+    private void expect(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw new IOException("JSON 格式错误，无法识别的字面量");
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return reader.read();
+    }
+}
@@ -0,0 +1,310 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模拟行情服务器
+ * 在回环地址上提供与 WebSocketPriceSource 相同格式的推送（标记价格 + 精简行情），
+ * 价格为随机游走，用于离线测试
+ */
+public class MockTickerServer {
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final double VOLATILITY = 0.0005; // 每次推送的价格波动（标准差）
+
+    private final int port;
+    private final long intervalMs;
+    private final Map<String, Double> prices = new ConcurrentHashMap<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final Random random = new Random();
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService ticker;
+    private volatile boolean running = false;
+
+    public MockTickerServer(int port, long intervalMs, Map<String, BigDecimal> basePrices) {
+        this.port = port;
+        this.intervalMs = Math.max(10, intervalMs);
+        for (Map.Entry<String, BigDecimal> entry : basePrices.entrySet()) {
+            prices.put(entry.getKey().toUpperCase(Locale.ROOT), entry.getValue().doubleValue());
+        }
+    }
+
+    public void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptThread = new Thread(this::acceptLoop, "StockMockTicker-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StockMockTicker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        MessageUtils.logInfo("模拟行情服务器已启动: ws://127.0.0.1:" + getPort());
+    }
+
+    public void stop() {
+        running = false;
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+            serverSocket = null;
+        }
+        for (Client client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    /**
+     * 实际监听的端口（配置为0时由系统分配）
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> handleClient(socket), "StockMockTicker-Client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) {
+                    MessageUtils.logWarning("模拟行情服务器接受连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 完成 WebSocket 握手后读取客户端帧（只处理 ping/close）
+     */
+    private void handleClient(Socket socket) {
+        Client client = null;
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+            String requestLine = reader.readLine();
+            String key = null;
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    key = line.substring(colon + 1).trim();
+                }
+            }
+            if (requestLine == null || key == null) {
+                out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                socket.close();
+                return;
+            }
+            String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+            out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            client = new Client(socket, out, parseSubscriptions(requestLine));
+            clients.add(client);
+            // 握手请求只有请求头，BufferedReader 不会预读到帧数据
+            DataInputStream frames = new DataInputStream(in);
+            while (running) {
+                int b0 = frames.read();
+                if (b0 < 0) {
+                    break;
+                }
+                int opcode = b0 & 0x0F;
+                int b1 = frames.readUnsignedByte();
+                long length = b1 & 0x7F;
+                if (length == 126) {
+                    length = frames.readUnsignedShort();
+                } else if (length == 127) {
+                    length = frames.readLong();
+                }
+                byte[] mask = new byte[4];
+                if ((b1 & 0x80) != 0) {
+                    frames.readFully(mask);
+                }
+                byte[] payload = new byte[(int) length];
+                frames.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+                if (opcode == 0x8) {
+                    client.send(0x8, payload);
+                    break;
+                } else if (opcode == 0x9) {
+                    client.send(0xA, payload);
+                }
+            }
+        } catch (IOException e) {
+            // 客户端断开
+        } finally {
+            if (client != null) {
+                clients.remove(client);
+                client.close();
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 推送一轮价格
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Double> entry : prices.entrySet()) {
+            String symbol = entry.getKey();
+            double price = entry.getValue() * (1 + random.nextGaussian() * VOLATILITY);
+            entry.setValue(price);
+            double last = price * (1 + random.nextGaussian() * VOLATILITY / 5);
+            String stream = symbol.toLowerCase(Locale.ROOT);
+            String markMessage = "{\"stream\":\"" + stream + "@markPrice@1s\",\"data\":{\"e\":\"markPriceUpdate\",\"E\":"
+                + now + ",\"s\":\"" + symbol + "\",\"p\":\"" + format(price) + "\"}}";
+            String tickerMessage = "{\"stream\":\"" + stream + "@miniTicker\",\"data\":{\"e\":\"24hrMiniTicker\",\"E\":"
+                + now + ",\"s\":\"" + symbol + "\",\"c\":\"" + format(last) + "\"}}";
+            for (Client client : clients) {
+                if (client.isSubscribed(symbol)) {
+                    try {
+                        client.send(0x1, markMessage.getBytes(StandardCharsets.UTF_8));
+                        client.send(0x1, tickerMessage.getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        clients.remove(client);
+                        client.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static String format(double price) {
+        return BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * 从请求行解析订阅的交易对：GET /stream?streams=btcusdt@markPrice@1s/btcusdt@miniTicker HTTP/1.1
+     * 未指定时订阅全部
+     */
+    private static Set<String> parseSubscriptions(String requestLine) {
+        Set<String> symbols = new HashSet<>();
+        int index = requestLine.indexOf("streams=");
+        if (index < 0) {
+            return symbols;
+        }
+        int end = requestLine.indexOf(' ', index);
+        String streams = URLDecoder.decode(requestLine.substring(index + 8, end < 0 ? requestLine.length() : end),
+                                           StandardCharsets.UTF_8);
+        for (String stream : streams.split("/")) {
+            int at = stream.indexOf('@');
+            if (at > 0) {
+                symbols.add(stream.substring(0, at).toUpperCase(Locale.ROOT));
+            }
+        }
+        return symbols;
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 已连接的客户端
+     */
+    private static final class Client {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final Set<String> symbols;
+
+        Client(Socket socket, OutputStream out, Set<String> symbols) {
+            this.socket = socket;
+            this.out = out;
+            this.symbols = symbols;
+        }
+
+        boolean isSubscribed(String symbol) {
+            return symbols.isEmpty() || symbols.contains(symbol);
+        }
+
+        /**
+         * 发送一帧（服务端帧不加掩码）
+         */
+        synchronized void send(int opcode, byte[] payload) throws IOException {
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length & 0xFF);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) ((long) payload.length >>> shift) & 0xFF);
+                }
+            }
+            out.write(payload);
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package top.arctain.snowTerritory.stocks.price;
+
+/**
+ * 价格监听器
+ * 在价格源线程中同步调用，实现需要足够轻量且线程安全
+ */
+@FunctionalInterface
+public interface PriceListener {
+    
+    /**
+     * 最新成交价更新（定点数，8位小数）
+     */
+    void onLastPrice(String symbol, long timeMs, long price);
+    
+    /**
+     * 标记价格更新（定点数，8位小数）
+     */
+    default void onMarkPrice(String symbol, long timeMs, long price) {
+    }
+}
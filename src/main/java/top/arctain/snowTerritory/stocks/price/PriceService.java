@@ -1,5 +1,7 @@
 package top.arctain.snowTerritory.stocks.price;
 
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+
 import java.math.BigDecimal;
 
 /**
@@ -18,6 +20,22 @@ public interface PriceService {
      */
     BigDecimal getLastPrice(String symbol);
     
+    /**
+     * 获取标记价格（定点数，8位小数），无价格时返回0
+     */
+    default long getMarkPriceFixed(String symbol) {
+        long price = FixedPoint.fromDecimalOrInvalid(getMarkPrice(symbol));
+        return price == FixedPoint.INVALID ? 0 : price;
+    }
+    
+    /**
+     * 最近一次收到该交易对价格的时间（毫秒时间戳），从未收到时返回0
+     * 不记录时间的实现视为价格始终最新
+     */
+    default long getLastUpdateTime(String symbol) {
+        return System.currentTimeMillis();
+    }
+    
     /**
      * 启动价格更新服务
      */
@@ -0,0 +1,359 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import top.arctain.snowTerritory.stocks.utils.FixedPoint;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 历史行情回放价格源（预发与离线测试使用）
+ * 以内存映射方式读取录制的行情文件，按原始时间间隔（可加速）依次调用 updatePrice，
+ * 逐条解码映射缓冲区，不按行创建字符串。支持两种格式：
+ * <ul>
+ *   <li>二进制：文件头 "STKR" + int 版本(1) + short 交易对数量 + 各交易对(byte 长度 + UTF-8 名称)，
+ *       之后为定长记录 long 时间戳(毫秒) + short 交易对序号 + long 标记价格 + long 最新价（定点数，8 位小数，0 表示不变），大端序</li>
+ *   <li>CSV：每行 "时间戳(毫秒),交易对,标记价格[,最新价]"，# 开头为注释，首行表头及无效行跳过</li>
+ * </ul>
+ * 文件放完后按配置从头循环，否则停止更新，价格随之过期
+ */
+public class ReplayPriceSource extends AbstractPriceSource {
+
+    public static final int MAGIC = 0x53544B52; // "STKR"
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 8 + 2 + 8 + 8;
+
+    private static final long MAX_SLEEP_NANOS = 100_000_000L; // 单次最多等待 100 毫秒，便于及时响应停止
+
+    private final File file;
+    private final double speed; // 回放倍速，0 表示不等待、尽快回放
+    private final boolean loop;
+    private volatile Thread thread;
+
+    // 以下字段仅回放线程访问
+    private MappedByteBuffer buffer;
+    private boolean binary;
+    private int dataStart;
+    private String[] symbols;
+    private final List<byte[]> csvSymbolBytes = new ArrayList<>();
+    private final List<String> csvSymbols = new ArrayList<>();
+    private String tickSymbol;
+    private long tickTime;
+    private long tickMark;
+    private long tickLast;
+    private volatile long replayed;
+
+    public ReplayPriceSource(File file, double speed, boolean loop) {
+        this.file = file;
+        this.speed = Math.max(0, speed);
+        this.loop = loop;
+    }
+
+    @Override
+    public void start() {
+        if (thread != null) {
+            return;
+        }
+        Thread replayThread = new Thread(this::run, "StockPriceReplay");
+        replayThread.setDaemon(true);
+        thread = replayThread;
+        replayThread.start();
+        MessageUtils.logInfo("行情回放服务已启动，文件: " + file.getPath() + "，倍速: " + (speed > 0 ? speed : "不限"));
+    }
+
+    @Override
+    public void stop() {
+        Thread replayThread = thread;
+        thread = null;
+        if (replayThread != null) {
+            replayThread.interrupt();
+            try {
+                replayThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        MessageUtils.logInfo("行情回放服务已停止");
+    }
+
+    /**
+     * 已回放的行情条数
+     */
+    public long getReplayedCount() {
+        return replayed;
+    }
+
+    private void run() {
+        try {
+            open();
+        } catch (IOException e) {
+            MessageUtils.logError("打开行情回放文件失败: " + file.getPath() + " - " + e.getMessage());
+            thread = null;
+            return;
+        }
+        Thread self = Thread.currentThread();
+        while (replayOnce(self) && loop && thread == self) {
+            // 循环回放
+        }
+        if (thread == self) {
+            MessageUtils.logInfo("行情回放结束，共 " + replayed + " 条");
+            thread = null;
+        }
+        buffer = null;
+    }
+
+    /**
+     * 从头回放一遍文件，首条行情的时间戳对齐到当前时刻；文件中没有有效行情时返回 false
+     */
+    private boolean replayOnce(Thread self) {
+        buffer.position(dataStart);
+        long firstTick = Long.MIN_VALUE;
+        long startNanos = 0;
+        while (thread == self && nextTick()) {
+            if (firstTick == Long.MIN_VALUE) {
+                firstTick = tickTime;
+                startNanos = System.nanoTime();
+            } else if (speed > 0 && !await(startNanos + (long) ((tickTime - firstTick) * 1_000_000L / speed), self)) {
+                return true;
+            }
+            if (tickSymbol != null && symbolsToUpdate.contains(tickSymbol)) {
+                updatePrice(tickSymbol,
+                            tickMark > 0 ? FixedPoint.toDecimal(tickMark) : null,
+                            tickLast > 0 ? FixedPoint.toDecimal(tickLast) : null);
+            }
+            replayed++;
+        }
+        return firstTick != Long.MIN_VALUE;
+    }
+
+    /**
+     * 等待到目标时刻，期间被停止时返回 false
+     */
+    private boolean await(long deadlineNanos, Thread self) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (thread != self || Thread.interrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(remaining, MAX_SLEEP_NANOS));
+        }
+        return true;
+    }
+
+    private void open() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("文件超过 2GB，请拆分后回放");
+            }
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        binary = buffer.remaining() >= 4 && buffer.getInt(0) == MAGIC;
+        if (binary) {
+            readHeader();
+        } else {
+            dataStart = 0;
+        }
+    }
+
+    private void readHeader() throws IOException {
+        buffer.position(4);
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的回放文件版本: " + version);
+        }
+        int count = buffer.getShort() & 0xFFFF;
+        symbols = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.get() & 0xFF];
+            buffer.get(name);
+            symbols[i] = new String(name, StandardCharsets.UTF_8).toUpperCase();
+        }
+        dataStart = buffer.position();
+    }
+
+    /**
+     * 解码下一条行情到 tick* 字段，文件结束时返回 false
+     */
+    private boolean nextTick() {
+        return binary ? nextBinaryTick() : nextCsvTick();
+    }
+
+    private boolean nextBinaryTick() {
+        if (buffer.remaining() < RECORD_SIZE) {
+            return false;
+        }
+        tickTime = buffer.getLong();
+        int index = buffer.getShort() & 0xFFFF;
+        tickMark = buffer.getLong();
+        tickLast = buffer.getLong();
+        tickSymbol = index < symbols.length ? symbols[index] : null;
+        return true;
+    }
+
+    private boolean nextCsvTick() {
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            int end = start;
+            int limit = buffer.limit();
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            buffer.position(end < limit ? end + 1 : limit);
+            if (parseCsvLine(start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 就地解析 [start, end) 范围的一行，无效行返回 false
+     */
+    private boolean parseCsvLine(int start, int end) {
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--; // 去掉 \r 与行尾空白
+        }
+        if (start == end || buffer.get(start) == '#') {
+            return false;
+        }
+        int comma1 = indexOf(',', start, end);
+        int comma2 = comma1 < 0 ? -1 : indexOf(',', comma1 + 1, end);
+        if (comma2 < 0) {
+            return false;
+        }
+        int comma3 = indexOf(',', comma2 + 1, end);
+        long time = parseLong(start, comma1);
+        long mark = parseFixed(comma2 + 1, comma3 < 0 ? end : comma3);
+        long last = comma3 < 0 ? 0 : parseFixed(comma3 + 1, end);
+        if (time < 0 || mark == FixedPoint.INVALID || last == FixedPoint.INVALID) {
+            return false;
+        }
+        tickTime = time;
+        tickSymbol = csvSymbol(comma1 + 1, comma2);
+        tickMark = mark;
+        tickLast = last;
+        return true;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解析非负整数，无效时返回 -1
+     */
+    private long parseLong(int from, int to) {
+        from = skipSpaces(from, to);
+        to = trimSpaces(from, to);
+        if (from == to || to - from > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * 解析非负小数为定点数（超出精度的位数截断），空字段返回 0，无效时返回 INVALID
+     */
+    private long parseFixed(int from, int to) {
+        from = skipSpaces(from, to);
+        to = trimSpaces(from, to);
+        if (from == to) {
+            return 0;
+        }
+        long integer = 0;
+        long fraction = 0;
+        int decimals = -1; // 小数点后已读位数，-1 表示尚未遇到小数点
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return FixedPoint.INVALID;
+            }
+            if (decimals < 0) {
+                if (integer > (Long.MAX_VALUE / FixedPoint.SCALE - digit) / 10) {
+                    return FixedPoint.INVALID;
+                }
+                integer = integer * 10 + digit;
+            } else if (decimals < FixedPoint.DECIMALS) {
+                fraction = fraction * 10 + digit;
+                decimals++;
+            }
+        }
+        for (int i = Math.max(decimals, 0); i < FixedPoint.DECIMALS; i++) {
+            fraction *= 10;
+        }
+        return integer * FixedPoint.SCALE + fraction;
+    }
+
+    private int skipSpaces(int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimSpaces(int from, int to) {
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * 查找交易对名称，只有首次出现的交易对才创建字符串
+     */
+    private String csvSymbol(int from, int to) {
+        from = skipSpaces(from, to);
+        to = trimSpaces(from, to);
+        int length = to - from;
+        for (int i = 0; i < csvSymbolBytes.size(); i++) {
+            byte[] name = csvSymbolBytes.get(i);
+            if (name.length == length && matches(name, from)) {
+                return csvSymbols.get(i);
+            }
+        }
+        byte[] name = new byte[length];
+        buffer.get(from, name);
+        csvSymbolBytes.add(name);
+        String symbol = new String(name, StandardCharsets.UTF_8).toUpperCase();
+        csvSymbols.add(symbol);
+        return symbol;
+    }
+
+    private boolean matches(byte[] name, int from) {
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(from + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
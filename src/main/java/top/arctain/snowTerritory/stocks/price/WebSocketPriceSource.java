@@ -0,0 +1,267 @@
+package top.arctain.snowTerritory.stocks.price;
+
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 推送式价格源（WebSocket）
+ * 保持一条长连接订阅标记价格与最新成交价推送（Binance 合约组合流格式），
+ * 每条推送即时更新价格；断线或长时间无消息时按指数退避重连
+ */
+public class WebSocketPriceSource extends AbstractPriceSource {
+
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final String streamUrl;        // 如 wss://fstream.binance.com
+    private final long staleTimeoutMs;     // 超过该时间无消息视为断线
+    private final HttpClient httpClient;
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean(false);
+    private ScheduledExecutorService scheduler;
+    private volatile WebSocket webSocket;
+    private volatile int connectionId;     // 当前连接编号，旧连接的回调会被忽略
+    private volatile long lastMessageTime;
+    private volatile boolean running = false;
+    private long backoffMs = INITIAL_BACKOFF_MS;
+
+    public WebSocketPriceSource(String streamUrl, long staleTimeoutMs) {
+        this.streamUrl = streamUrl.endsWith("/") ? streamUrl.substring(0, streamUrl.length() - 1) : streamUrl;
+        this.staleTimeoutMs = staleTimeoutMs;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+    }
+
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StockPriceStream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::connect);
+        long checkPeriod = Math.max(1000, staleTimeoutMs / 2);
+        scheduler.scheduleWithFixedDelay(this::checkStale, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+        MessageUtils.logInfo("推送价格服务已启动，地址: " + streamUrl);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        WebSocket current = webSocket;
+        webSocket = null;
+        if (current != null) {
+            current.abort();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        MessageUtils.logInfo("推送价格服务已停止");
+    }
+
+    /**
+     * 建立连接（在调度线程中执行）
+     */
+    private void connect() {
+        if (!running) {
+            return;
+        }
+        if (symbolsToUpdate.isEmpty()) {
+            MessageUtils.logWarning("推送价格服务没有需要订阅的交易对");
+            return;
+        }
+        int id = ++connectionId;
+        URI uri = URI.create(streamUrl + "/stream?streams=" + buildStreams());
+        httpClient.newWebSocketBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .buildAsync(uri, new Listener(id))
+            .whenComplete((ws, error) -> {
+                if (error != null) {
+                    scheduleReconnect(id, "连接失败: " + rootMessage(error));
+                    return;
+                }
+                if (!running || id != connectionId) {
+                    ws.abort();
+                    return;
+                }
+                webSocket = ws;
+                lastMessageTime = System.currentTimeMillis();
+                synchronized (this) {
+                    backoffMs = INITIAL_BACKOFF_MS;
+                }
+                MessageUtils.logInfo("推送价格服务已连接，订阅交易对: " + symbolsToUpdate.size());
+            });
+    }
+
+    /**
+     * 订阅流：每个交易对的标记价格（1秒）与精简行情（最新成交价）
+     */
+    private String buildStreams() {
+        StringBuilder streams = new StringBuilder();
+        for (String symbol : symbolsToUpdate) {
+            String name = symbol.toLowerCase(Locale.ROOT);
+            if (streams.length() > 0) {
+                streams.append('/');
+            }
+            streams.append(name).append("@markPrice@1s/").append(name).append("@miniTicker");
+        }
+        return streams.toString();
+    }
+
+    /**
+     * 断线后按指数退避安排重连，同一连接只安排一次
+     */
+    private void scheduleReconnect(int id, String reason) {
+        if (!running || id != connectionId || !reconnectScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        webSocket = null;
+        long delay;
+        synchronized (this) {
+            delay = backoffMs;
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+        MessageUtils.logWarning("推送价格连接断开（" + reason + "），" + (delay / 1000.0) + " 秒后重连");
+        try {
+            scheduler.schedule(() -> {
+                reconnectScheduled.set(false);
+                connect();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // 已停止
+            reconnectScheduled.set(false);
+        }
+    }
+
+    /**
+     * 长时间未收到消息时主动断开并重连
+     */
+    private void checkStale() {
+        WebSocket current = webSocket;
+        if (current == null || System.currentTimeMillis() - lastMessageTime <= staleTimeoutMs) {
+            return;
+        }
+        int id = connectionId;
+        current.abort();
+        scheduleReconnect(id, "超过 " + (staleTimeoutMs / 1000) + " 秒未收到价格");
+    }
+
+    /**
+     * 处理一条推送：{"stream":"btcusdt@markPrice@1s","data":{"e":"markPriceUpdate","s":"BTCUSDT","p":"..."}}
+     */
+    void handleMessage(String message) {
+        lastMessageTime = System.currentTimeMillis();
+        String event = null;
+        String symbol = null;
+        String markPrice = null;
+        String lastPrice = null;
+        try {
+            // 只读取 data 对象中的字段
+            JsonTokenizer tokenizer = new JsonTokenizer(new StringReader(message));
+            boolean inData = false;
+            String field = null;
+            JsonTokenizer.Token token;
+            while ((token = tokenizer.next()) != JsonTokenizer.Token.END) {
+                if (token == JsonTokenizer.Token.NAME) {
+                    if (tokenizer.depth() == 1) {
+                        inData = "data".equals(tokenizer.text());
+                    }
+                    field = tokenizer.text();
+                } else if ((token == JsonTokenizer.Token.STRING || token == JsonTokenizer.Token.NUMBER)
+                           && inData && tokenizer.depth() == 2 && field != null) {
+                    switch (field) {
+                        case "e": event = tokenizer.text(); break;
+                        case "s": symbol = tokenizer.text(); break;
+                        case "p": markPrice = tokenizer.text(); break;
+                        case "c": lastPrice = tokenizer.text(); break;
+                        default: break;
+                    }
+                    field = null;
+                }
+            }
+        } catch (IOException e) {
+            // 忽略格式错误的推送
+            return;
+        }
+        if (event == null || symbol == null || !symbolsToUpdate.contains(symbol)) {
+            return;
+        }
+        try {
+            if ("markPriceUpdate".equals(event) && markPrice != null) {
+                updatePrice(symbol, new BigDecimal(markPrice), null);
+            } else if ("24hrMiniTicker".equals(event) && lastPrice != null) {
+                updatePrice(symbol, null, new BigDecimal(lastPrice));
+            }
+        } catch (NumberFormatException e) {
+            // 忽略格式错误的推送
+        }
+    }
+
+    private static String rootMessage(Throwable error) {
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getClass().getSimpleName() + (error.getMessage() != null ? " - " + error.getMessage() : "");
+    }
+
+    /**
+     * 单条连接的监听器
+     */
+    private final class Listener implements WebSocket.Listener {
+
+        private final int id;
+        private final StringBuilder buffer = new StringBuilder();
+
+        Listener(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            buffer.append(data);
+            if (last) {
+                if (id == connectionId) {
+                    handleMessage(buffer.toString());
+                }
+                buffer.setLength(0);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            scheduleReconnect(id, "服务器关闭连接: " + statusCode);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            scheduleReconnect(id, rootMessage(error));
+        }
+    }
+}
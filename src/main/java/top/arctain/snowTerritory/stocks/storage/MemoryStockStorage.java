@@ -2,10 +2,13 @@ package top.arctain.snowTerritory.stocks.storage;
 
 import top.arctain.snowTerritory.stocks.model.Account;
 import top.arctain.snowTerritory.stocks.model.Order;
+import top.arctain.snowTerritory.stocks.model.OrderType;
 import top.arctain.snowTerritory.stocks.model.Position;
 
+import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * 内存存储实现（使用ConcurrentHashMap）
@@ -15,61 +18,221 @@ public class MemoryStockStorage implements StockStorage {
     // 账户存储：playerId -> Account
     private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
     
-    // 仓位存储：playerId_symbol -> Position
-    private final Map<String, Position> positions = new ConcurrentHashMap<>();
+    // 仓位存储：(playerId, symbol) -> Position
+    private final Map<PositionKey, Position> positions = new ConcurrentHashMap<>();
     
-    // 订单存储：orderId -> Order
+    // 玩家仓位索引：playerId -> symbol -> Position（与 positions 同步维护）
+    private final Map<UUID, Map<String, Position>> playerPositions = new ConcurrentHashMap<>();
+    
+    // 订单存储：orderId -> Order（只保留近期窗口内的订单和仍在挂单中的订单）
     private final Map<Long, Order> orders = new ConcurrentHashMap<>();
     
-    // 玩家订单索引：playerId -> List<orderId>
-    private final Map<UUID, List<Long>> playerOrders = new ConcurrentHashMap<>();
+    // 玩家近期订单：playerId -> 按时间先后排列的有界队列（交易分片写入、主线程读取，访问时锁住队列）
+    private final Map<UUID, ArrayDeque<Order>> recentOrders = new ConcurrentHashMap<>();
+    
+    // 已移出近期窗口但仍在挂单中的限价单，成交或撤销后再归档
+    private final Map<Long, Order> pinnedOrders = new ConcurrentHashMap<>();
+    
+    private final SnowflakeIdGenerator orderIds; // 多个交易分片并发分配
+    private final int orderHotWindow; // 每个玩家在内存中保留的订单数量
+    
+    public MemoryStockStorage() {
+        this(50);
+    }
+    
+    public MemoryStockStorage(int orderHotWindow) {
+        this(orderHotWindow, 0);
+    }
+    
+    public MemoryStockStorage(int orderHotWindow, int nodeId) {
+        this.orderHotWindow = Math.max(1, orderHotWindow);
+        this.orderIds = new SnowflakeIdGenerator(nodeId);
+    }
     
-    private long nextOrderId = 1;
+    @Override
+    public void init() {
+        // 内存存储无需初始化
+    }
+    
+    @Override
+    public void close() {
+        // 内存存储无需关闭
+    }
     
     @Override
     public Account getAccount(UUID playerId) {
         return accounts.computeIfAbsent(playerId, Account::new);
     }
     
+    /**
+     * 账户是否已存在
+     */
+    protected boolean hasAccount(UUID playerId) {
+        return accounts.containsKey(playerId);
+    }
+    
     @Override
     public void saveAccount(Account account) {
         accounts.put(account.getPlayerId(), account);
     }
     
+    @Override
+    public void saveAccounts(Collection<Account> accounts) {
+        for (Account account : accounts) {
+            this.accounts.put(account.getPlayerId(), account);
+        }
+    }
+    
     @Override
     public Position getPosition(UUID playerId, String symbol) {
-        String key = playerId.toString() + "_" + symbol;
-        return positions.get(key);
+        Map<String, Position> symbols = playerPositions.get(playerId);
+        return symbols != null ? symbols.get(symbol) : null;
     }
     
     @Override
     public void savePosition(Position position) {
-        String key = position.getPlayerId().toString() + "_" + position.getSymbol();
-        positions.put(key, position);
+        positions.put(new PositionKey(position.getPlayerId(), position.getSymbol()), position);
+        playerPositions.computeIfAbsent(position.getPlayerId(), k -> new ConcurrentHashMap<>())
+            .put(position.getSymbol(), position);
     }
     
     @Override
     public void deletePosition(UUID playerId, String symbol) {
-        String key = playerId.toString() + "_" + symbol;
-        positions.remove(key);
+        positions.remove(new PositionKey(playerId, symbol));
+        Map<String, Position> symbols = playerPositions.get(playerId);
+        if (symbols != null) {
+            symbols.remove(symbol);
+            // 空索引留在原处，避免与同一玩家的并发 savePosition 竞争
+        }
     }
     
     @Override
     public List<Position> getAllPositions(UUID playerId) {
-        List<Position> result = new ArrayList<>();
-        String prefix = playerId.toString() + "_";
-        for (Map.Entry<String, Position> entry : positions.entrySet()) {
-            if (entry.getKey().startsWith(prefix)) {
-                result.add(entry.getValue());
+        Map<String, Position> symbols = playerPositions.get(playerId);
+        return symbols != null ? new ArrayList<>(symbols.values()) : new ArrayList<>();
+    }
+    
+    @Override
+    public void forEachPosition(Consumer<Position> consumer) {
+        positions.values().forEach(consumer);
+    }
+    
+    @Override
+    public void forEachAccount(Consumer<Account> consumer) {
+        accounts.values().forEach(consumer);
+    }
+    
+    @Override
+    public void forEachOpenOrder(Consumer<Order> consumer) {
+        for (Order order : orders.values()) {
+            if (order.getType() == OrderType.LIMIT && order.isActive()) {
+                consumer.accept(order);
             }
         }
+    }
+    
+    /**
+     * 获取全部账户（用于生成快照）
+     */
+    public List<Account> getAccountsSnapshot() {
+        return new ArrayList<>(accounts.values());
+    }
+    
+    /**
+     * 获取全部仓位（用于生成快照）
+     */
+    public List<Position> getPositionsSnapshot() {
+        return new ArrayList<>(positions.values());
+    }
+    
+    /**
+     * 获取仍在挂单中的限价单（用于生成快照）
+     */
+    public List<Order> getOpenOrdersSnapshot() {
+        List<Order> result = new ArrayList<>();
+        forEachOpenOrder(result::add);
         return result;
     }
     
+    /**
+     * 用快照内容替换当前账户、仓位与挂单
+     * 通过 save/delete 方法写入，子类可据此同步持久化；
+     * 快照之前创建、但快照中已不在挂单的订单视为已结束
+     */
+    public void restoreSnapshot(List<Account> snapshotAccounts, List<Position> snapshotPositions,
+                                List<Order> snapshotOrders, long snapshotOrderId) {
+        for (Position position : getPositionsSnapshot()) {
+            deletePosition(position.getPlayerId(), position.getSymbol());
+        }
+        for (Account account : snapshotAccounts) {
+            saveAccount(account);
+        }
+        for (Position position : snapshotPositions) {
+            savePosition(position);
+        }
+        Map<Long, Order> open = new HashMap<>();
+        for (Order order : snapshotOrders) {
+            open.put(order.getId(), order);
+        }
+        for (Order order : getOpenOrdersSnapshot()) {
+            if (order.getId() <= snapshotOrderId && !open.containsKey(order.getId())) {
+                order.cancel();
+                order.setReservedBalance(BigDecimal.ZERO);
+                saveOrder(order);
+            }
+        }
+        for (Order order : snapshotOrders) {
+            Order existing = orders.get(order.getId());
+            if (existing == null) {
+                saveOrder(order);
+                continue;
+            }
+            // 持久化的订单可能领先或落后于快照，以快照为准，之后的变化由日志回放补上
+            existing.setStatus(order.getStatus());
+            existing.setFilledQty(order.getFilledQty());
+            existing.setSettledQty(order.getSettledQty());
+            existing.setReservedBalance(order.getReservedBalance());
+            existing.setFillPrice(order.getFillPrice());
+            existing.setFee(order.getFee());
+            saveOrder(existing);
+        }
+        advanceOrderId(snapshotOrderId);
+    }
+    
     @Override
     public void saveOrder(Order order) {
-        orders.put(order.getId(), order);
-        playerOrders.computeIfAbsent(order.getPlayerId(), k -> new ArrayList<>()).add(order.getId());
+        if (orders.putIfAbsent(order.getId(), order) != null) {
+            // 限价单成交/撤销时会再次保存；已移出窗口的挂单结束后归档
+            if (!order.isActive() && pinnedOrders.remove(order.getId()) != null) {
+                orders.remove(order.getId());
+                archiveOrder(order);
+            }
+            return;
+        }
+        ArrayDeque<Order> recent = recentOrders.computeIfAbsent(order.getPlayerId(), k -> new ArrayDeque<>());
+        Order evicted = null;
+        synchronized (recent) {
+            recent.addLast(order);
+            if (recent.size() > orderHotWindow) {
+                evicted = recent.pollFirst();
+            }
+        }
+        if (evicted == null) {
+            return;
+        }
+        if (evicted.isActive()) {
+            pinnedOrders.put(evicted.getId(), evicted);
+        } else {
+            orders.remove(evicted.getId());
+            archiveOrder(evicted);
+        }
+    }
+    
+    /**
+     * 订单移出内存窗口且不再变化时调用
+     * 内存存储没有冷存储，直接丢弃；子类可据此写入归档
+     */
+    protected void archiveOrder(Order order) {
     }
     
     @Override
@@ -79,24 +242,72 @@ public class MemoryStockStorage implements StockStorage {
     
     @Override
     public List<Order> getOrders(UUID playerId, String symbol) {
-        List<Long> orderIds = playerOrders.getOrDefault(playerId, Collections.emptyList());
         List<Order> result = new ArrayList<>();
-        for (Long orderId : orderIds) {
-            Order order = orders.get(orderId);
-            if (order != null && (symbol == null || order.getSymbol().equals(symbol))) {
+        for (Order order : getRecentOrders(playerId)) {
+            if (symbol == null || order.getSymbol().equals(symbol)) {
+                result.add(order);
+            }
+        }
+        // 移出窗口的挂单早于窗口内全部订单，排在最后
+        for (Order order : pinnedOrders.values()) {
+            if (order.getPlayerId().equals(playerId) && (symbol == null || order.getSymbol().equals(symbol))) {
                 result.add(order);
             }
         }
-        // 按创建时间倒序
-        result.sort((a, b) -> Long.compare(b.getCreateTime(), a.getCreateTime()));
         return result;
     }
     
+    @Override
+    public List<Order> getOrderHistory(UUID playerId, int page, int pageSize) {
+        return page(getOrders(playerId, null), page, pageSize);
+    }
+    
+    /**
+     * 玩家近期窗口内的订单（按创建时间倒序，不含移出窗口的挂单）
+     */
+    protected List<Order> getRecentOrders(UUID playerId) {
+        ArrayDeque<Order> recent = recentOrders.get(playerId);
+        if (recent == null) {
+            return new ArrayList<>();
+        }
+        synchronized (recent) {
+            List<Order> result = new ArrayList<>(recent.size());
+            Iterator<Order> iterator = recent.descendingIterator();
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * 截取第 page 页（从0开始）
+     */
+    protected static List<Order> page(List<Order> orders, int page, int pageSize) {
+        int from = page * pageSize;
+        if (from >= orders.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(orders.subList(from, Math.min(orders.size(), from + pageSize)));
+    }
+    
+    @Override
+    public long nextOrderId() {
+        return orderIds.nextId();
+    }
+    
+    /**
+     * 最近分配的订单ID（写入快照，恢复时作为下界）
+     */
+    public long getLastOrderId() {
+        return orderIds.lastId();
+    }
+    
     /**
-     * 生成下一个订单ID
+     * 保证之后分配的订单ID排在给定ID之后（从持久化数据恢复时使用）
      */
-    public long getNextOrderId() {
-        return nextOrderId++;
+    protected void advanceOrderId(long orderId) {
+        orderIds.advancePast(orderId);
     }
 }
 
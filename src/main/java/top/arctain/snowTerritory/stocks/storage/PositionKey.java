@@ -0,0 +1,9 @@
+package top.arctain.snowTerritory.stocks.storage;
+
+import java.util.UUID;
+
+/**
+ * 仓位键（玩家 + 交易对）
+ */
+public record PositionKey(UUID playerId, String symbol) {
+}
@@ -0,0 +1,71 @@
+package top.arctain.snowTerritory.stocks.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间递增的 64 位ID生成器（Snowflake 结构）
+ * 1 位符号 | 41 位毫秒时间（自 2024-01-01 起，约 69 年）| 10 位节点ID | 12 位序号
+ * 时间与序号合并为一个只增不减的原子值，用 CAS 分配，热路径无锁；
+ * 同一毫秒内序号用尽或时钟回拨时继续沿用并推进逻辑时间，不等待也不重复。
+ * 重启后用已持久化的最大ID推进下界，保证不会与上次运行分配的ID冲突；
+ * 多台服务器共用数据时各自配置不同的节点ID
+ */
+public class SnowflakeIdGenerator {
+
+    public static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    private final AtomicLong state = new AtomicLong(); // (毫秒 << 12) | 序号
+
+    public SnowflakeIdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    public SnowflakeIdGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("节点ID超出范围 0-" + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    /**
+     * 分配下一个ID（线程安全，无锁）
+     */
+    public long nextId() {
+        long now = (clock.getAsLong() - EPOCH) << SEQUENCE_BITS;
+        while (true) {
+            long current = state.get();
+            long next = Math.max(current + 1, now);
+            if (state.compareAndSet(current, next)) {
+                return compose(next);
+            }
+        }
+    }
+
+    /**
+     * 最近分配的ID（尚未分配时为本节点的最小ID）
+     */
+    public long lastId() {
+        return compose(state.get());
+    }
+
+    /**
+     * 保证之后分配的ID的时间和序号都排在给定ID之后（从持久化数据恢复时使用，可以是任意节点分配的ID）
+     */
+    public void advancePast(long id) {
+        long floor = ((id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (id & SEQUENCE_MASK);
+        state.accumulateAndGet(floor, Math::max);
+    }
+
+    private long compose(long value) {
+        long timestamp = value >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (value & SEQUENCE_MASK);
+    }
+}
@@ -0,0 +1,625 @@
+package top.arctain.snowTerritory.stocks.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import top.arctain.snowTerritory.Main;
+import top.arctain.snowTerritory.stocks.model.*;
+import top.arctain.snowTerritory.utils.MessageUtils;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLite持久化存储实现
+ * 内存Map仍作为热读路径，写操作在调用线程中复制出不可变的行，由后台写线程定期批量落盘，
+ * 交易线程不会因磁盘IO阻塞。交易分片执行一条命令期间的保存组成一个批次，命令结束时整体交给写线程，
+ * 因此同一笔交易的账户与仓位变更总在同一个事务中落盘。订单表同时作为冷归档：
+ * 内存只保留每个玩家最近的订单，更早的历史按 (玩家, 时间) 索引分页读取
+ */
+public class SqliteStockStorage extends MemoryStockStorage {
+
+    private final HikariDataSource dataSource;
+    private final long flushIntervalMs;
+
+    // 当前线程所在命令的写入批次（交易分片之外的保存不在批次中，直接交给写线程）
+    private final ThreadLocal<PendingRows> batch = ThreadLocal.withInitial(PendingRows::new);
+    // 待落盘的行，后保存的覆盖先保存的；写线程落盘时整体换出
+    private final Object pendingLock = new Object();
+    private PendingRows pending = new PendingRows();
+    private final int orderHotWindow;
+
+    private static final String ORDER_COLUMNS = "id, player_uuid, symbol, side, type, qty, status, fill_price, fee, "
+                                                + "create_time, price, leverage, filled_qty, settled_qty, reserved_balance";
+
+    private ScheduledExecutorService writer;
+
+    public SqliteStockStorage(Main plugin, File dbFile, long flushIntervalMs, int orderHotWindow, int nodeId) {
+        super(orderHotWindow, nodeId);
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        config.setPoolName("ST-Stocks");
+        // SQLite 单写者，写线程只需一个连接
+        config.setMaximumPoolSize(1);
+        this.dataSource = new HikariDataSource(config);
+        this.flushIntervalMs = flushIntervalMs;
+        this.orderHotWindow = Math.max(1, orderHotWindow);
+    }
+
+    @Override
+    public void init() {
+        createTables();
+        loadAll();
+
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StockStorageWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        // 关闭前最后一次落盘
+        flush();
+        dataSource.close();
+    }
+
+    @Override
+    public Account getAccount(UUID playerId) {
+        // 首次访问会创建新账户，同样需要落盘
+        boolean exists = hasAccount(playerId);
+        Account account = super.getAccount(playerId);
+        if (!exists) {
+            stage(AccountRow.of(account));
+        }
+        return account;
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        super.saveAccount(account);
+        stage(AccountRow.of(account));
+    }
+
+    @Override
+    public void saveAccounts(Collection<Account> accounts) {
+        super.saveAccounts(accounts);
+        for (Account account : accounts) {
+            stage(AccountRow.of(account));
+        }
+    }
+
+    @Override
+    public void savePosition(Position position) {
+        super.savePosition(position);
+        stage(PositionRow.of(position));
+    }
+
+    @Override
+    public void deletePosition(UUID playerId, String symbol) {
+        super.deletePosition(playerId, symbol);
+        stage(PositionRow.deleted(new PositionKey(playerId, symbol)));
+    }
+
+    @Override
+    public void saveOrder(Order order) {
+        super.saveOrder(order);
+        stage(OrderRow.of(order));
+    }
+
+    @Override
+    public void beginBatch() {
+        batch.get().depth++;
+    }
+
+    @Override
+    public void endBatch() {
+        PendingRows rows = batch.get();
+        if (--rows.depth > 0 || rows.isEmpty()) {
+            return;
+        }
+        synchronized (pendingLock) {
+            pending.merge(rows);
+        }
+        rows.clear();
+    }
+
+    private void stage(AccountRow row) {
+        PendingRows rows = batch.get();
+        if (rows.depth > 0) {
+            rows.accounts.put(row.playerId(), row);
+            return;
+        }
+        synchronized (pendingLock) {
+            pending.accounts.put(row.playerId(), row);
+        }
+    }
+
+    private void stage(PositionRow row) {
+        PendingRows rows = batch.get();
+        if (rows.depth > 0) {
+            rows.positions.put(row.key(), row);
+            return;
+        }
+        synchronized (pendingLock) {
+            pending.positions.put(row.key(), row);
+        }
+    }
+
+    private void stage(OrderRow row) {
+        PendingRows rows = batch.get();
+        if (rows.depth > 0) {
+            rows.orders.put(row.id(), row);
+            return;
+        }
+        synchronized (pendingLock) {
+            pending.orders.put(row.id(), row);
+        }
+    }
+
+    @Override
+    public List<Order> getOrderHistory(UUID playerId, int page, int pageSize) {
+        List<Order> recent = getRecentOrders(playerId);
+        int from = page * pageSize;
+        if (from + pageSize <= recent.size()) {
+            return page(recent, page, pageSize);
+        }
+        List<Order> result = page(recent, page, pageSize);
+        // 先落盘，刚移出窗口的订单在冷数据中可见
+        flush();
+        long beforeId = recent.isEmpty() ? Long.MAX_VALUE : recent.get(recent.size() - 1).getId();
+        int coldOffset = Math.max(0, from - recent.size());
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                 "SELECT " + ORDER_COLUMNS + " FROM st_stocks_orders WHERE player_uuid = ? AND id < ? "
+                 + "ORDER BY create_time DESC, id DESC LIMIT ? OFFSET ?")) {
+            ps.setString(1, playerId.toString());
+            ps.setLong(2, beforeId);
+            ps.setInt(3, pageSize - result.size());
+            ps.setInt(4, coldOffset);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(readOrder(rs));
+                }
+            }
+        } catch (SQLException e) {
+            MessageUtils.logError("读取订单历史失败: " + e.getMessage());
+        }
+        return result;
+    }
+
+    private void createTables() {
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS st_stocks_accounts (
+                        player_uuid CHAR(36) PRIMARY KEY,
+                        wallet_balance TEXT NOT NULL,
+                        available_balance TEXT NOT NULL,
+                        equity TEXT NOT NULL,
+                        margin_mode VARCHAR(16) NOT NULL,
+                        realized_pnl TEXT NOT NULL DEFAULT '0'
+                    );
+                    """);
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS st_stocks_positions (
+                        player_uuid CHAR(36) NOT NULL,
+                        symbol VARCHAR(32) NOT NULL,
+                        side VARCHAR(8) NOT NULL,
+                        qty TEXT NOT NULL,
+                        entry_price TEXT NOT NULL,
+                        leverage INTEGER NOT NULL,
+                        isolated_margin TEXT NOT NULL,
+                        stop_loss TEXT,
+                        take_profit TEXT,
+                        PRIMARY KEY (player_uuid, symbol)
+                    );
+                    """);
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS st_stocks_orders (
+                        id INTEGER PRIMARY KEY,
+                        player_uuid CHAR(36) NOT NULL,
+                        symbol VARCHAR(32) NOT NULL,
+                        side VARCHAR(8) NOT NULL,
+                        type VARCHAR(16) NOT NULL,
+                        qty TEXT NOT NULL,
+                        status VARCHAR(16) NOT NULL,
+                        fill_price TEXT NOT NULL,
+                        fee TEXT NOT NULL,
+                        create_time INTEGER NOT NULL,
+                        price TEXT,
+                        leverage INTEGER NOT NULL DEFAULT 0,
+                        filled_qty TEXT NOT NULL DEFAULT '0',
+                        settled_qty TEXT NOT NULL DEFAULT '0',
+                        reserved_balance TEXT
+                    );
+                    """);
+            // 旧版本的表没有止盈止损、限价单、已实现盈亏字段
+            addColumnIfMissing(conn, "st_stocks_accounts", "realized_pnl", "TEXT NOT NULL DEFAULT '0'");
+            addColumnIfMissing(conn, "st_stocks_positions", "stop_loss", "TEXT");
+            addColumnIfMissing(conn, "st_stocks_positions", "take_profit", "TEXT");
+            addColumnIfMissing(conn, "st_stocks_orders", "price", "TEXT");
+            addColumnIfMissing(conn, "st_stocks_orders", "leverage", "INTEGER NOT NULL DEFAULT 0");
+            addColumnIfMissing(conn, "st_stocks_orders", "filled_qty", "TEXT NOT NULL DEFAULT '0'");
+            addColumnIfMissing(conn, "st_stocks_orders", "settled_qty", "TEXT NOT NULL DEFAULT '0'");
+            addColumnIfMissing(conn, "st_stocks_orders", "reserved_balance", "TEXT");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_st_stocks_orders_player ON st_stocks_orders (player_uuid, create_time)");
+        } catch (SQLException e) {
+            MessageUtils.logError("初始化 stocks 表失败: " + e.getMessage());
+        }
+    }
+
+    private static Order readOrder(ResultSet rs) throws SQLException {
+        Order order = new Order(
+            rs.getLong("id"),
+            UUID.fromString(rs.getString("player_uuid")),
+            rs.getString("symbol"),
+            OrderSide.valueOf(rs.getString("side")),
+            OrderType.valueOf(rs.getString("type")),
+            new BigDecimal(rs.getString("qty")),
+            rs.getLong("create_time"));
+        order.setStatus(OrderStatus.valueOf(rs.getString("status")));
+        order.setFillPrice(new BigDecimal(rs.getString("fill_price")));
+        order.setFee(new BigDecimal(rs.getString("fee")));
+        order.setPrice(getDecimalOrNull(rs, "price"));
+        order.setLeverage(rs.getInt("leverage"));
+        order.setFilledQty(new BigDecimal(rs.getString("filled_qty")));
+        order.setSettledQty(new BigDecimal(rs.getString("settled_qty")));
+        BigDecimal reserved = getDecimalOrNull(rs, "reserved_balance");
+        order.setReservedBalance(reserved != null ? reserved : BigDecimal.ZERO);
+        return order;
+    }
+
+    private static BigDecimal getDecimalOrNull(ResultSet rs, String column) throws SQLException {
+        String value = rs.getString(column);
+        return value != null ? new BigDecimal(value) : null;
+    }
+
+    private static String toPlainStringOrNull(BigDecimal value) {
+        return value != null ? value.toPlainString() : null;
+    }
+
+    private static void addColumnIfMissing(Connection conn, String table, String column, String definition)
+            throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /**
+     * 启动时将全部数据加载到内存（直接写入父类Map，不标记脏数据）
+     */
+    private void loadAll() {
+        int accountCount = 0;
+        int positionCount = 0;
+        int orderCount = 0;
+        long maxOrderId = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT player_uuid, wallet_balance, available_balance, equity, margin_mode, realized_pnl "
+                    + "FROM st_stocks_accounts");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Account account = new Account(UUID.fromString(rs.getString("player_uuid")),
+                                                  new BigDecimal(rs.getString("wallet_balance")));
+                    account.setAvailableBalance(new BigDecimal(rs.getString("available_balance")));
+                    account.setEquity(new BigDecimal(rs.getString("equity")));
+                    account.setMarginMode(rs.getString("margin_mode"));
+                    account.setRealizedPnl(new BigDecimal(rs.getString("realized_pnl")));
+                    super.saveAccount(account);
+                    accountCount++;
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT player_uuid, symbol, side, qty, entry_price, leverage, isolated_margin, stop_loss, take_profit "
+                    + "FROM st_stocks_positions");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Position position = new Position(
+                        UUID.fromString(rs.getString("player_uuid")),
+                        rs.getString("symbol"),
+                        OrderSide.valueOf(rs.getString("side")),
+                        new BigDecimal(rs.getString("qty")),
+                        new BigDecimal(rs.getString("entry_price")),
+                        rs.getInt("leverage"),
+                        new BigDecimal(rs.getString("isolated_margin")));
+                    position.setStopLossPrice(getDecimalOrNull(rs, "stop_loss"));
+                    position.setTakeProfitPrice(getDecimalOrNull(rs, "take_profit"));
+                    super.savePosition(position);
+                    positionCount++;
+                }
+            }
+
+            // 挂单连同冻结资金一起保存，启动后由交易引擎重建订单簿；
+            // 旧版本没有记录冻结资金的挂单无法恢复，视为已撤销
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("UPDATE st_stocks_orders SET status = 'CANCELLED' "
+                                 + "WHERE status IN ('OPEN', 'PARTIALLY_FILLED') AND reserved_balance IS NULL");
+                try (ResultSet rs = st.executeQuery("SELECT MAX(id) FROM st_stocks_orders")) {
+                    if (rs.next()) {
+                        maxOrderId = rs.getLong(1);
+                    }
+                }
+            }
+
+            // 每个玩家只加载最近的订单和仍在挂单中的订单，更早的留在磁盘上按需分页读取
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT " + ORDER_COLUMNS + " FROM (SELECT *, ROW_NUMBER() OVER "
+                    + "(PARTITION BY player_uuid ORDER BY id DESC) AS recent_rank FROM st_stocks_orders) "
+                    + "WHERE recent_rank <= ? OR status IN ('OPEN', 'PARTIALLY_FILLED') ORDER BY id")) {
+                ps.setInt(1, orderHotWindow);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        super.saveOrder(readOrder(rs));
+                        orderCount++;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            MessageUtils.logError("加载 stocks 数据失败: " + e.getMessage());
+        }
+        advanceOrderId(maxOrderId);
+        MessageUtils.logInfo("已加载 " + accountCount + " 个账户, " + positionCount + " 个仓位, " + orderCount + " 条订单");
+    }
+
+    /**
+     * 将待落盘的行在一个事务内批量写出
+     */
+    private synchronized void flush() {
+        PendingRows rows;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            // 整体换出，写出期间完成的批次进入新的集合，下一轮再写
+            rows = pending;
+            pending = new PendingRows();
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                writeAccounts(conn, rows.accounts.values());
+                writePositions(conn, rows.positions.values());
+                writeOrders(conn, rows.orders.values());
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // 写入失败时放回，已有更新的行保留较新的版本，等待下次重试
+            synchronized (pendingLock) {
+                pending.mergeOlder(rows);
+            }
+            MessageUtils.logError("写入 stocks 数据失败: " + e.getMessage());
+        }
+    }
+
+    private void writeAccounts(Connection conn, Collection<AccountRow> accounts) throws SQLException {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("""
+                INSERT INTO st_stocks_accounts (player_uuid, wallet_balance, available_balance, equity, margin_mode,
+                                                realized_pnl)
+                VALUES (?, ?, ?, ?, ?, ?)
+                ON CONFLICT(player_uuid) DO UPDATE SET
+                    wallet_balance = excluded.wallet_balance,
+                    available_balance = excluded.available_balance,
+                    equity = excluded.equity,
+                    margin_mode = excluded.margin_mode,
+                    realized_pnl = excluded.realized_pnl
+                """)) {
+            for (AccountRow account : accounts) {
+                ps.setString(1, account.playerId().toString());
+                ps.setString(2, account.walletBalance().toPlainString());
+                ps.setString(3, account.availableBalance().toPlainString());
+                ps.setString(4, account.equity().toPlainString());
+                ps.setString(5, account.marginMode());
+                ps.setString(6, account.realizedPnl().toPlainString());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void writePositions(Connection conn, Collection<PositionRow> positions) throws SQLException {
+        if (positions.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement upsert = conn.prepareStatement("""
+                INSERT INTO st_stocks_positions (player_uuid, symbol, side, qty, entry_price, leverage, isolated_margin,
+                                                 stop_loss, take_profit)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT(player_uuid, symbol) DO UPDATE SET
+                    side = excluded.side,
+                    qty = excluded.qty,
+                    entry_price = excluded.entry_price,
+                    leverage = excluded.leverage,
+                    isolated_margin = excluded.isolated_margin,
+                    stop_loss = excluded.stop_loss,
+                    take_profit = excluded.take_profit
+                """);
+             PreparedStatement delete = conn.prepareStatement(
+                 "DELETE FROM st_stocks_positions WHERE player_uuid = ? AND symbol = ?")) {
+            for (PositionRow position : positions) {
+                PositionKey key = position.key();
+                if (position.deleted()) {
+                    delete.setString(1, key.playerId().toString());
+                    delete.setString(2, key.symbol());
+                    delete.addBatch();
+                } else {
+                    upsert.setString(1, key.playerId().toString());
+                    upsert.setString(2, key.symbol());
+                    upsert.setString(3, position.side().name());
+                    upsert.setString(4, position.qty().toPlainString());
+                    upsert.setString(5, position.entryPrice().toPlainString());
+                    upsert.setInt(6, position.leverage());
+                    upsert.setString(7, position.isolatedMargin().toPlainString());
+                    upsert.setString(8, toPlainStringOrNull(position.stopLossPrice()));
+                    upsert.setString(9, toPlainStringOrNull(position.takeProfitPrice()));
+                    upsert.addBatch();
+                }
+            }
+            upsert.executeBatch();
+            delete.executeBatch();
+        }
+    }
+
+    private void writeOrders(Connection conn, Collection<OrderRow> orders) throws SQLException {
+        if (orders.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("""
+                INSERT INTO st_stocks_orders (id, player_uuid, symbol, side, type, qty, status, fill_price, fee, create_time,
+                                              price, leverage, filled_qty, settled_qty, reserved_balance)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT(id) DO UPDATE SET
+                    qty = excluded.qty,
+                    status = excluded.status,
+                    fill_price = excluded.fill_price,
+                    fee = excluded.fee,
+                    filled_qty = excluded.filled_qty,
+                    settled_qty = excluded.settled_qty,
+                    reserved_balance = excluded.reserved_balance
+                """)) {
+            for (OrderRow order : orders) {
+                ps.setLong(1, order.id());
+                ps.setString(2, order.playerId().toString());
+                ps.setString(3, order.symbol());
+                ps.setString(4, order.side().name());
+                ps.setString(5, order.type().name());
+                ps.setString(6, order.qty().toPlainString());
+                ps.setString(7, order.status().name());
+                ps.setString(8, order.fillPrice().toPlainString());
+                ps.setString(9, order.fee().toPlainString());
+                ps.setLong(10, order.createTime());
+                ps.setString(11, toPlainStringOrNull(order.price()));
+                ps.setInt(12, order.leverage());
+                ps.setString(13, order.filledQty().toPlainString());
+                ps.setString(14, order.settledQty().toPlainString());
+                ps.setString(15, order.reservedBalance().toPlainString());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * 待落盘的行：线程本地的命令批次，或等待写线程的全局集合
+     */
+    private static final class PendingRows {
+        final Map<UUID, AccountRow> accounts = new LinkedHashMap<>();
+        final Map<PositionKey, PositionRow> positions = new LinkedHashMap<>();
+        final Map<Long, OrderRow> orders = new LinkedHashMap<>();
+        int depth; // 批次嵌套深度（仅线程本地批次使用）
+
+        boolean isEmpty() {
+            return accounts.isEmpty() && positions.isEmpty() && orders.isEmpty();
+        }
+
+        /**
+         * 合入较新的行
+         */
+        void merge(PendingRows newer) {
+            accounts.putAll(newer.accounts);
+            positions.putAll(newer.positions);
+            orders.putAll(newer.orders);
+        }
+
+        /**
+         * 合入较旧的行（写入失败放回时使用），不覆盖已有的较新版本
+         */
+        void mergeOlder(PendingRows older) {
+            older.accounts.forEach(accounts::putIfAbsent);
+            older.positions.forEach(positions::putIfAbsent);
+            older.orders.forEach(orders::putIfAbsent);
+        }
+
+        void clear() {
+            accounts.clear();
+            positions.clear();
+            orders.clear();
+        }
+    }
+
+    /**
+     * 账户行的不可变副本（保存时在调用线程中复制）
+     */
+    private record AccountRow(UUID playerId, BigDecimal walletBalance, BigDecimal availableBalance,
+                              BigDecimal equity, String marginMode, BigDecimal realizedPnl) {
+        static AccountRow of(Account account) {
+            return new AccountRow(account.getPlayerId(), account.getWalletBalance(), account.getAvailableBalance(),
+                                  account.getEquity(), account.getMarginMode(), account.getRealizedPnl());
+        }
+    }
+
+    /**
+     * 仓位行的不可变副本，deleted 为 true 时表示删除
+     */
+    private record PositionRow(PositionKey key, boolean deleted, OrderSide side, BigDecimal qty,
+                               BigDecimal entryPrice, int leverage, BigDecimal isolatedMargin,
+                               BigDecimal stopLossPrice, BigDecimal takeProfitPrice) {
+        static PositionRow of(Position position) {
+            return new PositionRow(new PositionKey(position.getPlayerId(), position.getSymbol()), false,
+                                   position.getSide(), position.getQty(), position.getEntryPrice(),
+                                   position.getLeverage(), position.getIsolatedMargin(),
+                                   position.getStopLossPrice(), position.getTakeProfitPrice());
+        }
+
+        static PositionRow deleted(PositionKey key) {
+            return new PositionRow(key, true, null, null, null, 0, null, null, null);
+        }
+    }
+
+    /**
+     * 订单行的不可变副本
+     */
+    private record OrderRow(long id, UUID playerId, String symbol, OrderSide side, OrderType type, BigDecimal qty,
+                            OrderStatus status, BigDecimal fillPrice, BigDecimal fee, long createTime,
+                            BigDecimal price, int leverage, BigDecimal filledQty, BigDecimal settledQty,
+                            BigDecimal reservedBalance) {
+        static OrderRow of(Order order) {
+            return new OrderRow(order.getId(), order.getPlayerId(), order.getSymbol(), order.getSide(),
+                                order.getType(), order.getQty(), order.getStatus(), order.getFillPrice(),
+                                order.getFee(), order.getCreateTime(), order.getPrice(), order.getLeverage(),
+                                order.getFilledQty(), order.getSettledQty(), order.getReservedBalance());
+        }
+    }
+}
@@ -4,14 +4,26 @@ import top.arctain.snowTerritory.stocks.model.Account;
 import top.arctain.snowTerritory.stocks.model.Order;
 import top.arctain.snowTerritory.stocks.model.Position;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * 存储接口
  */
 public interface StockStorage {
     
+    /**
+     * 初始化存储（建表、加载数据等）
+     */
+    void init();
+    
+    /**
+     * 关闭存储，确保未落盘的数据全部写出
+     */
+    void close();
+    
     /**
      * 获取账户
      */
@@ -22,6 +34,11 @@ public interface StockStorage {
      */
     void saveAccount(Account account);
     
+    /**
+     * 批量保存账户（资金费结算等一次变更大量账户时使用）
+     */
+    void saveAccounts(Collection<Account> accounts);
+    
     /**
      * 获取仓位
      */
@@ -42,6 +59,39 @@ public interface StockStorage {
      */
     List<Position> getAllPositions(UUID playerId);
     
+    /**
+     * 遍历全部账户（弱一致）
+     */
+    void forEachAccount(Consumer<Account> consumer);
+    
+    /**
+     * 遍历所有玩家的全部仓位（弱一致，遍历期间的并发修改可能可见也可能不可见）
+     */
+    void forEachPosition(Consumer<Position> consumer);
+    
+    /**
+     * 遍历仍在挂单中的限价单（弱一致，用于启动时重建订单簿）
+     */
+    void forEachOpenOrder(Consumer<Order> consumer);
+    
+    /**
+     * 开始一条交易命令的写入批次（交易分片执行每条命令前调用，可嵌套）
+     * 批次内的保存在 endBatch 时作为一个整体交给持久化，不会只落盘其中一部分
+     */
+    default void beginBatch() {
+    }
+    
+    /**
+     * 结束写入批次
+     */
+    default void endBatch() {
+    }
+    
+    /**
+     * 分配新的订单ID（全局唯一、按时间递增，重启后不会重复；线程安全，可由多个交易分片同时调用）
+     */
+    long nextOrderId();
+    
     /**
      * 保存订单
      */
@@ -53,8 +103,14 @@ public interface StockStorage {
     Order getOrder(long orderId);
     
     /**
-     * 获取玩家的订单历史
+     * 获取玩家近期的订单（按创建时间倒序，只含内存中的订单和仍在挂单中的订单）
      */
     List<Order> getOrders(UUID playerId, String symbol);
+    
+    /**
+     * 分页获取玩家的完整订单历史（按创建时间倒序，page 从0开始）
+     * 超出内存窗口的页从磁盘读取，不要在主线程调用
+     */
+    List<Order> getOrderHistory(UUID playerId, int page, int pageSize);
 }
 
@@ -0,0 +1,195 @@
+package top.arctain.snowTerritory.stocks.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 定点数运算
+ * 以 long 表示 8 位小数（1e-8 精度）的数值，供风控、撮合等热路径使用，避免 BigDecimal 分配。
+ * 所有乘除结果按 HALF_UP 保留 8 位小数，与 BigDecimal 路径一致；溢出时抛出 ArithmeticException
+ */
+public final class FixedPoint {
+
+    public static final int DECIMALS = 8;
+    public static final long SCALE = 100_000_000L;
+    private static final long HALF = SCALE / 2;
+
+    /** 无法用定点数表示（超出范围）的标记值 */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final long ZERO = 0L;
+    public static final long ONE = SCALE;
+
+    private FixedPoint() {
+    }
+
+    // ========== 与 BigDecimal 互转（只在命令/显示边界使用） ==========
+
+    /**
+     * BigDecimal 转定点数（超过8位小数的部分按 HALF_UP 舍入），超出范围时抛出 ArithmeticException
+     */
+    public static long fromDecimal(BigDecimal value) {
+        return value.setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * BigDecimal 转定点数，超出范围或为 null 时返回 INVALID
+     */
+    public static long fromDecimalOrInvalid(BigDecimal value) {
+        if (value == null) {
+            return INVALID;
+        }
+        try {
+            return fromDecimal(value);
+        } catch (ArithmeticException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * BigDecimal 转定点数，不能精确表示（超过8位小数或超出范围）或为 null 时返回 INVALID
+     */
+    public static long fromDecimalExact(BigDecimal value) {
+        if (value == null) {
+            return INVALID;
+        }
+        try {
+            return value.setScale(DECIMALS, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            return INVALID;
+        }
+    }
+
+    public static BigDecimal toDecimal(long value) {
+        return BigDecimal.valueOf(value, DECIMALS);
+    }
+
+    public static long fromInt(int value) {
+        return value * SCALE;
+    }
+
+    // ========== 加减 ==========
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long sub(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    // ========== 乘除 ==========
+
+    /**
+     * a * b，HALF_UP 保留8位小数
+     */
+    public static long mul(long a, long b) {
+        long ua = Math.absExact(a);
+        long ub = Math.absExact(b);
+        long a1 = ua / SCALE, a0 = ua % SCALE;
+        long b1 = ub / SCALE, b0 = ub % SCALE;
+        // a*b/S = a1*b1*S + a1*b0 + a0*b1 + a0*b0/S
+        long low = a0 * b0;
+        long result = Math.multiplyExact(Math.multiplyExact(a1, b1), SCALE);
+        result = Math.addExact(result, Math.multiplyExact(a1, b0));
+        result = Math.addExact(result, Math.multiplyExact(a0, b1));
+        result = Math.addExact(result, low / SCALE);
+        if (low % SCALE >= HALF) {
+            result = Math.addExact(result, 1);
+        }
+        return (a < 0) != (b < 0) ? -result : result;
+    }
+
+    /**
+     * a * b * c，只在最后舍入一次（HALF_UP 保留8位小数），与 BigDecimal 连乘后 setScale 结果一致
+     */
+    public static long mul3(long a, long b, long c) {
+        long ua = Math.absExact(a);
+        long ub = Math.absExact(b);
+        long uc = Math.absExact(c);
+        // a*b = q1*S + r1
+        long q1 = mulFloor(ua, ub);
+        long r1 = mulRemainder(ua, ub);
+        // a*b*c/S^2 = q1*c/S + r1*c/S^2 = (q2 + r2/S) + (q3*S + r3)/S^2
+        long q2 = mulFloor(q1, uc);
+        long r2 = mulRemainder(q1, uc);
+        long q3 = mulFloor(r1, uc);
+        // 小数部分为 (t % S)/S + r3/S^2，且 r3 < S，故是否进位只取决于 t % S
+        long t = Math.addExact(r2, q3);
+        long result = Math.addExact(q2, t / SCALE);
+        if (t % SCALE >= HALF) {
+            result = Math.addExact(result, 1);
+        }
+        boolean negative = (a < 0) ^ (b < 0) ^ (c < 0);
+        return negative ? -result : result;
+    }
+
+    /**
+     * a / b，HALF_UP 保留8位小数
+     */
+    public static long div(long a, long b) {
+        if (b == 0) {
+            throw new ArithmeticException("除数为0");
+        }
+        long ua = Math.absExact(a);
+        long ub = Math.absExact(b);
+        long result = Math.multiplyExact(ua / ub, SCALE);
+        long r = ua % ub;
+        // 逐位长除法求8位小数，避免 r*S 溢出
+        long fraction = 0;
+        for (int i = 0; i < DECIMALS; i++) {
+            r = Math.multiplyExact(r, 10);
+            fraction = fraction * 10 + r / ub;
+            r %= ub;
+        }
+        result = Math.addExact(result, fraction);
+        if (r >= ub - r) {
+            result = Math.addExact(result, 1);
+        }
+        return (a < 0) != (b < 0) ? -result : result;
+    }
+
+    /**
+     * a * b / n（n 为整数，如杠杆），只在最后舍入一次（HALF_UP 保留8位小数）
+     */
+    public static long mulDivInt(long a, long b, int n) {
+        if (n == 0) {
+            throw new ArithmeticException("除数为0");
+        }
+        long ua = Math.absExact(a);
+        long ub = Math.absExact(b);
+        long un = Math.abs((long) n);
+        // a*b/S = q1 + r1/S，再除以 n：q1 = k*n + j，结果 = k + (j*S + r1)/(S*n)
+        long q1 = mulFloor(ua, ub);
+        long r1 = mulRemainder(ua, ub);
+        long k = q1 / un;
+        long j = q1 % un;
+        long numerator = Math.addExact(Math.multiplyExact(j, SCALE), r1);
+        long denominator = Math.multiplyExact(SCALE, un);
+        long result = k;
+        if (numerator >= denominator - numerator) {
+            result = Math.addExact(result, 1);
+        }
+        boolean negative = (a < 0) ^ (b < 0) ^ (n < 0);
+        return negative ? -result : result;
+    }
+
+    /**
+     * floor(a * b / S)，a、b 非负
+     */
+    private static long mulFloor(long a, long b) {
+        long a1 = a / SCALE, a0 = a % SCALE;
+        long b1 = b / SCALE, b0 = b % SCALE;
+        long result = Math.multiplyExact(Math.multiplyExact(a1, b1), SCALE);
+        result = Math.addExact(result, Math.multiplyExact(a1, b0));
+        result = Math.addExact(result, Math.multiplyExact(a0, b1));
+        return Math.addExact(result, a0 * b0 / SCALE);
+    }
+
+    /**
+     * (a * b) mod S，a、b 非负
+     */
+    private static long mulRemainder(long a, long b) {
+        return (a % SCALE) * (b % SCALE) % SCALE;
+    }
+}
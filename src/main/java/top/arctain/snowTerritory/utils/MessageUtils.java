@@ -104,13 +104,20 @@ public class MessageUtils {
      * @param placeholders 占位符替换（key, value, key, value...）
      */
     public static void sendConfigMessage(CommandSender sender, String key, String defaultValue, String... placeholders) {
-        String message = getMessage(key, defaultValue, placeholders);
-        String prefix = getPrefix(key);
         if (sender != null) {
-            sender.sendMessage(colorize(prefix + message));
+            sender.sendMessage(formatConfigMessage(key, defaultValue, placeholders));
         }
     }
     
+    /**
+     * 生成配置消息文本（带前缀、已着色），用于多条消息合并后一次发送
+     */
+    public static String formatConfigMessage(String key, String defaultValue, String... placeholders) {
+        String message = getMessage(key, defaultValue, placeholders);
+        String prefix = getPrefix(key);
+        return colorize(prefix + message);
+    }
+    
     /**
      * 发送配置消息（不带前缀）
      */